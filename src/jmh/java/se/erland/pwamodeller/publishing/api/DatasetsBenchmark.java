@@ -0,0 +1,63 @@
+package se.erland.pwamodeller.publishing.api;
+
+import org.openjdk.jmh.annotations.*;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.BundleGenerator;
+import se.erland.pwamodeller.publishing.service.DatasetCatalog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /api/datasets via {@link DatasetsResource#listDatasets()}: answered from the in-memory
+ * catalog (the normal path) and with a full rescan of DATA_ROOT/datasets (catalog reload at
+ * startup, or a resource without a catalog).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DatasetsBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int datasets;
+
+    private Path tmp;
+    private DatasetsResource cached;
+    private DatasetsResource rescanning;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tmp = Files.createTempDirectory("jmh-datasets-");
+        BundleGenerator.datasets(tmp.resolve("data"), datasets);
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                PublishConfig.DEFAULT_MAX_ZIP_BYTES, PublishConfig.DEFAULT_MAX_JSON_BYTES, Optional.empty());
+
+        cached = new DatasetsResource();
+        cached.cfg = cfg;
+        cached.catalog = new DatasetCatalog(cfg);
+        cached.catalog.reload();
+
+        // No catalog: every call builds one and scans the dataset directories.
+        rescanning = new DatasetsResource();
+        rescanning.cfg = cfg;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BundleGenerator.deleteRecursively(tmp);
+    }
+
+    @Benchmark
+    public Map<String, Object> listFromCatalog() {
+        return cached.listDatasets();
+    }
+
+    @Benchmark
+    public Map<String, Object> listWithRescan() {
+        return rescanning.listDatasets();
+    }
+}
@@ -0,0 +1,46 @@
+package se.erland.pwamodeller.publishing.service;
+
+import org.openjdk.jmh.annotations.*;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileOps#atomicWrite}: temp file + rename, as used for latest.json, dataset.json and
+ * the release index. The target is replaced on every call, like repeated publishes do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileOpsBenchmark {
+
+    @Param({"256", "65536", "1048576"})
+    public int bytes;
+
+    private Path tmp;
+    private Path target;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tmp = Files.createTempDirectory("jmh-fileops-");
+        target = tmp.resolve("latest.json");
+        content = new byte[bytes];
+        new Random(42).nextBytes(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BundleGenerator.deleteRecursively(tmp);
+    }
+
+    @Benchmark
+    public Path atomicWrite() throws IOException {
+        FileOps.atomicWrite(target, content);
+        return target;
+    }
+}
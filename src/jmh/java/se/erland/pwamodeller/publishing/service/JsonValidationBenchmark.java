@@ -0,0 +1,59 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Well-formedness check of a model.json-like file: the byte scanner behind
+ * {@link JsonWellFormedValidator#validateJsonFile} against a Parsson event loop as baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonValidationBenchmark {
+
+    /** Approximate file size in MiB. */
+    @Param({"1", "10", "50"})
+    public int sizeMb;
+
+    private Path tmp;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tmp = Files.createTempDirectory("jmh-json-");
+        file = tmp.resolve("model.json");
+        Files.write(file, BundleGenerator.modelJson(BundleGenerator.nodesFor(sizeMb * 1024L * 1024L), 42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BundleGenerator.deleteRecursively(tmp);
+    }
+
+    @Benchmark
+    public void validateJsonFile() throws IOException {
+        JsonWellFormedValidator.validateJsonFile(file, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int parssonBaseline() throws IOException {
+        int events = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             JsonParser parser = Json.createParser(reader)) {
+            while (parser.hasNext()) {
+                parser.next();
+                events++;
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,68 @@
+package se.erland.pwamodeller.publishing.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending a release (the release-history step of a publish) to datasets with a growing
+ * history; the log keeps growing during the run, as it does in production. Also reads the
+ * newest page, as GET .../releases does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReleaseLogBenchmark {
+
+    /** Releases already in the log before the run. */
+    @Param({"0", "1000", "100000"})
+    public int history;
+
+    private Path tmp;
+    private Path datasetDir;
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tmp = Files.createTempDirectory("jmh-releases-");
+        datasetDir = Files.createDirectories(tmp.resolve("datasets").resolve("bench"));
+
+        // Written directly (log + index) rather than through append(), which would rewrite the snapshot 2000 times.
+        ByteBuffer index = ByteBuffer.allocate(history * Long.BYTES);
+        long end = 0;
+        try (OutputStream log = Files.newOutputStream(datasetDir.resolve(ReleaseLog.LOG_FILE))) {
+            for (int i = 0; i < history; i++) {
+                byte[] line = ("{\"seq\":" + i + ",\"bundleId\":\"bundle-" + i + "\",\"publishedAt\":\""
+                        + Instant.EPOCH.plusSeconds(i) + "\"}\n").getBytes(StandardCharsets.UTF_8);
+                log.write(line);
+                end += line.length;
+                index.putLong(end);
+            }
+        }
+        Files.write(datasetDir.resolve(ReleaseLog.INDEX_FILE), index.array());
+        seq = history;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BundleGenerator.deleteRecursively(tmp);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        ReleaseLog.append(datasetDir, "bench-" + seq, Instant.now());
+        return seq++;
+    }
+
+    @Benchmark
+    public ReleaseLog.Page newestPage() throws IOException {
+        return ReleaseLog.page(datasetDir, 50, null);
+    }
+}
@@ -0,0 +1,93 @@
+package se.erland.pwamodeller.publishing.service;
+
+import org.openjdk.jmh.annotations.*;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload handling: spooling the ZIP, extracting it, and the whole validateToStaging pass in
+ * both modes (streaming vs spool + re-read).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZipValidatorBenchmark {
+
+    /** Approximate model.json size in MiB. */
+    @Param({"1", "10"})
+    public int modelMb;
+
+    private Path tmp;
+    private byte[] zip;
+    private Path zipFile;
+    private Path target;
+    private ZipValidator streaming;
+    private ZipValidator spooling;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tmp = Files.createTempDirectory("jmh-zip-");
+        zip = BundleGenerator.bundleZip("bench-bundle", modelMb * 1024L * 1024L);
+        zipFile = tmp.resolve("upload.zip");
+        Files.write(zipFile, zip);
+
+        Path data = tmp.resolve("data");
+        streaming = new ZipValidator(new PublishConfig(data, tmp.resolve("staging-stream"), Optional.empty(),
+                Long.MAX_VALUE, Long.MAX_VALUE, Optional.empty(), true));
+        spooling = new ZipValidator(new PublishConfig(data, tmp.resolve("staging-spool"), Optional.empty(),
+                Long.MAX_VALUE, Long.MAX_VALUE, Optional.empty(), false));
+    }
+
+    @Setup(Level.Invocation)
+    public void freshTarget() throws IOException {
+        target = Files.createTempDirectory(tmp, "run-");
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropTarget() {
+        BundleGenerator.deleteRecursively(target);
+        BundleGenerator.deleteRecursively(tmp.resolve("staging-stream"));
+        BundleGenerator.deleteRecursively(tmp.resolve("staging-spool"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BundleGenerator.deleteRecursively(tmp);
+    }
+
+    @Benchmark
+    public Path spoolZip() throws IOException {
+        Path out = target.resolve("upload.zip");
+        ZipValidator.spoolZip(new ByteArrayInputStream(zip), out, Long.MAX_VALUE);
+        return out;
+    }
+
+    @Benchmark
+    public Path extractZip() throws IOException {
+        ZipValidator.extractZip("bench", zipFile, target, null);
+        return target;
+    }
+
+    @Benchmark
+    public Path extractZipWithDigests() throws IOException {
+        ZipValidator.extractZip("bench", zipFile, target, new HashMap<>());
+        return target;
+    }
+
+    @Benchmark
+    public ValidatedBundle validateStreaming() {
+        return streaming.validateToStaging("bench", new ByteArrayInputStream(zip));
+    }
+
+    @Benchmark
+    public ValidatedBundle validateSpooled() {
+        return spooling.validateToStaging("bench", new ByteArrayInputStream(zip));
+    }
+}
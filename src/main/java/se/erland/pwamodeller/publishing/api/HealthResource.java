@@ -1,16 +1,27 @@
 package se.erland.pwamodeller.publishing.api;
 
+import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.DiskSpaceGuard;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Path("/health")
 public class HealthResource {
 
+    @Inject
+    DiskSpaceGuard diskSpace;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Map<String, Object> health() {
@@ -19,4 +30,32 @@ public class HealthResource {
                 "time", Instant.now().toString()
         );
     }
+
+    /**
+     * Readiness: 503 while unreserved free space on the staging, data or uploads filesystem is below
+     * PUBLISH_DISK_READY_MIN_FREE_BYTES, so a load balancer can route publishes elsewhere.
+     */
+    @GET
+    @Path("ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ready() {
+        DiskSpaceGuard effectiveDiskSpace = (diskSpace != null) ? diskSpace
+                : new DiskSpaceGuard(PublishConfig.loadFromEnvOrSystem());
+        boolean ready = effectiveDiskSpace.ready();
+
+        List<Map<String, Object>> disks = new ArrayList<>();
+        for (DiskSpaceGuard.DiskStatus s : effectiveDiskSpace.status()) {
+            Map<String, Object> disk = new LinkedHashMap<>();
+            disk.put("root", s.root());
+            disk.put("usableBytes", s.usableBytes());
+            disk.put("reservedBytes", s.reservedBytes());
+            disk.put("availableBytes", s.availableBytes());
+            disks.add(disk);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", ready ? "ready" : "low-disk");
+        body.put("time", Instant.now().toString());
+        body.put("disk", disks);
+        return Response.status(ready ? 200 : 503).entity(body).build();
+    }
 }
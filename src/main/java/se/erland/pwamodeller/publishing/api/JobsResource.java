@@ -0,0 +1,55 @@
+package se.erland.pwamodeller.publishing.api;
+
+import io.smallrye.common.annotation.NonBlocking;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import se.erland.pwamodeller.publishing.service.PublishJobService;
+
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Status of asynchronous publish jobs (POST .../publish?async=true).
+ */
+@Path("/jobs")
+public class JobsResource {
+
+    @Inject
+    PublishJobService jobs;
+
+    @GET
+    @NonBlocking
+    @Path("{jobId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public PublishJobInfo getJob(@PathParam("jobId") String jobId) {
+        PublishJobService.Job job = jobs.get(jobId)
+                .orElseThrow(() -> new PublishingException(404, "Job not found: " + jobId));
+        return toInfo(job);
+    }
+
+    static PublishJobInfo toInfo(PublishJobService.Job job) {
+        PublishJobInfo info = new PublishJobInfo();
+        info.jobId = job.jobId();
+        info.datasetId = job.datasetId();
+        info.state = job.state().name().toLowerCase(Locale.ROOT);
+        info.submittedAt = format(job.submittedAt());
+        info.startedAt = format(job.startedAt());
+        info.finishedAt = format(job.finishedAt());
+        if (job.result() != null) {
+            info.result = PublishResource.resultBody(job.result());
+        }
+        if (job.error() != null) {
+            info.error = ProblemDetails.of("Publishing error", job.error().getStatus(), job.error().getMessage(), null, null);
+        }
+        return info;
+    }
+
+    private static String format(Instant t) {
+        return t == null ? null : t.toString();
+    }
+}
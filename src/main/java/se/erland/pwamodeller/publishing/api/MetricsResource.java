@@ -0,0 +1,25 @@
+package se.erland.pwamodeller.publishing.api;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * GET /api/metrics: Prometheus text exposition of all meters (publish stages, bytes, statuses,
+ * active publishes, JVM). See {@link se.erland.pwamodeller.publishing.service.PublishMetrics}.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    @Inject
+    PrometheusMeterRegistry registry;
+
+    @GET
+    @Produces(TextFormat.CONTENT_TYPE_004)
+    public String scrape() {
+        return registry.scrape();
+    }
+}
@@ -0,0 +1,172 @@
+package se.erland.pwamodeller.publishing.api;
+
+import io.vertx.ext.web.RoutingContext;
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.PreMatching;
+import jakarta.ws.rs.ext.Provider;
+import org.jboss.resteasy.reactive.server.spi.ResteasyReactiveContainerRequestContext;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.DiskSpaceGuard;
+import se.erland.pwamodeller.publishing.service.IdempotentPublishes;
+import se.erland.pwamodeller.publishing.service.PublishJobService;
+import se.erland.pwamodeller.publishing.service.PublishMetrics;
+import se.erland.pwamodeller.publishing.service.PublishResult;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rejects uploads that cannot be admitted before their body is received.
+ *
+ * Runs before resource matching, i.e. before RESTEasy reads the body (and stores multipart file
+ * parts in the uploads directory):
+ * - POST .../publish with Idempotency-Key / X-Bundle-SHA256 repeating an earlier publish: 200 +
+ *   Idempotent-Replayed with its result ({@link IdempotentPublishes}); invalid headers are 422
+ * - POST .../publish?async=true: 503 + Retry-After when the job pool is saturated
+ * - POST .../publish, .../publish/delta and PUT .../uploads/{id}/chunks/{n}: disk space for the
+ *   Content-Length is reserved ({@link DiskSpaceGuard}), 507 or 503 + Retry-After when it does
+ *   not fit; the resource takes the reservation over with {@link #takeReservation}, otherwise it
+ *   is released when the response has been sent
+ *
+ * The filter runs on the event loop, so only the headers are checked there; release log lookups
+ * and reservations (a shared lock and a file store probe) are made on a worker thread while the
+ * request is suspended.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.USER)
+public class PublishAdmissionFilter implements ContainerRequestFilter {
+
+    private static final Pattern PUBLISH = Pattern.compile("^/?datasets/([^/]+)/publish(/delta)?/?$");
+    private static final Pattern CHUNK = Pattern.compile("^/?datasets/[^/]+/uploads/[^/]+/chunks/[^/]+/?$");
+    private static final String RESERVATION = PublishAdmissionFilter.class.getName() + ".reservation";
+
+    @Inject
+    PublishConfig cfg;
+
+    @Inject
+    PublishJobService jobs;
+
+    @Inject
+    DiskSpaceGuard diskSpace;
+
+    @Inject
+    IdempotentPublishes idempotency;
+
+    @Inject
+    PublishMetrics metrics;
+
+    @Inject
+    RoutingContext routing;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String path = requestContext.getUriInfo().getPath();
+        try {
+            if ("POST".equals(requestContext.getMethod())) {
+                Matcher publish = PUBLISH.matcher(path);
+                if (publish.matches()) admitPublish(requestContext, publish.group(1), publish.group(2) != null);
+            } else if ("PUT".equals(requestContext.getMethod()) && CHUNK.matcher(path).matches()) {
+                long length = requestContext.getLength();
+                admitOffLoop(requestContext, null, 0, () -> Admission.held(diskSpace.reserve(length < 0 ? cfg.getMaxZipBytes() : length)));
+            }
+        } catch (PublishingException pe) {
+            discardBody();
+            throw pe;
+        }
+    }
+
+    /**
+     * The disk space reserved for this request, handed over to the caller, which must release it;
+     * null when none was reserved (or it was taken already).
+     */
+    public static DiskSpaceGuard.Reservation takeReservation(ContainerRequestContext requestContext) {
+        Object held = requestContext != null ? requestContext.getProperty(RESERVATION) : null;
+        return held instanceof AtomicReference<?> ref ? (DiskSpaceGuard.Reservation) ref.getAndSet(null) : null;
+    }
+
+    /** The earlier result a retry is answered with, or the disk space held for the request. */
+    private record Admission(PublishResult replay, DiskSpaceGuard.Reservation reservation) {
+        static Admission held(DiskSpaceGuard.Reservation reservation) {
+            return new Admission(null, reservation);
+        }
+    }
+
+    private void admitPublish(ContainerRequestContext requestContext, String datasetId, boolean delta) {
+        long start = System.nanoTime();
+        String key = delta ? null : requestContext.getHeaderString(IdempotentPublishes.KEY_HEADER);
+        String digest = delta ? null : requestContext.getHeaderString(IdempotentPublishes.DIGEST_HEADER);
+        IdempotentPublishes.requireValidKey(key);
+        IdempotentPublishes.requireValidDigest(digest);
+        boolean async = !delta && Boolean.parseBoolean(requestContext.getUriInfo().getQueryParameters().getFirst("async"));
+        long length = requestContext.getLength();
+        admitOffLoop(requestContext, datasetId, start, () -> {
+            // A retry of a publish that already happened: answer it without receiving the upload.
+            Optional<PublishResult> earlier = idempotency.find(datasetId, key, digest);
+            if (earlier.isPresent()) return new Admission(earlier.get(), null);
+            if (async) jobs.requireCapacity(datasetId);
+            try {
+                // A delta's estimate depends on its base bundle: only the body is reserved here.
+                return Admission.held(delta ? diskSpace.reserveForRequestBody(length) : diskSpace.reserveForUpload(length));
+            } catch (PublishingException pe) {
+                metrics.request(datasetId, pe.getStatus(), start);
+                throw pe;
+            }
+        });
+    }
+
+    /**
+     * Suspends the request, runs {@code admit} on a worker thread and resumes on the event loop:
+     * replaying, holding the reservation, or failing the request with the rejection.
+     */
+    private void admitOffLoop(ContainerRequestContext requestContext, String datasetId, long start, Callable<Admission> admit) {
+        ResteasyReactiveContainerRequestContext suspended = (ResteasyReactiveContainerRequestContext) requestContext;
+        suspended.suspend();
+        routing.vertx().executeBlocking(admit, false).onComplete(done -> {
+            if (done.failed()) {
+                discardBody();
+                suspended.resume(done.cause());
+                return;
+            }
+            Admission admission = done.result();
+            if (admission.replay() != null) {
+                discardBody();
+                metrics.request(datasetId, 200, start);
+                requestContext.abortWith(PublishResource.replayed(admission.replay()));
+            } else if (routing.response().closed()) {
+                // Gone while waiting: no end handler would run to release it.
+                admission.reservation().close();
+            } else {
+                hold(requestContext, admission.reservation());
+            }
+            suspended.resume();
+        });
+    }
+
+    private void hold(ContainerRequestContext requestContext, DiskSpaceGuard.Reservation reservation) {
+        AtomicReference<DiskSpaceGuard.Reservation> held = new AtomicReference<>(reservation);
+        requestContext.setProperty(RESERVATION, held);
+        routing.addEndHandler(done -> {
+            DiskSpaceGuard.Reservation left = held.getAndSet(null);
+            if (left != null) left.close();
+        });
+    }
+
+    /**
+     * Reads and drops the body of a rejected request. Nothing else reads it, and a client that
+     * sends the whole body before reading the response would otherwise wait forever.
+     */
+    private void discardBody() {
+        if (routing == null || routing.request().isEnded()) return;
+        routing.request().handler(buf -> {});
+        routing.request().resume();
+    }
+}
@@ -0,0 +1,18 @@
+package se.erland.pwamodeller.publishing.api;
+
+import java.util.Map;
+
+/** Status of an asynchronous publish job (GET /api/jobs/{jobId}). */
+public class PublishJobInfo {
+    public String jobId;
+    public String datasetId;
+    /** queued | running | succeeded | failed */
+    public String state;
+    public String submittedAt;
+    public String startedAt;
+    public String finishedAt;
+    /** Same body as a synchronous 201 publish; set when succeeded. */
+    public Map<String, Object> result;
+    /** Problem the synchronous endpoint would have returned; set when failed. */
+    public ProblemDetails error;
+}
@@ -1,11 +1,15 @@
 package se.erland.pwamodeller.publishing.api;
 
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BeanParam;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -14,12 +18,20 @@ import org.jboss.resteasy.reactive.PartType;
 import org.jboss.resteasy.reactive.RestForm;
 
 import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.DeltaBundleBuilder;
+import se.erland.pwamodeller.publishing.service.DiskSpaceGuard;
+import se.erland.pwamodeller.publishing.service.IdempotentPublishes;
+import se.erland.pwamodeller.publishing.service.PublishJobService;
+import se.erland.pwamodeller.publishing.service.PublishLimiter;
+import se.erland.pwamodeller.publishing.service.PublishMetrics;
+import se.erland.pwamodeller.publishing.service.PublishTimings;
 import se.erland.pwamodeller.publishing.service.PublishResult;
 import se.erland.pwamodeller.publishing.service.PublisherService;
 import se.erland.pwamodeller.publishing.service.ValidatedBundle;
 import se.erland.pwamodeller.publishing.service.ZipValidator;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -29,6 +41,15 @@ import java.util.Optional;
  * - Upload ZIP (bundleZip)
  * - Validate in staging
  * - Publish under DATA_ROOT and update dataset latest atomically
+ * - Delta publish (POST .../publish/delta) rebuilding a bundle from a published base
+ * - ?async=true: 202 + job id once the upload is spooled (see {@link JobsResource})
+ * - 507, or 503 + Retry-After, when the upload would not fit on disk ({@link DiskSpaceGuard}); for
+ *   requests with a Content-Length this is decided before the body is received
+ *   ({@link PublishAdmissionFilter})
+ * - Idempotency-Key / X-Bundle-SHA256 headers: 200 + Idempotent-Replayed with the earlier result
+ *   when the request repeats a publish ({@link IdempotentPublishes}), answered by
+ *   {@link PublishAdmissionFilter} before the upload is received or here when a concurrent retry
+ *   wins the race; the digest is also checked against the upload (422 on mismatch)
  */
 @Path("/datasets/{datasetId}/publish")
 public class PublishResource {
@@ -42,6 +63,27 @@ public class PublishResource {
     @Inject
     PublisherService publisher;
 
+    @Inject
+    PublishLimiter limiter;
+
+    @Inject
+    PublishMetrics metrics;
+
+    @Inject
+    DeltaBundleBuilder deltaBuilder;
+
+    @Inject
+    PublishJobService jobs;
+
+    @Inject
+    DiskSpaceGuard diskSpace;
+
+    @Inject
+    IdempotentPublishes idempotency;
+
+    @Context
+    ContainerRequestContext requestContext;
+
     /**
      * Multipart form.
      *
@@ -61,10 +103,51 @@ public class PublishResource {
         public String title;
     }
 
+    /**
+     * Delta multipart form: a base bundle plus only what changed.
+     *
+     * For each of manifest/model/indexes send either the full new file or an
+     * RFC 6902 JSON Patch (array) against the base file; omitted files are reused.
+     * The new manifest (replaced or patched) must carry the new bundleId.
+     */
+    public static class DeltaForm {
+        @RestForm("baseBundleId")
+        public String baseBundleId;
+
+        @RestForm("title")
+        public String title;
+
+        @RestForm("manifest")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public InputStream manifest;
+
+        @RestForm("model")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public InputStream model;
+
+        @RestForm("indexes")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public InputStream indexes;
+
+        @RestForm("manifestPatch")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public InputStream manifestPatch;
+
+        @RestForm("modelPatch")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public InputStream modelPatch;
+
+        @RestForm("indexesPatch")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public InputStream indexesPatch;
+    }
+
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response publishZip(@PathParam("datasetId") String datasetId, @MultipartForm PublishForm form) {
+    public Response publishZip(@PathParam("datasetId") String datasetId,
+                               @QueryParam("async") boolean async,
+                               @MultipartForm PublishForm form) {
         if (form == null || form.bundleZip == null) {
             throw PublishingException.validation("Missing multipart field 'bundleZip'");
         }
@@ -73,31 +156,174 @@ public class PublishResource {
                 .map(String::trim)
                 .filter(s -> !s.isEmpty());
 
+        PublishConfig effectiveCfg = (cfg != null) ? cfg : PublishConfig.loadFromEnvOrSystem();
+        IdempotentPublishes effectiveIdempotency = (idempotency != null) ? idempotency : new IdempotentPublishes(effectiveCfg);
+        PublishMetrics effectiveMetrics = (metrics != null) ? metrics : PublishMetrics.noop();
+        String key = header(IdempotentPublishes.KEY_HEADER);
+        String digest = header(IdempotentPublishes.DIGEST_HEADER);
+
+        // Retries of a publish that already happened were answered by PublishAdmissionFilter.
+        if (async) {
+            return accepted(datasetId, form.bundleZip, title, key, digest);
+        }
+
+        ServerTimingFilter.begin(requestContext);
         try (InputStream is = form.bundleZip) {
-            PublishConfig effectiveCfg = (cfg != null) ? cfg : PublishConfig.loadFromEnvOrSystem();
             ZipValidator effectiveValidator = (validator != null) ? validator : new ZipValidator(effectiveCfg);
             PublisherService effectivePublisher = (publisher != null) ? publisher : new PublisherService(effectiveCfg);
 
-            ValidatedBundle vb = effectiveValidator.validateToStaging(datasetId, is);
-            PublishResult result = effectivePublisher.publish(datasetId, vb, title);
+            PublishLimiter effectiveLimiter = (limiter != null) ? limiter : new PublishLimiter(effectiveCfg);
+            DiskSpaceGuard effectiveDiskSpace = (diskSpace != null) ? diskSpace : new DiskSpaceGuard(effectiveCfg);
+            long contentLength = contentLength();
 
-                        // Build response without Map.of(null) pitfalls (Map.of does not allow null values)
-            Map<String, Object> urls = new HashMap<>();
-            result.latestUrl().ifPresent(u -> urls.put("latest", u.toString()));
-            result.manifestUrl().ifPresent(u -> urls.put("manifest", u.toString()));
+            DiskSpaceGuard.Reservation admitted = PublishAdmissionFilter.takeReservation(requestContext);
 
-            Map<String, Object> body = new HashMap<>();
-            body.put("datasetId", result.datasetId());
-            body.put("bundleId", result.bundleId());
-            body.put("publishedAt", result.publishedAt());
-            body.put("urls", urls);
+            PublishResult result = effectiveMetrics.track(datasetId, () -> {
+                DiskSpaceGuard.Reservation reserved = (admitted != null) ? admitted : effectiveDiskSpace.reserveForUpload(contentLength);
+                try {
+                    return effectiveLimiter.run(() -> {
+                        ValidatedBundle vb = effectiveValidator.validateToStaging(datasetId, is, digest);
+                        return effectivePublisher.publish(datasetId, vb, title, key);
+                    });
+                } finally {
+                    reserved.close();
+                }
+            });
 
-            return Response.status(201).entity(body).build();
+            return created(result);
 
         } catch (PublishingException pe) {
+            // Lost a race with a concurrent retry of the same publish: answer with its result.
+            if (pe.getStatus() == 409 && (key != null || digest != null)) {
+                Optional<PublishResult> earlier = effectiveIdempotency.find(datasetId, key, digest);
+                if (earlier.isPresent()) return replayed(earlier.get());
+            }
             throw pe;
         } catch (Exception e) {
             throw new PublishingException(500, "Failed to process publish request", e);
+        } finally {
+            PublishTimings.end();
         }
     }
+
+    /** Spools the upload and returns 202 with the job to poll; validate + publish run on the job pool. */
+    private Response accepted(String datasetId, InputStream bundleZip, Optional<String> title, String key, String digest) {
+        if (jobs == null) {
+            throw new PublishingException(501, "Asynchronous publishing is not available");
+        }
+        try (InputStream is = bundleZip) {
+            PublishJobService.Job job = jobs.submit(datasetId, is, title, contentLength(), key, digest,
+                    PublishAdmissionFilter.takeReservation(requestContext));
+            return Response.accepted(JobsResource.toInfo(job))
+                    .location(URI.create("jobs/" + job.jobId()))
+                    .build();
+        } catch (PublishingException pe) {
+            throw pe;
+        } catch (Exception e) {
+            throw new PublishingException(500, "Failed to accept publish request", e);
+        }
+    }
+
+    @POST
+    @Path("delta")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response publishDelta(@PathParam("datasetId") String datasetId, @BeanParam DeltaForm form) {
+        if (form == null || form.baseBundleId == null || form.baseBundleId.isBlank()) {
+            throw PublishingException.validation("Missing multipart field 'baseBundleId'");
+        }
+
+        Map<String, InputStream> replacements = new HashMap<>();
+        Map<String, InputStream> patches = new HashMap<>();
+        putIfPresent(replacements, "manifest.json", form.manifest);
+        putIfPresent(replacements, "model.json", form.model);
+        putIfPresent(replacements, "indexes.json", form.indexes);
+        putIfPresent(patches, "manifest.json", form.manifestPatch);
+        putIfPresent(patches, "model.json", form.modelPatch);
+        putIfPresent(patches, "indexes.json", form.indexesPatch);
+        if (replacements.isEmpty() && patches.isEmpty()) {
+            throw PublishingException.validation("Delta publish needs at least one replacement or patch part");
+        }
+
+        Optional<String> title = Optional.ofNullable(form.title)
+                .map(String::trim)
+                .filter(s -> !s.isEmpty());
+
+        ServerTimingFilter.begin(requestContext);
+        try {
+            PublishConfig effectiveCfg = (cfg != null) ? cfg : PublishConfig.loadFromEnvOrSystem();
+            DeltaBundleBuilder effectiveBuilder = (deltaBuilder != null) ? deltaBuilder : new DeltaBundleBuilder(effectiveCfg);
+            PublisherService effectivePublisher = (publisher != null) ? publisher : new PublisherService(effectiveCfg);
+
+            PublishLimiter effectiveLimiter = (limiter != null) ? limiter : new PublishLimiter(effectiveCfg);
+            PublishMetrics effectiveMetrics = (metrics != null) ? metrics : PublishMetrics.noop();
+            DiskSpaceGuard effectiveDiskSpace = (diskSpace != null) ? diskSpace : new DiskSpaceGuard(effectiveCfg);
+            String baseBundleId = form.baseBundleId.trim();
+            long estimate = effectiveBuilder.estimateBytes(baseBundleId, contentLength());
+
+            // The request body itself was reserved by PublishAdmissionFilter, until the response is sent.
+            PublishResult result = effectiveMetrics.track(datasetId, () -> {
+                DiskSpaceGuard.Reservation reserved = effectiveDiskSpace.reserve(estimate);
+                try {
+                    return effectiveLimiter.run(() -> {
+                        ValidatedBundle vb = effectiveBuilder.buildFromBase(datasetId, baseBundleId, replacements, patches);
+                        return effectivePublisher.publish(datasetId, vb, title);
+                    });
+                } finally {
+                    reserved.close();
+                }
+            });
+            return created(result);
+
+        } catch (PublishingException pe) {
+            throw pe;
+        } catch (Exception e) {
+            throw new PublishingException(500, "Failed to process delta publish request", e);
+        } finally {
+            PublishTimings.end();
+            replacements.values().forEach(PublishResource::closeQuietly);
+            patches.values().forEach(PublishResource::closeQuietly);
+        }
+    }
+
+    /** Request body size from Content-Length, or -1 when not sent (chunked transfer). */
+    private long contentLength() {
+        return requestContext != null ? requestContext.getLength() : -1;
+    }
+
+    /** Request header value, or null when absent. */
+    private String header(String name) {
+        return requestContext != null ? requestContext.getHeaderString(name) : null;
+    }
+
+    static Response created(PublishResult result) {
+        return Response.status(201).entity(resultBody(result)).build();
+    }
+
+    /** 200 with the result of the earlier publish a retry repeats. */
+    static Response replayed(PublishResult result) {
+        return Response.ok(resultBody(result)).header("Idempotent-Replayed", "true").build();
+    }
+
+    static Map<String, Object> resultBody(PublishResult result) {
+        // Build response without Map.of(null) pitfalls (Map.of does not allow null values)
+        Map<String, Object> urls = new HashMap<>();
+        result.latestUrl().ifPresent(u -> urls.put("latest", u.toString()));
+        result.manifestUrl().ifPresent(u -> urls.put("manifest", u.toString()));
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("datasetId", result.datasetId());
+        body.put("bundleId", result.bundleId());
+        body.put("publishedAt", result.publishedAt());
+        body.put("urls", urls);
+        return body;
+    }
+
+    private static void putIfPresent(Map<String, InputStream> parts, String name, InputStream in) {
+        if (in != null) parts.put(name, in);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try { in.close(); } catch (Exception ignored) {}
+    }
 }
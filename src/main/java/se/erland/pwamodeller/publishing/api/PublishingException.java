@@ -2,6 +2,7 @@ package se.erland.pwamodeller.publishing.api;
 
 public class PublishingException extends RuntimeException {
     private final int status;
+    private Long retryAfterSeconds;
 
     public PublishingException(int status, String message) {
         super(message);
@@ -15,6 +16,9 @@ public class PublishingException extends RuntimeException {
 
     public int getStatus() { return status; }
 
+    /** Seconds for a Retry-After header, or null. */
+    public Long getRetryAfterSeconds() { return retryAfterSeconds; }
+
     public static PublishingException validation(String message) {
         return new PublishingException(422, message);
     }
@@ -26,4 +30,14 @@ public class PublishingException extends RuntimeException {
     public static PublishingException tooLarge(String message) {
         return new PublishingException(413, message);
     }
+
+    public static PublishingException insufficientStorage(String message) {
+        return new PublishingException(507, message);
+    }
+
+    public static PublishingException unavailable(String message, long retryAfterSeconds) {
+        PublishingException e = new PublishingException(503, message);
+        e.retryAfterSeconds = retryAfterSeconds;
+        return e;
+    }
 }
@@ -32,10 +32,13 @@ public class PublishingExceptionMapper implements ExceptionMapper<PublishingExce
                 requestId
         );
 
-        return Response.status(exception.getStatus())
+        Response.ResponseBuilder rb = Response.status(exception.getStatus())
                 .type("application/problem+json")
-                .entity(pd)
-                .build();
+                .entity(pd);
+        if (exception.getRetryAfterSeconds() != null) {
+            rb.header("Retry-After", exception.getRetryAfterSeconds());
+        }
+        return rb.build();
     }
 
     private String requestId() {
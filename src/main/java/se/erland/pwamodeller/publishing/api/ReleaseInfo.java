@@ -0,0 +1,18 @@
+package se.erland.pwamodeller.publishing.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class ReleaseInfo {
+    public long seq;
+    public String bundleId;
+    public String publishedAt;
+
+    /** Hex SHA-256 of the uploaded ZIP; absent for releases not published from an upload. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String uploadSha256;
+
+    /** Hex SHA-256 of the Idempotency-Key the release was published with; internal. */
+    @JsonIgnore
+    public String keySha256;
+}
@@ -0,0 +1,73 @@
+package se.erland.pwamodeller.publishing.api;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
+import se.erland.pwamodeller.publishing.service.ReleaseLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Paginated release history of a dataset, newest first.
+ *
+ * GET /api/datasets/{datasetId}/releases?limit=&before=
+ * - limit: page size (default 50, max 500)
+ * - before: return releases with seq &lt; before; use nextBefore from the previous page
+ */
+@Path("/datasets/{datasetId}/releases")
+public class ReleasesResource {
+
+    static final int DEFAULT_LIMIT = 50;
+    static final int MAX_LIMIT = 500;
+
+    @Inject
+    PublishConfig cfg;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> listReleases(@PathParam("datasetId") String datasetId,
+                                            @QueryParam("limit") Integer limit,
+                                            @QueryParam("before") Long before) {
+        if (!DatasetIdPolicy.isValid(datasetId)) {
+            throw PublishingException.validation("Invalid datasetId: '" + datasetId + "'");
+        }
+        int effectiveLimit = limit == null ? DEFAULT_LIMIT : limit;
+        if (effectiveLimit < 1 || effectiveLimit > MAX_LIMIT) {
+            throw PublishingException.validation("limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (before != null && before < 0) {
+            throw PublishingException.validation("before must be >= 0");
+        }
+
+        PublishConfig effectiveCfg = (cfg != null) ? cfg : PublishConfig.loadFromEnvOrSystem();
+        java.nio.file.Path datasetDir = effectiveCfg.getDataRoot().toAbsolutePath().normalize()
+                .resolve("datasets").resolve(datasetId);
+        if (!Files.isDirectory(datasetDir)) {
+            throw new PublishingException(404, "Dataset not found: " + datasetId);
+        }
+
+        try {
+            ReleaseLog.Page page = ReleaseLog.page(datasetDir, effectiveLimit, before);
+
+            // HashMap: nextBefore may be null
+            Map<String, Object> body = new HashMap<>();
+            body.put("datasetId", datasetId);
+            body.put("total", page.total());
+            body.put("releases", page.releases());
+            body.put("nextBefore", page.nextBefore());
+            return body;
+        } catch (IOException e) {
+            throw new PublishingException(500, "Failed to read releases", e);
+        }
+    }
+}
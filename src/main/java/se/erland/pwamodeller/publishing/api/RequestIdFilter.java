@@ -6,6 +6,7 @@ import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.container.ContainerResponseContext;
 import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.PreMatching;
 import jakarta.ws.rs.ext.Provider;
 
 import java.io.IOException;
@@ -13,8 +14,10 @@ import java.util.UUID;
 
 /**
  * Adds/propagates X-Request-Id for tracing.
+ * Pre-matching, so requests rejected by {@link PublishAdmissionFilter} carry the id as well.
  */
 @Provider
+@PreMatching
 @Priority(Priorities.HEADER_DECORATOR)
 public class RequestIdFilter implements ContainerRequestFilter, ContainerResponseFilter {
 
@@ -0,0 +1,65 @@
+package se.erland.pwamodeller.publishing.api;
+
+import jakarta.annotation.Priority;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+import se.erland.pwamodeller.publishing.service.PublishTimings;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.logging.Logger;
+
+/**
+ * For publish requests that collected {@link PublishTimings}: adds a Server-Timing header with
+ * the stage durations and logs one JSON line per request, keyed by X-Request-Id:
+ *
+ *   {"requestId":"..","datasetId":"..","path":"..","status":201,"totalMs":41.2,"stages":{"extract":20.5,..}}
+ *
+ * Failed publishes get both as well, covering the stages that ran.
+ */
+@Provider
+@Priority(Priorities.HEADER_DECORATOR)
+public class ServerTimingFilter implements ContainerResponseFilter {
+
+    public static final String HEADER = "Server-Timing";
+    public static final String CTX_KEY = "publishTimings";
+
+    private static final Logger LOG = Logger.getLogger(ServerTimingFilter.class.getName());
+
+    /** Starts collecting stage timings for the publish handled on this thread; see {@link PublishTimings#end()}. */
+    static PublishTimings begin(ContainerRequestContext requestContext) {
+        PublishTimings timings = PublishTimings.begin();
+        if (requestContext != null) requestContext.setProperty(CTX_KEY, timings);
+        return timings;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (!(requestContext.getProperty(CTX_KEY) instanceof PublishTimings timings)) return;
+        responseContext.getHeaders().putSingle(HEADER, timings.serverTiming());
+
+        JsonObjectBuilder stages = Json.createObjectBuilder();
+        for (String stage : timings.stages()) {
+            stages.add(stage, millis(timings.millis(stage)));
+        }
+        JsonObjectBuilder line = Json.createObjectBuilder();
+        Object rid = requestContext.getProperty(RequestIdFilter.CTX_KEY);
+        if (rid != null) line.add("requestId", rid.toString());
+        String datasetId = requestContext.getUriInfo().getPathParameters().getFirst("datasetId");
+        if (datasetId != null) line.add("datasetId", datasetId);
+        line.add("path", requestContext.getUriInfo().getPath())
+                .add("status", responseContext.getStatus())
+                .add("totalMs", millis(timings.totalMillis()))
+                .add("stages", stages);
+        LOG.info(line.build().toString());
+    }
+
+    private static BigDecimal millis(double ms) {
+        return BigDecimal.valueOf(ms).setScale(1, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,184 @@
+package se.erland.pwamodeller.publishing.api;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.DiskSpaceGuard;
+import se.erland.pwamodeller.publishing.service.PublishLimiter;
+import se.erland.pwamodeller.publishing.service.PublishMetrics;
+import se.erland.pwamodeller.publishing.service.PublishTimings;
+import se.erland.pwamodeller.publishing.service.PublishResult;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.UploadSessionService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Resumable chunked upload of a bundle ZIP (alternative to the single-request publish).
+ *
+ * 1) POST   /datasets/{datasetId}/uploads?totalBytes=      -> 201 session
+ * 2) PUT    /datasets/{datasetId}/uploads/{id}/chunks/{n}  -> 204 (octet-stream body; any order, parallel ok)
+ * 3) GET    /datasets/{datasetId}/uploads/{id}             -> received chunks + contiguous offset
+ * 4) POST   /datasets/{datasetId}/uploads/{id}/complete?title= -> 201 (same body as publish)
+ *    DELETE /datasets/{datasetId}/uploads/{id}             -> 204 abort
+ *
+ * Chunks and completion reserve disk space first ({@link DiskSpaceGuard}): 507, or 503 + Retry-After.
+ * A chunk with a Content-Length is reserved before its body is received ({@link PublishAdmissionFilter}).
+ */
+@Path("/datasets/{datasetId}/uploads")
+public class UploadsResource {
+
+    @Inject
+    PublishConfig cfg;
+
+    @Inject
+    UploadSessionService sessions;
+
+    @Inject
+    ZipValidator validator;
+
+    @Inject
+    PublisherService publisher;
+
+    @Inject
+    PublishLimiter limiter;
+
+    @Inject
+    PublishMetrics metrics;
+
+    @Inject
+    DiskSpaceGuard diskSpace;
+
+    @Context
+    ContainerRequestContext requestContext;
+
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response create(@PathParam("datasetId") String datasetId, @QueryParam("totalBytes") Long totalBytes) {
+        UploadSessionService.Status status = effectiveSessions().create(
+                datasetId, totalBytes == null ? OptionalLong.empty() : OptionalLong.of(totalBytes));
+        return Response.status(201).entity(status).build();
+    }
+
+    @GET
+    @Path("{sessionId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public UploadSessionService.Status status(@PathParam("datasetId") String datasetId,
+                                              @PathParam("sessionId") String sessionId) {
+        return effectiveSessions().status(datasetId, sessionId);
+    }
+
+    @PUT
+    @Path("{sessionId}/chunks/{index}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public Response putChunk(@PathParam("datasetId") String datasetId,
+                             @PathParam("sessionId") String sessionId,
+                             @PathParam("index") int index,
+                             InputStream body) {
+        if (body == null) throw PublishingException.validation("Missing chunk body");
+        long length = requestContext != null ? requestContext.getLength() : -1;
+        DiskSpaceGuard.Reservation admitted = PublishAdmissionFilter.takeReservation(requestContext);
+        try (InputStream in = body) {
+            DiskSpaceGuard.Reservation reserved = (admitted != null) ? admitted
+                    : effectiveDiskSpace().reserve(length < 0 ? effectiveCfg().getMaxZipBytes() : length);
+            try {
+                effectiveSessions().putChunk(datasetId, sessionId, index, in);
+            } finally {
+                reserved.close();
+            }
+            return Response.noContent().build();
+        } catch (PublishingException pe) {
+            throw pe;
+        } catch (Exception e) {
+            throw new PublishingException(500, "Failed to store chunk", e);
+        }
+    }
+
+    @POST
+    @Path("{sessionId}/complete")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response complete(@PathParam("datasetId") String datasetId,
+                             @PathParam("sessionId") String sessionId,
+                             @QueryParam("title") String titleParam) {
+        Optional<String> title = Optional.ofNullable(titleParam)
+                .map(String::trim)
+                .filter(s -> !s.isEmpty());
+
+        UploadSessionService effectiveSessions = effectiveSessions();
+        PublishMetrics effectiveMetrics = (metrics != null) ? metrics : PublishMetrics.noop();
+        long uploadBytes = effectiveSessions.status(datasetId, sessionId).receivedBytes();
+        // Reserved before sealing, so a 503/507 leaves the session open for a retry.
+        DiskSpaceGuard.Reservation reserved;
+        try {
+            reserved = effectiveDiskSpace().reserveForStoredUpload(uploadBytes);
+        } catch (PublishingException pe) {
+            effectiveMetrics.request(datasetId, pe.getStatus(), System.nanoTime());
+            throw pe;
+        }
+        UploadSessionService.Completed completed;
+        try {
+            completed = effectiveSessions.complete(datasetId, sessionId);
+        } catch (RuntimeException e) {
+            reserved.close();
+            throw e;
+        }
+        ServerTimingFilter.begin(requestContext);
+        try (reserved; InputStream is = completed.openStream()) {
+            PublishConfig effectiveCfg = effectiveCfg();
+            ZipValidator effectiveValidator = (validator != null) ? validator : new ZipValidator(effectiveCfg);
+            PublisherService effectivePublisher = (publisher != null) ? publisher : new PublisherService(effectiveCfg);
+
+            PublishLimiter effectiveLimiter = (limiter != null) ? limiter : new PublishLimiter(effectiveCfg);
+
+            PublishResult result = effectiveMetrics.track(datasetId, () -> effectiveLimiter.run(() -> {
+                ValidatedBundle vb = effectiveValidator.validateToStaging(datasetId, is);
+                return effectivePublisher.publish(datasetId, vb, title);
+            }));
+            return PublishResource.created(result);
+
+        } catch (PublishingException pe) {
+            throw pe;
+        } catch (Exception e) {
+            throw new PublishingException(500, "Failed to complete upload session", e);
+        } finally {
+            PublishTimings.end();
+            effectiveSessions.discard(completed.sessionDir());
+        }
+    }
+
+    @DELETE
+    @Path("{sessionId}")
+    public Response abort(@PathParam("datasetId") String datasetId, @PathParam("sessionId") String sessionId) {
+        effectiveSessions().abort(datasetId, sessionId);
+        return Response.noContent().build();
+    }
+
+    private UploadSessionService effectiveSessions() {
+        return (sessions != null) ? sessions : new UploadSessionService(effectiveCfg());
+    }
+
+    private DiskSpaceGuard effectiveDiskSpace() {
+        return (diskSpace != null) ? diskSpace : new DiskSpaceGuard(effectiveCfg());
+    }
+
+    private PublishConfig effectiveCfg() {
+        return (cfg != null) ? cfg : PublishConfig.loadFromEnvOrSystem();
+    }
+}
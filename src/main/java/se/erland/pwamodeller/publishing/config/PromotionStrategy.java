@@ -0,0 +1,26 @@
+package se.erland.pwamodeller.publishing.config;
+
+import java.util.Locale;
+
+/**
+ * How validated bundle files are promoted from STAGING_ROOT into DATA_ROOT/bundles.
+ *
+ * MOVE and LINK avoid copying bytes but require both roots on the same filesystem;
+ * COPY always works.
+ */
+public enum PromotionStrategy {
+    /** Rename the staged file into place. */
+    MOVE,
+    /** Hard-link the staged file into place (staging copy is removed by cleanup). */
+    LINK,
+    /** Byte copy (roots on different volumes). */
+    COPY;
+
+    public static PromotionStrategy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid promotion strategy: " + value + " (expected move, link or copy)", e);
+        }
+    }
+}
@@ -2,8 +2,12 @@ package se.erland.pwamodeller.publishing.config;
 
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 
 /**
@@ -14,6 +18,20 @@ import java.util.Optional;
 public class PublishConfig {
     public static final long DEFAULT_MAX_ZIP_BYTES = 100L * 1024L * 1024L;   // 100 MB
     public static final long DEFAULT_MAX_JSON_BYTES = 50L * 1024L * 1024L;   // 50 MB
+    public static final long DEFAULT_UPLOAD_SESSION_TTL_SECONDS = 24L * 60L * 60L; // 24 h
+    public static final int DEFAULT_ASYNC_WORKERS = 2;
+    public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 16;
+    public static final int DEFAULT_MAX_CONCURRENT_PUBLISHES = 8;
+    public static final long DEFAULT_PUBLISH_ACQUIRE_TIMEOUT_MS = 10_000L;
+    public static final long DEFAULT_JANITOR_INTERVAL_SECONDS = 15L * 60L;          // 15 min
+    public static final long DEFAULT_JANITOR_MIN_AGE_SECONDS = 6L * 60L * 60L;      // 6 h
+    public static final int DEFAULT_JANITOR_DELETES_PER_SECOND = 1000;
+    public static final long DEFAULT_DISK_MIN_FREE_BYTES = 256L * 1024L * 1024L;        // 256 MB
+    public static final long DEFAULT_DISK_READY_MIN_FREE_BYTES = 1024L * 1024L * 1024L; // 1 GB
+    public static final int DEFAULT_DISK_RESERVE_FACTOR = 4;
+    public static final long DEFAULT_GC_INTERVAL_SECONDS = 0L;                          // disabled
+    public static final int DEFAULT_ARCHIVE_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_RELEASES_SNAPSHOT_INTERVAL_SECONDS = 60L;          // 1 min
 
     private final Path dataRoot;
     private final Path stagingRoot;
@@ -21,6 +39,29 @@ public class PublishConfig {
     private final long maxZipBytes;
     private final long maxJsonBytes;
     private final Optional<URI> baseUrl;
+    private final boolean streamingValidation;
+    private final Optional<PromotionStrategy> promotionOverride;
+    private volatile PromotionStrategy detectedPromotion;
+    private final boolean precompress;
+    private final boolean blobStore;
+    private final Duration uploadSessionTtl;
+    private final int asyncWorkers;
+    private final int asyncQueueCapacity;
+    private final int maxConcurrentPublishes;
+    private final Duration publishAcquireTimeout;
+    private final boolean referenceCheck;
+    private final Duration janitorInterval;
+    private final Duration janitorMinAge;
+    private final int janitorDeletesPerSecond;
+    private final long diskMinFreeBytes;
+    private final long diskReadyMinFreeBytes;
+    private final int diskReserveFactor;
+    private final int retentionKeepReleases;
+    private final Duration retentionMaxAge;
+    private final Duration gcInterval;
+    private final boolean gcDryRun;
+    private final int archiveQueueCapacity;
+    private final Duration releasesSnapshotInterval;
     /**
      * Quarkus CDI constructor.
      * Keeps the existing env/system-property behavior (Option A in the plan).
@@ -33,6 +74,28 @@ public class PublishConfig {
         this.maxZipBytes = cfg.maxZipBytes;
         this.maxJsonBytes = cfg.maxJsonBytes;
         this.baseUrl = cfg.baseUrl;
+        this.streamingValidation = cfg.streamingValidation;
+        this.promotionOverride = cfg.promotionOverride;
+        this.precompress = cfg.precompress;
+        this.blobStore = cfg.blobStore;
+        this.uploadSessionTtl = cfg.uploadSessionTtl;
+        this.asyncWorkers = cfg.asyncWorkers;
+        this.asyncQueueCapacity = cfg.asyncQueueCapacity;
+        this.maxConcurrentPublishes = cfg.maxConcurrentPublishes;
+        this.publishAcquireTimeout = cfg.publishAcquireTimeout;
+        this.referenceCheck = cfg.referenceCheck;
+        this.janitorInterval = cfg.janitorInterval;
+        this.janitorMinAge = cfg.janitorMinAge;
+        this.janitorDeletesPerSecond = cfg.janitorDeletesPerSecond;
+        this.diskMinFreeBytes = cfg.diskMinFreeBytes;
+        this.diskReadyMinFreeBytes = cfg.diskReadyMinFreeBytes;
+        this.diskReserveFactor = cfg.diskReserveFactor;
+        this.retentionKeepReleases = cfg.retentionKeepReleases;
+        this.retentionMaxAge = cfg.retentionMaxAge;
+        this.gcInterval = cfg.gcInterval;
+        this.gcDryRun = cfg.gcDryRun;
+        this.archiveQueueCapacity = cfg.archiveQueueCapacity;
+        this.releasesSnapshotInterval = cfg.releasesSnapshotInterval;
     }
 
 
@@ -45,6 +108,57 @@ public class PublishConfig {
             long maxZipBytes,
             long maxJsonBytes,
             Optional<URI> baseUrl
+    ) {
+        this(dataRoot, stagingRoot, archiveRoot, maxZipBytes, maxJsonBytes, baseUrl, true);
+    }
+
+    public PublishConfig(
+            Path dataRoot,
+            Path stagingRoot,
+            Optional<Path> archiveRoot,
+            long maxZipBytes,
+            long maxJsonBytes,
+            Optional<URI> baseUrl,
+            boolean streamingValidation
+    ) {
+        this(dataRoot, stagingRoot, archiveRoot, maxZipBytes, maxJsonBytes, baseUrl, streamingValidation, Optional.empty(), true, false,
+                Duration.ofSeconds(DEFAULT_UPLOAD_SESSION_TTL_SECONDS), DEFAULT_ASYNC_WORKERS, DEFAULT_ASYNC_QUEUE_CAPACITY,
+                DEFAULT_MAX_CONCURRENT_PUBLISHES, Duration.ofMillis(DEFAULT_PUBLISH_ACQUIRE_TIMEOUT_MS), false,
+                Duration.ofSeconds(DEFAULT_JANITOR_INTERVAL_SECONDS), Duration.ofSeconds(DEFAULT_JANITOR_MIN_AGE_SECONDS),
+                DEFAULT_JANITOR_DELETES_PER_SECOND, DEFAULT_DISK_MIN_FREE_BYTES, DEFAULT_DISK_READY_MIN_FREE_BYTES,
+                DEFAULT_DISK_RESERVE_FACTOR, 0, Duration.ZERO, Duration.ofSeconds(DEFAULT_GC_INTERVAL_SECONDS), false,
+                DEFAULT_ARCHIVE_QUEUE_CAPACITY, Duration.ofSeconds(DEFAULT_RELEASES_SNAPSHOT_INTERVAL_SECONDS));
+    }
+
+    private PublishConfig(
+            Path dataRoot,
+            Path stagingRoot,
+            Optional<Path> archiveRoot,
+            long maxZipBytes,
+            long maxJsonBytes,
+            Optional<URI> baseUrl,
+            boolean streamingValidation,
+            Optional<PromotionStrategy> promotionOverride,
+            boolean precompress,
+            boolean blobStore,
+            Duration uploadSessionTtl,
+            int asyncWorkers,
+            int asyncQueueCapacity,
+            int maxConcurrentPublishes,
+            Duration publishAcquireTimeout,
+            boolean referenceCheck,
+            Duration janitorInterval,
+            Duration janitorMinAge,
+            int janitorDeletesPerSecond,
+            long diskMinFreeBytes,
+            long diskReadyMinFreeBytes,
+            int diskReserveFactor,
+            int retentionKeepReleases,
+            Duration retentionMaxAge,
+            Duration gcInterval,
+            boolean gcDryRun,
+            int archiveQueueCapacity,
+            Duration releasesSnapshotInterval
     ) {
         this.dataRoot = dataRoot;
         this.stagingRoot = stagingRoot;
@@ -52,6 +166,28 @@ public class PublishConfig {
         this.maxZipBytes = maxZipBytes;
         this.maxJsonBytes = maxJsonBytes;
         this.baseUrl = baseUrl;
+        this.streamingValidation = streamingValidation;
+        this.promotionOverride = promotionOverride;
+        this.precompress = precompress;
+        this.blobStore = blobStore;
+        this.uploadSessionTtl = uploadSessionTtl;
+        this.asyncWorkers = asyncWorkers;
+        this.asyncQueueCapacity = asyncQueueCapacity;
+        this.maxConcurrentPublishes = maxConcurrentPublishes;
+        this.publishAcquireTimeout = publishAcquireTimeout;
+        this.referenceCheck = referenceCheck;
+        this.janitorInterval = janitorInterval;
+        this.janitorMinAge = janitorMinAge;
+        this.janitorDeletesPerSecond = janitorDeletesPerSecond;
+        this.diskMinFreeBytes = diskMinFreeBytes;
+        this.diskReadyMinFreeBytes = diskReadyMinFreeBytes;
+        this.diskReserveFactor = diskReserveFactor;
+        this.retentionKeepReleases = retentionKeepReleases;
+        this.retentionMaxAge = retentionMaxAge;
+        this.gcInterval = gcInterval;
+        this.gcDryRun = gcDryRun;
+        this.archiveQueueCapacity = archiveQueueCapacity;
+        this.releasesSnapshotInterval = releasesSnapshotInterval;
     }
 
     public Path getDataRoot() { return dataRoot; }
@@ -60,6 +196,80 @@ public class PublishConfig {
     public long getMaxZipBytes() { return maxZipBytes; }
     public long getMaxJsonBytes() { return maxJsonBytes; }
     public Optional<URI> getBaseUrl() { return baseUrl; }
+    /** When true, the upload is unpacked and validated in one read (no copy to upload.zip + re-read). */
+    public boolean isStreamingValidation() { return streamingValidation; }
+
+    /** When true, gzip sidecars (model.json.gz, ...) are written next to published bundle files. */
+    public boolean isPrecompress() { return precompress; }
+    /** When true, bundle files are stored once under DATA_ROOT/blobs/ and hard-linked into bundles/. */
+    public boolean isBlobStore() { return blobStore; }
+    /** How long a resumable upload session stays open. */
+    public Duration getUploadSessionTtl() { return uploadSessionTtl; }
+    /** Worker threads for asynchronous publish jobs. */
+    public int getAsyncWorkers() { return asyncWorkers; }
+    /** Queued (not yet running) publish jobs accepted before new ones get 503. */
+    public int getAsyncQueueCapacity() { return asyncQueueCapacity; }
+    /** Validate-and-publish runs allowed at once across all publish endpoints. */
+    public int getMaxConcurrentPublishes() { return maxConcurrentPublishes; }
+    /** How long a publish waits for a slot before 503. */
+    public Duration getPublishAcquireTimeout() { return publishAcquireTimeout; }
+    /** When true, every element id referenced from indexes.json must exist in model.json. */
+    public boolean isReferenceCheck() { return referenceCheck; }
+    /** How often the staging janitor runs; zero disables it. */
+    public Duration getJanitorInterval() { return janitorInterval; }
+    /** Orphaned staging/temp entries younger than this are left alone. */
+    public Duration getJanitorMinAge() { return janitorMinAge; }
+    /** Upper bound on janitor file deletions per second; zero means unthrottled. */
+    public int getJanitorDeletesPerSecond() { return janitorDeletesPerSecond; }
+    /** Free space a publish must leave on the staging and data filesystems (room for metadata writes). */
+    public long getDiskMinFreeBytes() { return diskMinFreeBytes; }
+    /** Below this much unreserved free space, GET /api/health/ready reports not ready. */
+    public long getDiskReadyMinFreeBytes() { return diskReadyMinFreeBytes; }
+    /** Disk space reserved per uploaded byte (upload spool, unpacked files, promoted copy, sidecars). */
+    public int getDiskReserveFactor() { return diskReserveFactor; }
+    /** Newest releases per dataset whose bundles are kept; zero when not limited by count. */
+    public int getRetentionKeepReleases() { return retentionKeepReleases; }
+    /** Releases younger than this keep their bundles; zero when not limited by age. */
+    public Duration getRetentionMaxAge() { return retentionMaxAge; }
+    /** How often unreferenced bundles are collected; zero disables it. */
+    public Duration getGcInterval() { return gcInterval; }
+    /** When true, the bundle collector only logs what it would remove. */
+    public boolean isGcDryRun() { return gcDryRun; }
+    /** Uploaded ZIPs waiting to be archived (including retries) before new ones are not archived. */
+    public int getArchiveQueueCapacity() { return archiveQueueCapacity; }
+    /** How often stale releases.json snapshots are rewritten from the release log; zero rewrites on every publish. */
+    public Duration getReleasesSnapshotInterval() { return releasesSnapshotInterval; }
+
+    /**
+     * Promotion strategy from PUBLISH_PROMOTION, or detected on first use:
+     * MOVE when staging and data roots share a FileStore, otherwise COPY.
+     */
+    public PromotionStrategy getPromotionStrategy() {
+        if (promotionOverride.isPresent()) return promotionOverride.get();
+        PromotionStrategy s = detectedPromotion;
+        if (s == null) {
+            s = detectPromotion(stagingRoot, dataRoot);
+            detectedPromotion = s;
+        }
+        return s;
+    }
+
+    static PromotionStrategy detectPromotion(Path stagingRoot, Path dataRoot) {
+        try {
+            FileStore staging = Files.getFileStore(nearestExisting(stagingRoot));
+            FileStore data = Files.getFileStore(nearestExisting(dataRoot));
+            return staging.equals(data) ? PromotionStrategy.MOVE : PromotionStrategy.COPY;
+        } catch (IOException | RuntimeException e) {
+            return PromotionStrategy.COPY;
+        }
+    }
+
+    private static Path nearestExisting(Path path) throws IOException {
+        Path p = path.toAbsolutePath().normalize();
+        while (p != null && !Files.exists(p)) p = p.getParent();
+        if (p == null) throw new IOException("No existing ancestor for " + path);
+        return p;
+    }
 
     public static PublishConfig loadFromEnvOrSystem() {
         Path dataRoot = Path.of(required("PUBLISH_DATA_ROOT"));
@@ -70,11 +280,57 @@ public class PublishConfig {
 
         Optional<URI> base = optional("PUBLISH_BASE_URL").map(URI::create);
         Optional<Path> archive = optional("PUBLISH_ARCHIVE_ROOT").map(Path::of);
+        boolean streaming = parseBoolean("PUBLISH_STREAMING_VALIDATION", true);
+        Optional<PromotionStrategy> promotion = optional("PUBLISH_PROMOTION")
+                .filter(v -> !v.equalsIgnoreCase("auto"))
+                .map(PromotionStrategy::parse);
+        boolean precompress = parseBoolean("PUBLISH_PRECOMPRESS", true);
+        boolean blobStore = parseBoolean("PUBLISH_BLOB_STORE", false);
+        long uploadTtl = parseLong("PUBLISH_UPLOAD_SESSION_TTL_SECONDS", DEFAULT_UPLOAD_SESSION_TTL_SECONDS);
+        long asyncWorkers = parseLong("PUBLISH_ASYNC_WORKERS", DEFAULT_ASYNC_WORKERS);
+        long asyncQueue = parseLong("PUBLISH_ASYNC_QUEUE_CAPACITY", DEFAULT_ASYNC_QUEUE_CAPACITY);
+        long maxConcurrent = parseLong("PUBLISH_MAX_CONCURRENT", DEFAULT_MAX_CONCURRENT_PUBLISHES);
+        long acquireTimeout = parseLong("PUBLISH_ACQUIRE_TIMEOUT_MS", DEFAULT_PUBLISH_ACQUIRE_TIMEOUT_MS);
+        boolean referenceCheck = parseBoolean("PUBLISH_REFERENCE_CHECK", false);
+        long janitorInterval = parseLong("PUBLISH_JANITOR_INTERVAL_SECONDS", DEFAULT_JANITOR_INTERVAL_SECONDS);
+        long janitorMinAge = parseLong("PUBLISH_JANITOR_MIN_AGE_SECONDS", DEFAULT_JANITOR_MIN_AGE_SECONDS);
+        long janitorRate = parseLong("PUBLISH_JANITOR_DELETES_PER_SECOND", DEFAULT_JANITOR_DELETES_PER_SECOND);
+        long diskMinFree = parseLong("PUBLISH_DISK_MIN_FREE_BYTES", DEFAULT_DISK_MIN_FREE_BYTES);
+        long diskReadyMinFree = parseLong("PUBLISH_DISK_READY_MIN_FREE_BYTES", DEFAULT_DISK_READY_MIN_FREE_BYTES);
+        long diskReserveFactor = parseLong("PUBLISH_DISK_RESERVE_FACTOR", DEFAULT_DISK_RESERVE_FACTOR);
+        long keepReleases = parseLong("PUBLISH_RETENTION_KEEP_RELEASES", 0);
+        long retentionMaxAge = parseLong("PUBLISH_RETENTION_MAX_AGE_SECONDS", 0);
+        long gcInterval = parseLong("PUBLISH_GC_INTERVAL_SECONDS", DEFAULT_GC_INTERVAL_SECONDS);
+        boolean gcDryRun = parseBoolean("PUBLISH_GC_DRY_RUN", false);
+        long archiveQueue = parseLong("PUBLISH_ARCHIVE_QUEUE_CAPACITY", DEFAULT_ARCHIVE_QUEUE_CAPACITY);
+        long snapshotInterval = parseLong("PUBLISH_RELEASES_SNAPSHOT_INTERVAL_SECONDS", DEFAULT_RELEASES_SNAPSHOT_INTERVAL_SECONDS);
 
         if (maxZip <= 0) throw new IllegalArgumentException("PUBLISH_MAX_ZIP_BYTES must be > 0");
         if (maxJson <= 0) throw new IllegalArgumentException("PUBLISH_MAX_JSON_BYTES must be > 0");
+        if (uploadTtl <= 0) throw new IllegalArgumentException("PUBLISH_UPLOAD_SESSION_TTL_SECONDS must be > 0");
+        if (asyncWorkers <= 0 || asyncWorkers > 256) throw new IllegalArgumentException("PUBLISH_ASYNC_WORKERS must be between 1 and 256");
+        if (asyncQueue < 0 || asyncQueue > 10_000) throw new IllegalArgumentException("PUBLISH_ASYNC_QUEUE_CAPACITY must be between 0 and 10000");
+        if (maxConcurrent <= 0 || maxConcurrent > 10_000) throw new IllegalArgumentException("PUBLISH_MAX_CONCURRENT must be between 1 and 10000");
+        if (acquireTimeout < 0) throw new IllegalArgumentException("PUBLISH_ACQUIRE_TIMEOUT_MS must be >= 0");
+        if (janitorInterval < 0) throw new IllegalArgumentException("PUBLISH_JANITOR_INTERVAL_SECONDS must be >= 0");
+        if (janitorMinAge <= 0) throw new IllegalArgumentException("PUBLISH_JANITOR_MIN_AGE_SECONDS must be > 0");
+        if (janitorRate < 0 || janitorRate > 1_000_000) throw new IllegalArgumentException("PUBLISH_JANITOR_DELETES_PER_SECOND must be between 0 and 1000000");
+        if (diskMinFree < 0) throw new IllegalArgumentException("PUBLISH_DISK_MIN_FREE_BYTES must be >= 0");
+        if (diskReadyMinFree < 0) throw new IllegalArgumentException("PUBLISH_DISK_READY_MIN_FREE_BYTES must be >= 0");
+        if (diskReserveFactor < 0 || diskReserveFactor > 100) throw new IllegalArgumentException("PUBLISH_DISK_RESERVE_FACTOR must be between 0 and 100");
+        if (keepReleases < 0 || keepReleases > 1_000_000) throw new IllegalArgumentException("PUBLISH_RETENTION_KEEP_RELEASES must be between 0 and 1000000");
+        if (retentionMaxAge < 0) throw new IllegalArgumentException("PUBLISH_RETENTION_MAX_AGE_SECONDS must be >= 0");
+        if (gcInterval < 0) throw new IllegalArgumentException("PUBLISH_GC_INTERVAL_SECONDS must be >= 0");
+        if (archiveQueue <= 0 || archiveQueue > 100_000) throw new IllegalArgumentException("PUBLISH_ARCHIVE_QUEUE_CAPACITY must be between 1 and 100000");
+        if (snapshotInterval < 0) throw new IllegalArgumentException("PUBLISH_RELEASES_SNAPSHOT_INTERVAL_SECONDS must be >= 0");
 
-        return new PublishConfig(dataRoot, stagingRoot, archive, maxZip, maxJson, base);
+        return new PublishConfig(dataRoot, stagingRoot, archive, maxZip, maxJson, base, streaming, promotion, precompress, blobStore,
+                Duration.ofSeconds(uploadTtl), (int) asyncWorkers, (int) asyncQueue,
+                (int) maxConcurrent, Duration.ofMillis(acquireTimeout), referenceCheck,
+                Duration.ofSeconds(janitorInterval), Duration.ofSeconds(janitorMinAge), (int) janitorRate,
+                diskMinFree, diskReadyMinFree, (int) diskReserveFactor,
+                (int) keepReleases, Duration.ofSeconds(retentionMaxAge), Duration.ofSeconds(gcInterval), gcDryRun,
+                (int) archiveQueue, Duration.ofSeconds(snapshotInterval));
     }
 
     private static String required(String key) {
@@ -102,4 +358,14 @@ public class PublishConfig {
                 })
                 .orElse(defaultValue);
     }
+
+    private static boolean parseBoolean(String key, boolean defaultValue) {
+        return optional(key)
+                .map(v -> {
+                    if (v.equalsIgnoreCase("true")) return true;
+                    if (v.equalsIgnoreCase("false")) return false;
+                    throw new IllegalArgumentException("Invalid boolean for " + key + ": " + v);
+                })
+                .orElse(defaultValue);
+    }
 }
@@ -1,5 +1,7 @@
 package se.erland.pwamodeller.publishing.fs;
 
+import se.erland.pwamodeller.publishing.jfr.FileOperationEvent;
+
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
@@ -49,6 +51,8 @@ public final class FileOps {
         String tmpName = "." + target.getFileName() + ".tmp." + UUID.randomUUID();
         Path tmp = dir.resolve(tmpName);
 
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
         Files.write(tmp, bytes, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
 
         try {
@@ -57,6 +61,7 @@ public final class FileOps {
             // Fall back to non-atomic replace, but still same-directory move minimizes risk.
             Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
         }
+        event.commit("atomicWrite", null, null, tmp, target);
     }
 
     public static void atomicWriteUtf8(Path target, String text) throws IOException {
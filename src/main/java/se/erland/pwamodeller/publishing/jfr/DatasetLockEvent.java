@@ -0,0 +1,31 @@
+package se.erland.pwamodeller.publishing.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Time spent waiting for a dataset's metadata lock (see DatasetLocks). */
+@Name("se.erland.pwamodeller.publishing.DatasetLockWait")
+@Label("Dataset Lock Wait")
+@Category({"PWA Modeller", "Publishing"})
+@Description("Waiting for the per-dataset metadata commit lock")
+@StackTrace(false)
+public final class DatasetLockEvent extends Event {
+
+    @Label("Dataset Id")
+    public String datasetId;
+
+    @Label("Bundle Id")
+    public String bundleId;
+
+    /** Ends and commits the event if recording is on. */
+    public void commit(String datasetId, String bundleId) {
+        if (!shouldCommit()) return;
+        this.datasetId = datasetId;
+        this.bundleId = bundleId;
+        commit();
+    }
+}
@@ -0,0 +1,55 @@
+package se.erland.pwamodeller.publishing.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/**
+ * A filesystem operation on the publish path: copy, move, link or atomicWrite. Dataset and
+ * bundle are set where the caller knows them; otherwise the enclosing {@link PublishStageEvent}
+ * on the same thread identifies the publish.
+ */
+@Name("se.erland.pwamodeller.publishing.FileOperation")
+@Label("File Operation")
+@Category({"PWA Modeller", "Publishing"})
+@Description("Copy, move, link or atomic write done while publishing")
+@StackTrace(false)
+public final class FileOperationEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Dataset Id")
+    public String datasetId;
+
+    @Label("Bundle Id")
+    public String bundleId;
+
+    @Label("Source")
+    public String source;
+
+    @Label("Target")
+    public String target;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    /** Ends and commits the event if recording is on; the size of {@code target} is only read then. */
+    public void commit(String operation, String datasetId, String bundleId, Path source, Path target) {
+        if (!shouldCommit()) return;
+        this.operation = operation;
+        this.datasetId = datasetId;
+        this.bundleId = bundleId;
+        this.source = source == null ? null : source.toString();
+        this.target = String.valueOf(target);
+        this.bytes = JfrSupport.size(target);
+        commit();
+    }
+}
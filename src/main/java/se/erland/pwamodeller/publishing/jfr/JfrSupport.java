@@ -0,0 +1,28 @@
+package se.erland.pwamodeller.publishing.jfr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+final class JfrSupport {
+
+    private JfrSupport() {}
+
+    /** File size, or the total of the files directly inside a directory; -1 if unreadable. */
+    static long size(Path path) {
+        if (path == null) return -1;
+        try {
+            if (!Files.isDirectory(path)) return Files.size(path);
+            long total = 0;
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path f : (Iterable<Path>) files::iterator) {
+                    if (Files.isRegularFile(f)) total += Files.size(f);
+                }
+            }
+            return total;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package se.erland.pwamodeller.publishing.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/** One stage of a publish (spool, validate, promote, commit, archive), spanning the nested file events. */
+@Name("se.erland.pwamodeller.publishing.PublishStage")
+@Label("Publish Stage")
+@Category({"PWA Modeller", "Publishing"})
+@Description("One stage of the publish pipeline")
+@StackTrace(false)
+public final class PublishStageEvent extends Event {
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Dataset Id")
+    public String datasetId;
+
+    @Label("Bundle Id")
+    @Description("Null before the manifest has been read")
+    public String bundleId;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Path")
+    public String path;
+
+    /** Ends and commits the event if recording is on; the size of {@code path} is only read then. */
+    public void commit(String stage, String datasetId, String bundleId, Path path) {
+        if (!shouldCommit()) return;
+        this.stage = stage;
+        this.datasetId = datasetId;
+        this.bundleId = bundleId;
+        this.bytes = JfrSupport.size(path);
+        this.path = String.valueOf(path);
+        commit();
+    }
+}
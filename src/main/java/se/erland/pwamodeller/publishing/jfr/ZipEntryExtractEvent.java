@@ -0,0 +1,51 @@
+package se.erland.pwamodeller.publishing.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+
+/** Unpacking one ZIP entry to staging (inflate + write, plus the inline manifest check). */
+@Name("se.erland.pwamodeller.publishing.ZipEntryExtract")
+@Label("ZIP Entry Extract")
+@Category({"PWA Modeller", "Publishing"})
+@Description("One ZIP entry written to the staging directory")
+@StackTrace(false)
+public final class ZipEntryExtractEvent extends Event {
+
+    @Label("Dataset Id")
+    public String datasetId;
+
+    @Label("Entry")
+    public String entry;
+
+    @Label("Bytes")
+    @Description("Uncompressed bytes written")
+    @DataAmount
+    public long bytes;
+
+    @Label("Compressed Bytes")
+    @Description("-1 when the ZIP stream does not carry it in the local header")
+    @DataAmount
+    public long compressedBytes;
+
+    @Label("Path")
+    public String path;
+
+    /** Ends and commits the event if recording is on. */
+    public void commit(String datasetId, ZipEntry entry, Path path) {
+        if (!shouldCommit()) return;
+        this.datasetId = datasetId;
+        this.entry = entry.getName();
+        this.bytes = JfrSupport.size(path);
+        this.compressedBytes = entry.getCompressedSize();
+        this.path = path.toString();
+        commit();
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Java Flight Recorder events for the publish pipeline (category "PWA Modeller / Publishing").
+ *
+ * Events are created unconditionally on the publish path; with no recording running (or the
+ * event disabled) shouldCommit() is false and nothing else is done, sizes included.
+ */
+package se.erland.pwamodeller.publishing.jfr;
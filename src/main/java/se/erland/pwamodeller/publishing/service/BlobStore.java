@@ -0,0 +1,89 @@
+package se.erland.pwamodeller.publishing.service;
+
+import se.erland.pwamodeller.publishing.config.PromotionStrategy;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content-addressed store for bundle files: DATA_ROOT/blobs/&lt;aa&gt;/&lt;sha256&gt;.
+ *
+ * Each distinct file content is stored once; bundles/&lt;bundleId&gt;/*.json are hard links to the
+ * blobs, so the URL layout nginx serves is unchanged. Blobs are immutable and never written
+ * in place (that would change every bundle linking to them).
+ */
+final class BlobStore {
+
+    /**
+     * Read-held by a publish from looking up blobs until they are linked into its bundle;
+     * write-held by {@link BundleCollector} while it checks and deletes one unlinked blob.
+     */
+    static final ReentrantReadWriteLock LINKS = new ReentrantReadWriteLock();
+
+    private final Path blobsRoot;
+
+    BlobStore(Path dataRoot) {
+        this.blobsRoot = dataRoot.resolve("blobs");
+    }
+
+    Path blobPath(String sha256) {
+        return blobsRoot.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    /**
+     * Makes sure a blob with the staged file's content exists and returns its path.
+     * A new blob is promoted from staging (rename/link/copy) under a temp name and then renamed
+     * into place; a concurrent writer of the same hash produces identical bytes, so last rename wins.
+     */
+    Path store(Path staged, String sha256, PromotionStrategy strategy) throws IOException {
+        if (sha256 == null || sha256.isEmpty()) sha256 = sha256Of(staged);
+        Path blob = blobPath(sha256);
+        if (Files.isRegularFile(blob)) return blob;
+
+        FileOps.ensureDir(blob.getParent());
+        Path tmp = blob.resolveSibling(".tmp." + sha256 + "." + UUID.randomUUID());
+        try {
+            PublisherService.promoteFile(staged, tmp, strategy);
+            try {
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return blob;
+    }
+
+    /** Hard-links a blob (or its sidecar) into a bundle dir; copies if links are not supported. */
+    static void linkInto(Path blob, Path target) throws IOException {
+        try {
+            Files.createLink(target, blob);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.deleteIfExists(target);
+            Files.copy(blob, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    static String sha256Of(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+import se.erland.pwamodeller.publishing.api.ReleaseInfo;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mark-and-sweep collection of published bundles no dataset needs anymore.
+ *
+ * Mark: every datasets/&lt;id&gt;/latest.json bundle, plus the bundles of releases kept by the
+ * retention policy: the newest PUBLISH_RETENTION_KEEP_RELEASES releases and/or those younger than
+ * PUBLISH_RETENTION_MAX_AGE_SECONDS (a release is kept if either applies; with neither set every
+ * release is kept and only bundles no release points to are collected).
+ * Sweep: every other bundles/&lt;bundleId&gt; dir, then blob store files no bundle links to any more
+ * (link count 1). Deletes are throttled to PUBLISH_JANITOR_DELETES_PER_SECOND.
+ *
+ * Publishes are not blocked. The collector lists bundles/, then snapshots {@link InFlightStaging},
+ * then marks; a publish registers its bundle dir before creating it and unregisters only after
+ * latest.json names it, so every listed bundle is either seen in flight or seen by the mark.
+ * Readers of an existing bundle (a delta's base) register it later; each bundle is re-checked and
+ * deleted under {@link InFlightStaging#BUNDLE_DELETES}, which such a registration also takes.
+ * Nothing is deleted when a dataset's metadata cannot be read. Release entries of collected
+ * bundles stay in the release history.
+ *
+ * Off by default (PUBLISH_GC_INTERVAL_SECONDS=0): an install upgraded from a version without the
+ * release log may still serve bundles its metadata does not list. With PUBLISH_GC_DRY_RUN the
+ * collector only logs the bundles it would remove.
+ */
+@ApplicationScoped
+public class BundleCollector {
+
+    private static final Logger LOG = Logger.getLogger(BundleCollector.class.getName());
+
+    private static final Duration FIRST_RUN_MAX_DELAY = Duration.ofMinutes(10);
+    private static final int PAGE = 500;
+
+    static final String KIND_BUNDLE = "bundle";
+    static final String KIND_BLOB = "blob";
+
+    /** What one collection removed. */
+    public record Collection(int bundles, int blobs, long bytes) {}
+
+    private final PublishConfig config;
+    private final PublishMetrics metrics;
+    private ScheduledExecutorService scheduler;
+
+    public BundleCollector(PublishConfig config) {
+        this(config, PublishMetrics.noop());
+    }
+
+    @Inject
+    public BundleCollector(PublishConfig config, PublishMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        long interval = config.getGcInterval().toSeconds();
+        if (interval <= 0) return;
+        long first = Math.min(interval, FIRST_RUN_MAX_DELAY.toSeconds());
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bundle-collector");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::collectQuietly, first, interval, TimeUnit.SECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /** Collects unreferenced bundles and blobs now (in a dry run: counts the bundles it would remove). */
+    public synchronized Collection collect() throws IOException, InterruptedException {
+        Path dataRoot = config.getDataRoot().toAbsolutePath().normalize();
+        Path bundlesRoot = dataRoot.resolve("bundles");
+        ThrottledDelete deleter = new ThrottledDelete(config.getJanitorDeletesPerSecond());
+
+        // Order matters, see the class comment.
+        List<Path> bundles = new ArrayList<>();
+        for (Path p : list(bundlesRoot)) {
+            if (!p.getFileName().toString().startsWith(".") && Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) bundles.add(p);
+        }
+        Set<Path> inFlight = InFlightStaging.snapshot();
+        Set<String> live = mark(dataRoot.resolve("datasets"), Instant.now());
+
+        int removedBundles = 0;
+        long bytes = 0;
+        for (Path bundle : bundles) {
+            if (live.contains(bundle.getFileName().toString()) || inFlight.contains(bundle)) continue;
+            if (config.isGcDryRun()) {
+                LOG.info("GC dry run: would remove unreferenced bundle " + bundle.getFileName());
+                removedBundles++;
+                continue;
+            }
+            InFlightStaging.BUNDLE_DELETES.lock();
+            try {
+                if (InFlightStaging.contains(bundle)) continue; // registered since the snapshot, e.g. as a delta base
+                long reclaimed = deleter.delete(bundle);
+                metrics.gcReclaimed(KIND_BUNDLE, reclaimed);
+                removedBundles++;
+                bytes += reclaimed;
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to remove unreferenced bundle " + bundle, e);
+            } finally {
+                InFlightStaging.BUNDLE_DELETES.unlock();
+            }
+        }
+
+        int removedBlobs = 0;
+        // In a dry run the bundles still link their blobs: nothing to report.
+        for (Path shard : config.isGcDryRun() ? List.<Path>of() : list(dataRoot.resolve("blobs"))) {
+            for (Path blob : list(shard)) {
+                if (blob.getFileName().toString().startsWith(".tmp.")) continue; // being stored
+                deleter.acquire();
+                long reclaimed = deleteIfUnlinked(blob);
+                if (reclaimed < 0) continue;
+                metrics.gcReclaimed(KIND_BLOB, reclaimed);
+                removedBlobs++;
+                bytes += reclaimed;
+            }
+        }
+
+        if (removedBundles > 0 || removedBlobs > 0) {
+            LOG.info("Collected " + removedBundles + " unreferenced bundles and " + removedBlobs + " blobs, reclaimed " + bytes + " bytes");
+        }
+        return new Collection(removedBundles, removedBlobs, bytes);
+    }
+
+    /** Bundle ids referenced by latest.json or a retained release of any dataset. */
+    Set<String> mark(Path datasetsRoot, Instant now) throws IOException {
+        int keep = config.getRetentionKeepReleases();
+        Duration maxAge = config.getRetentionMaxAge();
+        boolean keepAll = keep == 0 && maxAge.isZero();
+        Instant cutoff = maxAge.isZero() ? null : now.minus(maxAge);
+
+        Set<String> live = new HashSet<>();
+        for (Path datasetDir : list(datasetsRoot)) {
+            if (!Files.isDirectory(datasetDir)) continue;
+            String latest = latestBundleId(datasetDir);
+            if (latest != null) live.add(latest);
+
+            // Newest first: once a release is neither among the newest nor young enough, no older one is.
+            long index = 0;
+            Long before = null;
+            pages:
+            do {
+                ReleaseLog.Page page = ReleaseLog.page(datasetDir, PAGE, before);
+                for (ReleaseInfo r : page.releases()) {
+                    if (!keepAll && index >= keep && (cutoff == null || publishedBefore(r, cutoff))) break pages;
+                    live.add(r.bundleId);
+                    index++;
+                }
+                before = page.nextBefore();
+            } while (before != null);
+        }
+        return live;
+    }
+
+    private void collectQuietly() {
+        try {
+            collect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Bundle collection failed; nothing was removed after the failure", e);
+        }
+    }
+
+    /** Deletes a blob (or sidecar) no bundle links to; returns its size, or -1 when it was kept. */
+    private static long deleteIfUnlinked(Path blob) {
+        BlobStore.LINKS.writeLock().lock();
+        try {
+            Object nlink = Files.getAttribute(blob, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+            if (!(nlink instanceof Integer n) || n > 1) return -1;
+            long size = Files.size(blob);
+            Files.delete(blob);
+            return size;
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            // No link counts on this filesystem: blobs cannot be told apart, keep them.
+            return -1;
+        } finally {
+            BlobStore.LINKS.writeLock().unlock();
+        }
+    }
+
+    private static String latestBundleId(Path datasetDir) throws IOException {
+        Path latest = datasetDir.resolve("latest.json");
+        if (!Files.isRegularFile(latest)) return null;
+        try (Reader reader = Files.newBufferedReader(latest, StandardCharsets.UTF_8);
+             JsonReader jr = Json.createReader(reader)) {
+            JsonObject obj = jr.readObject();
+            String bundleId = obj.getString("bundleId", "");
+            if (bundleId.isBlank()) throw new IOException("No bundleId in " + latest);
+            return bundleId;
+        } catch (JsonException | ClassCastException e) {
+            throw new IOException("Unreadable " + latest, e);
+        }
+    }
+
+    private static boolean publishedBefore(ReleaseInfo r, Instant cutoff) {
+        try {
+            return Instant.parse(r.publishedAt).isBefore(cutoff);
+        } catch (DateTimeParseException | NullPointerException e) {
+            return false; // unknown age: keep
+        }
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        List<Path> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) out.add(p);
+        }
+        return out;
+    }
+}
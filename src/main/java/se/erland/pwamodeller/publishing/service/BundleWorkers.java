@@ -0,0 +1,50 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool for CPU-bound per-file bundle work: JSON validation ({@link ParallelJsonValidation})
+ * and gzip sidecars ({@link Precompressor}). One pool for the application, shut down with it.
+ *
+ * Idle workers exit, so instances created outside CDI (services constructed directly) do not pin
+ * threads.
+ */
+@ApplicationScoped
+public class BundleWorkers {
+
+    private final ThreadPoolExecutor executor;
+
+    public BundleWorkers() {
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "bundle-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Running tasks belong to publishes that are still being answered; let them finish.
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
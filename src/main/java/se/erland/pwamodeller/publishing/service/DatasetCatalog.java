@@ -0,0 +1,305 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+import se.erland.pwamodeller.publishing.api.DatasetInfo;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory catalog of datasets backing GET /api/datasets.
+ *
+ * Built from DATA_ROOT/datasets at startup, refreshed per dataset by PublisherService after
+ * each publish, and kept in sync with external edits through a WatchService on datasets/.
+ * Readers get an immutable, pre-sorted snapshot with a strong ETag.
+ */
+@ApplicationScoped
+public class DatasetCatalog {
+
+    private static final Logger LOG = Logger.getLogger(DatasetCatalog.class.getName());
+
+    /** Quiet period that ends a batch of watch events. */
+    private static final long WATCH_DEBOUNCE_MILLIS = 150;
+    /** Upper bound on one batch, so a steady stream of writes still refreshes the catalog. */
+    private static final long WATCH_BATCH_MAX_MILLIS = 1000;
+
+    private static final Comparator<DatasetInfo> ORDER = Comparator
+            .comparing((DatasetInfo d) -> d.updatedAt == null ? "" : d.updatedAt)
+            .reversed()
+            .thenComparing(d -> d.datasetId);
+
+    /** Immutable view of the catalog; etag is the (unquoted) value of a strong entity tag. */
+    public record Snapshot(List<DatasetInfo> datasets, String etag) {}
+
+    private final PublishConfig config;
+    private final Map<String, DatasetInfo> byId = new ConcurrentHashMap<>();
+    private final Object rebuildLock = new Object();
+    private volatile Snapshot snapshot = new Snapshot(List.of(), etagOf(List.of()));
+
+    private volatile WatchService watchService;
+    private Thread watchThread;
+
+    @Inject
+    public DatasetCatalog(PublishConfig config) {
+        this.config = config;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        reload();
+        startWatching();
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        stopWatching();
+    }
+
+    /**
+     * Current snapshot; never does I/O. The catalog is loaded at startup; instances created
+     * outside CDI are empty until {@link #reload()} is called.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Whether the dataset is in the catalog; never does I/O. */
+    public boolean contains(String datasetId) {
+        return datasetId != null && byId.containsKey(datasetId);
+    }
+
+    /**
+     * Rescans all dataset directories. The scan runs under the same lock as {@link #refresh}, so a
+     * refresh that happens meanwhile is not overwritten with what the scan read before it.
+     */
+    public void reload() {
+        Path datasetsRoot = datasetsRoot();
+        synchronized (rebuildLock) {
+            Map<String, DatasetInfo> fresh = new HashMap<>();
+            if (Files.isDirectory(datasetsRoot)) {
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(datasetsRoot)) {
+                    for (Path datasetDir : ds) {
+                        if (!Files.isDirectory(datasetDir)) continue;
+                        fresh.put(datasetDir.getFileName().toString(), readDatasetInfo(datasetDir));
+                    }
+                } catch (IOException e) {
+                    throw new PublishingException(500, "Failed to list datasets", e);
+                }
+            }
+            byId.keySet().retainAll(fresh.keySet());
+            byId.putAll(fresh);
+            rebuildSnapshot();
+        }
+    }
+
+    /** Re-reads one dataset directory (or drops it if it no longer exists). */
+    public void refresh(String datasetId) {
+        refresh(List.of(datasetId));
+    }
+
+    /** Re-reads several dataset directories and rebuilds the snapshot once. */
+    void refresh(Collection<String> datasetIds) {
+        if (datasetIds.isEmpty()) return;
+        Path datasetsRoot = datasetsRoot();
+        synchronized (rebuildLock) {
+            for (String datasetId : datasetIds) {
+                Path datasetDir = datasetsRoot.resolve(datasetId);
+                if (Files.isDirectory(datasetDir)) {
+                    byId.put(datasetId, readDatasetInfo(datasetDir));
+                } else {
+                    byId.remove(datasetId);
+                }
+            }
+            rebuildSnapshot();
+        }
+    }
+
+    private void rebuildSnapshot() {
+        List<DatasetInfo> list = new ArrayList<>(byId.values());
+        list.sort(ORDER);
+        snapshot = new Snapshot(List.copyOf(list), etagOf(list));
+    }
+
+    private Path datasetsRoot() {
+        return config.getDataRoot().toAbsolutePath().normalize().resolve("datasets");
+    }
+
+    private static String etagOf(List<DatasetInfo> list) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (DatasetInfo d : list) {
+                for (String field : new String[]{d.datasetId, d.title, d.updatedAt, d.latestBundleId}) {
+                    md.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+                    md.update((byte) 0);
+                }
+            }
+            return HexFormat.of().formatHex(md.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---- WatchService (external edits) ----
+
+    private void startWatching() {
+        Path datasetsRoot = datasetsRoot();
+        try {
+            Files.createDirectories(datasetsRoot);
+            WatchService ws = datasetsRoot.getFileSystem().newWatchService();
+            register(ws, datasetsRoot);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(datasetsRoot)) {
+                for (Path datasetDir : ds) {
+                    if (Files.isDirectory(datasetDir)) register(ws, datasetDir);
+                }
+            }
+            watchService = ws;
+            watchThread = new Thread(() -> watchLoop(ws, datasetsRoot), "dataset-catalog-watch");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.log(Level.WARNING, "Dataset catalog cannot watch " + datasetsRoot + "; external edits are picked up only after publishes", e);
+        }
+    }
+
+    private void stopWatching() {
+        WatchService ws = watchService;
+        watchService = null;
+        if (ws != null) {
+            try { ws.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Waits for a change, then keeps draining keys until the directories have been quiet for
+     * {@link #WATCH_DEBOUNCE_MILLIS} (at most {@link #WATCH_BATCH_MAX_MILLIS}), so a publish or copy
+     * that touches several files refreshes each affected dataset once rather than once per event.
+     */
+    private void watchLoop(WatchService ws, Path datasetsRoot) {
+        while (true) {
+            Set<String> changed = new LinkedHashSet<>();
+            boolean overflow;
+            try {
+                WatchKey key = ws.take();
+                overflow = drain(ws, key, datasetsRoot, changed);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WATCH_BATCH_MAX_MILLIS);
+                while (System.nanoTime() < deadline
+                        && (key = ws.poll(WATCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= drain(ws, key, datasetsRoot, changed);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            try {
+                if (overflow) {
+                    reload();
+                } else {
+                    refresh(changed);
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Dataset catalog refresh failed for " + changed, e);
+            }
+        }
+    }
+
+    /** Adds the datasets touched by the key's events to {@code changed}; returns whether events were lost. */
+    private static boolean drain(WatchService ws, WatchKey key, Path datasetsRoot, Set<String> changed) {
+        Path dir = (Path) key.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (dir.equals(datasetsRoot)) {
+                Path datasetDir = datasetsRoot.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(datasetDir)) {
+                    try {
+                        register(ws, datasetDir);
+                    } catch (IOException e) {
+                        LOG.log(Level.WARNING, "Dataset catalog cannot watch " + datasetDir, e);
+                    }
+                }
+                changed.add(datasetDir.getFileName().toString());
+            } else {
+                changed.add(dir.getFileName().toString());
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private static void register(WatchService ws, Path dir) throws IOException {
+        dir.register(ws,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    // ---- dataset.json / latest.json ----
+
+    static DatasetInfo readDatasetInfo(Path datasetDir) {
+        DatasetInfo info = new DatasetInfo();
+        info.datasetId = datasetDir.getFileName().toString();
+
+        // dataset.json (title/updatedAt)
+        Path datasetJson = datasetDir.resolve("dataset.json");
+        if (Files.isRegularFile(datasetJson)) {
+            try (var reader = Files.newBufferedReader(datasetJson, StandardCharsets.UTF_8);
+                 JsonReader jr = Json.createReader(reader)) {
+                JsonObject obj = jr.readObject();
+                info.datasetId = obj.getString("datasetId", info.datasetId);
+                info.title = obj.getString("title", info.datasetId);
+                info.updatedAt = obj.getString("updatedAt", null);
+            } catch (Exception ignored) {
+                info.title = info.datasetId;
+            }
+        } else {
+            info.title = info.datasetId;
+        }
+
+        // latest.json (latest bundle id)
+        Path latestJson = datasetDir.resolve("latest.json");
+        if (Files.isRegularFile(latestJson)) {
+            try (var reader = Files.newBufferedReader(latestJson, StandardCharsets.UTF_8);
+                 JsonReader jr = Json.createReader(reader)) {
+                JsonObject obj = jr.readObject();
+                info.latestBundleId = obj.getString("bundleId", null);
+                // if updatedAt missing, use publishedAt
+                if (info.updatedAt == null) {
+                    info.updatedAt = obj.getString("publishedAt", null);
+                }
+            } catch (Exception ignored) {}
+        }
+
+        // If still no updatedAt, fall back to filesystem mtime
+        if (info.updatedAt == null) {
+            try {
+                info.updatedAt = Files.getLastModifiedTime(datasetDir).toInstant().toString();
+            } catch (Exception ignored) {}
+        }
+
+        return info;
+    }
+}
@@ -0,0 +1,29 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped per-dataset locks serializing the metadata commit of a publish
+ * (dataset.json, releases.json, latest.json).
+ *
+ * A fixed set of stripes keeps memory constant; different datasets only contend
+ * when they hash to the same stripe.
+ */
+public final class DatasetLocks {
+
+    private static final int STRIPES = 64; // power of two
+
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) LOCKS[i] = new ReentrantLock();
+    }
+
+    private DatasetLocks() {}
+
+    public static ReentrantLock forDataset(String datasetId) {
+        int h = datasetId.hashCode();
+        h ^= (h >>> 16);
+        return LOCKS[h & (STRIPES - 1)];
+    }
+}
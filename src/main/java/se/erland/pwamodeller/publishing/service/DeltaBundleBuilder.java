@@ -0,0 +1,196 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonStructure;
+import jakarta.json.JsonWriter;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PromotionStrategy;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Delta publish: rebuilds a full bundle in staging from an already published base bundle plus
+ * per-file replacements or RFC 6902 JSON Patches, then validates it like an uploaded ZIP.
+ *
+ * Unchanged files are hard-linked from the base bundle (copied if links are not possible).
+ * A patched file is loaded as a JSON tree, so patches suit small edits to large files best.
+ *
+ * Does NOT publish to DATA_ROOT.
+ */
+@ApplicationScoped
+public class DeltaBundleBuilder {
+
+    static final List<String> BUNDLE_FILES = List.of("manifest.json", "model.json", "indexes.json");
+
+    private final PublishConfig config;
+    private final BundleWorkers workers;
+    private final TrashReaper trash;
+
+    public DeltaBundleBuilder(PublishConfig config) {
+        this(config, new BundleWorkers(), new TrashReaper(config));
+    }
+
+    @Inject
+    public DeltaBundleBuilder(PublishConfig config, BundleWorkers workers, TrashReaper trash) {
+        this.config = config;
+        this.workers = workers;
+        this.trash = trash;
+    }
+
+    /**
+     * @param replacements file name -> new content (manifest.json, model.json, indexes.json)
+     * @param patches      file name -> JSON Patch document (array) applied to the base file
+     */
+    public ValidatedBundle buildFromBase(String datasetId,
+                                         String baseBundleId,
+                                         Map<String, InputStream> replacements,
+                                         Map<String, InputStream> patches) {
+        DatasetIdPolicy.requireValid(datasetId);
+        if (baseBundleId == null || baseBundleId.isBlank()
+                || baseBundleId.contains("..") || baseBundleId.contains("/") || baseBundleId.contains("\\")) {
+            throw PublishingException.validation("Invalid baseBundleId");
+        }
+        for (String name : BUNDLE_FILES) {
+            if (replacements.containsKey(name) && patches.containsKey(name)) {
+                throw PublishingException.validation("Both a replacement and a patch were sent for " + name);
+            }
+        }
+
+        Path baseDir = config.getDataRoot().toAbsolutePath().normalize().resolve("bundles").resolve(baseBundleId.trim());
+        Path stagingDir = config.getStagingRoot().toAbsolutePath().normalize().resolve(UUID.randomUUID().toString());
+        Path bundleDir = stagingDir.resolve("unpack").resolve("delta");
+
+        // Read below; keeps BundleCollector off it meanwhile.
+        if (!InFlightStaging.addExisting(baseDir)) {
+            throw new PublishingException(404, "Base bundle not found: " + baseBundleId);
+        }
+        InFlightStaging.add(stagingDir);
+        try (ParallelJsonValidation validation = new ParallelJsonValidation(config.getMaxJsonBytes(), workers.executor())) {
+            FileOps.ensureDir(bundleDir);
+
+            for (String name : BUNDLE_FILES) {
+                Path target = bundleDir.resolve(name);
+                if (replacements.containsKey(name)) {
+                    writeReplacement(replacements.get(name), target, name);
+                } else if (patches.containsKey(name)) {
+                    writePatched(baseDir.resolve(name), patches.get(name), target, name);
+                } else {
+                    // Unchanged: already validated when the base was published.
+                    PublisherService.promoteFile(baseDir.resolve(name), target, PromotionStrategy.LINK);
+                    continue;
+                }
+                validation.submit(target);
+            }
+            validation.await();
+
+            // The base already passed the check, so it only has to run when model or indexes changed.
+            boolean contentChanged = replacements.containsKey("model.json") || patches.containsKey("model.json")
+                    || replacements.containsKey("indexes.json") || patches.containsKey("indexes.json");
+            if (config.isReferenceCheck() && contentChanged) {
+                ReferenceIntegrityCheck.check(bundleDir.resolve("model.json"), bundleDir.resolve("indexes.json"));
+            }
+
+            Path manifestPath = bundleDir.resolve("manifest.json");
+            String bundleId = ZipValidator.readBundleId(manifestPath);
+            new ZipValidator(config).requireNoExistingBundle(bundleId);
+
+            return new ValidatedBundle(bundleId, bundleDir, manifestPath,
+                    bundleDir.resolve("model.json"), bundleDir.resolve("indexes.json"),
+                    config.isBlobStore() ? digests(bundleDir) : Map.of(), stagingDir, null);
+
+        } catch (PublishingException pe) {
+            trash.discardStaging(stagingDir);
+            throw pe;
+        } catch (IllegalArgumentException iae) {
+            trash.discardStaging(stagingDir);
+            if (iae.getMessage() != null && iae.getMessage().toLowerCase().contains("too large")) {
+                throw PublishingException.tooLarge(iae.getMessage());
+            }
+            throw PublishingException.validation(iae.getMessage());
+        } catch (Exception e) {
+            trash.discardStaging(stagingDir);
+            throw new PublishingException(500, "Internal error while building delta bundle", e);
+        } finally {
+            InFlightStaging.remove(baseDir);
+        }
+    }
+
+    /**
+     * Upper bound for what a delta publish writes, for {@link DiskSpaceGuard#reserve}: the parts
+     * sent ({@code contentLength}, negative when unknown) plus the base bundle's files, since a
+     * patched file is rewritten in full.
+     */
+    public long estimateBytes(String baseBundleId, long contentLength) {
+        long sent = contentLength < 0 ? config.getMaxZipBytes() : contentLength;
+        if (baseBundleId == null || baseBundleId.isBlank()
+                || baseBundleId.contains("..") || baseBundleId.contains("/") || baseBundleId.contains("\\")) {
+            return sent; // rejected by buildFromBase
+        }
+        Path baseDir = config.getDataRoot().toAbsolutePath().normalize().resolve("bundles").resolve(baseBundleId.trim());
+        long base = 0;
+        for (String name : BUNDLE_FILES) {
+            try {
+                base += Files.size(baseDir.resolve(name));
+            } catch (IOException ignored) {
+                // missing base: buildFromBase answers 404
+            }
+        }
+        return sent + base;
+    }
+
+    private void writeReplacement(InputStream in, Path target, String name) throws IOException {
+        byte[] bytes = ZipValidator.readBounded(in, name, config.getMaxJsonBytes());
+        Files.write(target, bytes, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void writePatched(Path baseFile, InputStream patchIn, Path target, String name) throws IOException {
+        if (!Files.isRegularFile(baseFile)) {
+            throw new PublishingException(404, "Base bundle has no " + name);
+        }
+        byte[] patchBytes = ZipValidator.readBounded(patchIn, name + " patch", config.getMaxJsonBytes());
+
+        JsonStructure patched;
+        try (JsonReader pr = Json.createReader(new InputStreamReader(new ByteArrayInputStream(patchBytes), StandardCharsets.UTF_8));
+             JsonReader br = Json.createReader(Files.newBufferedReader(baseFile, StandardCharsets.UTF_8))) {
+            JsonArray patch = pr.readArray();
+            patched = Json.createPatch(patch).apply(br.read());
+        } catch (JsonException je) {
+            throw new IllegalArgumentException("Failed to apply JSON Patch to " + name + ": " + je.getMessage(), je);
+        }
+
+        try (OutputStream os = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+             JsonWriter jw = Json.createWriter(w)) {
+            jw.write(patched);
+        }
+    }
+
+    private static Map<String, String> digests(Path bundleDir) throws IOException {
+        return Map.of(
+                "manifest.json", BlobStore.sha256Of(bundleDir.resolve("manifest.json")),
+                "model.json", BlobStore.sha256Of(bundleDir.resolve("model.json")),
+                "indexes.json", BlobStore.sha256Of(bundleDir.resolve("indexes.json")));
+    }
+}
@@ -0,0 +1,286 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.Startup;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Admission control on disk space: a publish reserves what it may write to the staging and data
+ * filesystems, and is rejected up front when that does not fit. For uploads the HTTP layer
+ * reserves before the request body is received (see
+ * {@link se.erland.pwamodeller.publishing.api.PublishAdmissionFilter}).
+ *
+ * The estimate is PUBLISH_DISK_RESERVE_FACTOR x the upload size (Content-Length, or
+ * PUBLISH_MAX_ZIP_BYTES when unknown). A multipart upload is first stored by the HTTP layer in
+ * quarkus.http.body.uploads-directory, so it also reserves the request body on that filesystem.
+ * A reservation is admitted when usable space minus the bytes already reserved by publishes in
+ * flight still leaves PUBLISH_DISK_MIN_FREE_BYTES, which keeps room for metadata writes (latest.json, releases) of other datasets. Otherwise:
+ * - 503 + Retry-After while other publishes hold reservations on that filesystem (they free
+ *   their staging space when they finish)
+ * - 507 when nothing else is in flight, i.e. the disk itself is too full
+ *
+ * Roots on the same FileStore share one ledger. The ledger counts what a publish may still
+ * write, so space it has already written is briefly counted twice; that errs on the side of
+ * rejecting.
+ */
+@Startup // registers its gauges before the first publish
+@ApplicationScoped
+public class DiskSpaceGuard {
+
+    /** Where the HTTP layer stores multipart file parts; Quarkus' default when not configured. */
+    static final String UPLOADS_DIRECTORY_PROPERTY = "quarkus.http.body.uploads-directory";
+
+    private static final Logger LOG = Logger.getLogger(DiskSpaceGuard.class.getName());
+
+    static final long RETRY_AFTER_SECONDS = 10;
+
+    /** Usable bytes on the filesystem holding {@code root}; replaceable in tests. */
+    interface SpaceProbe {
+        long usable(Path root) throws IOException;
+    }
+
+    /** Free and reserved space for one configured root. */
+    public record DiskStatus(String root, long usableBytes, long reservedBytes) {
+        /** Usable space not yet promised to a publish in flight. */
+        public long availableBytes() { return usableBytes - reservedBytes; }
+    }
+
+    /** Space held for one publish; release it by closing. */
+    public static final class Reservation implements AutoCloseable {
+        private static final Reservation NONE = new Reservation(new Volume[0], new long[0], 0);
+
+        private final Volume[] volumes;
+        private final long[] amounts;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(Volume[] volumes, long[] amounts, long bytes) {
+            this.volumes = volumes;
+            this.amounts = amounts;
+            this.bytes = bytes;
+        }
+
+        /** Bytes held for the publish itself, i.e. not counting the request body. */
+        public long bytes() { return bytes; }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) return;
+            for (int i = 0; i < volumes.length; i++) volumes[i].reserved.addAndGet(-amounts[i]);
+        }
+    }
+
+    /** One filesystem and the bytes reserved on it. */
+    private static final class Volume {
+        final String name;
+        final Path root;
+        final AtomicLong reserved = new AtomicLong();
+
+        Volume(String name, Path root) {
+            this.name = name;
+            this.root = root;
+        }
+    }
+
+    private final PublishConfig config;
+    private final Optional<Path> uploadsDirectory;
+    private final SpaceProbe probe;
+    // {staging, data, uploads}: one Volume per FileStore, so shared filesystems share a ledger;
+    // uploads is null when multipart bodies are not stored on disk by this guard's HTTP layer
+    private volatile Volume[] volumes;
+
+    /** Without an HTTP layer: only the staging and data filesystems are tracked. */
+    public DiskSpaceGuard(PublishConfig config) {
+        this(config, PublishMetrics.noop(), Optional.empty());
+    }
+
+    @Inject
+    public DiskSpaceGuard(PublishConfig config, PublishMetrics metrics,
+                          @ConfigProperty(name = UPLOADS_DIRECTORY_PROPERTY, defaultValue = "file-uploads") String uploadsDirectory) {
+        this(config, metrics, Optional.of(Path.of(uploadsDirectory)));
+    }
+
+    DiskSpaceGuard(PublishConfig config, PublishMetrics metrics, Optional<Path> uploadsDirectory) {
+        this(config, metrics, uploadsDirectory, root -> Files.getFileStore(nearestExisting(root)).getUsableSpace());
+    }
+
+    DiskSpaceGuard(PublishConfig config, PublishMetrics metrics, Optional<Path> uploadsDirectory, SpaceProbe probe) {
+        this.config = config;
+        this.uploadsDirectory = uploadsDirectory;
+        this.probe = probe;
+        metrics.diskGauges("staging", this, g -> g.usableOrNaN(g.volumes()[0]), g -> g.volumes()[0].reserved.get());
+        metrics.diskGauges("data", this, g -> g.usableOrNaN(g.volumes()[1]), g -> g.volumes()[1].reserved.get());
+        if (uploadsDirectory.isPresent()) {
+            metrics.diskGauges("uploads", this, g -> g.usableOrNaN(g.volumes()[2]), g -> g.volumes()[2].reserved.get());
+        }
+    }
+
+    /**
+     * Reserves room for a multipart upload of {@code contentLength} bytes (negative when unknown)
+     * that is still to be received, spooled, unpacked and published.
+     */
+    public Reservation reserveForUpload(long contentLength) {
+        long max = config.getMaxZipBytes();
+        long upload = contentLength < 0 ? max : Math.min(contentLength, max);
+        return reserve(upload * config.getDiskReserveFactor(), contentLength < 0 ? max : contentLength);
+    }
+
+    /**
+     * Reserves room in the uploads directory for a multipart request body of {@code contentLength}
+     * bytes (negative when unknown) still to be received; what publishing it writes is reserved
+     * separately once it is known.
+     */
+    public Reservation reserveForRequestBody(long contentLength) {
+        return reserve(0, contentLength < 0 ? config.getMaxZipBytes() : contentLength);
+    }
+
+    /** Reserves room to publish an upload of {@code uploadBytes} that is already stored in staging. */
+    public Reservation reserveForStoredUpload(long uploadBytes) {
+        return reserve(Math.max(0, uploadBytes) * Math.max(0, config.getDiskReserveFactor() - 1));
+    }
+
+    /** Reserves {@code bytes} on the staging and data filesystems, or throws 503/507. */
+    public Reservation reserve(long bytes) {
+        return reserve(bytes, 0);
+    }
+
+    /**
+     * Reserves {@code publishBytes} on the staging and data filesystems plus {@code bodyBytes} on
+     * the uploads directory's filesystem (when tracked), or throws 503/507.
+     */
+    private synchronized Reservation reserve(long publishBytes, long bodyBytes) {
+        Volume[] all = volumes();
+        Map<Volume, Long> need = new LinkedHashMap<>();
+        if (publishBytes > 0) {
+            need.put(all[0], publishBytes);
+            need.put(all[1], publishBytes); // no-op when staging and data share a FileStore
+        }
+        if (bodyBytes > 0 && all[2] != null) need.merge(all[2], bodyBytes, Long::sum);
+        if (need.isEmpty()) return Reservation.NONE;
+
+        long minFree = config.getDiskMinFreeBytes();
+        for (Map.Entry<Volume, Long> entry : need.entrySet()) {
+            Volume v = entry.getKey();
+            long bytes = entry.getValue();
+            long usable;
+            try {
+                usable = probe.usable(v.root);
+            } catch (IOException | RuntimeException e) {
+                // Not measurable (e.g. root not mounted yet): do not block publishing on the probe.
+                LOG.log(Level.FINE, "Cannot read usable space for " + v.root, e);
+                continue;
+            }
+            long reserved = v.reserved.get();
+            if (bytes <= usable - reserved - minFree) continue;
+            String msg = "Not enough disk space on the " + v.name + " filesystem: publish needs "
+                    + bytes + " bytes, " + Math.max(0, usable - reserved - minFree) + " available";
+            if (reserved > 0) throw PublishingException.unavailable(msg + "; retry later", RETRY_AFTER_SECONDS);
+            throw PublishingException.insufficientStorage(msg);
+        }
+        Volume[] vs = need.keySet().toArray(new Volume[0]);
+        long[] amounts = new long[vs.length];
+        for (int i = 0; i < vs.length; i++) {
+            amounts[i] = need.get(vs[i]);
+            vs[i].reserved.addAndGet(amounts[i]);
+        }
+        return new Reservation(vs, amounts, publishBytes);
+    }
+
+    /**
+     * Per root (staging, data, and uploads when tracked): usable and reserved space; usable is -1
+     * when it cannot be read.
+     */
+    public List<DiskStatus> status() {
+        Volume[] vs = volumes();
+        if (vs[2] == null) return List.of(status("staging", vs[0]), status("data", vs[1]));
+        return List.of(status("staging", vs[0]), status("data", vs[1]), status("uploads", vs[2]));
+    }
+
+    /** False when unreserved free space on any tracked root is below PUBLISH_DISK_READY_MIN_FREE_BYTES. */
+    public boolean ready() {
+        long threshold = config.getDiskReadyMinFreeBytes();
+        for (DiskStatus s : status()) {
+            if (s.usableBytes() >= 0 && s.availableBytes() < threshold) return false;
+        }
+        return true;
+    }
+
+    private DiskStatus status(String name, Volume v) {
+        long usable;
+        try {
+            usable = probe.usable(v.root);
+        } catch (IOException | RuntimeException e) {
+            usable = -1;
+        }
+        return new DiskStatus(name, usable, v.reserved.get());
+    }
+
+    private double usableOrNaN(Volume v) {
+        try {
+            return probe.usable(v.root);
+        } catch (IOException | RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private Volume[] volumes() {
+        Volume[] vs = volumes;
+        if (vs == null) {
+            synchronized (this) {
+                vs = volumes;
+                if (vs == null) {
+                    vs = resolveVolumes();
+                    volumes = vs;
+                }
+            }
+        }
+        return vs;
+    }
+
+    private Volume[] resolveVolumes() {
+        Path staging = config.getStagingRoot().toAbsolutePath().normalize();
+        Path data = config.getDataRoot().toAbsolutePath().normalize();
+        Volume s = new Volume("staging", staging);
+        Volume d = sameStore(staging, data) ? s : new Volume("data", data);
+        Volume u = uploadsDirectory.map(dir -> {
+            Path uploads = dir.toAbsolutePath().normalize();
+            if (sameStore(uploads, staging)) return s;
+            return sameStore(uploads, data) ? d : new Volume("uploads", uploads);
+        }).orElse(null);
+        return new Volume[] {s, d, u};
+    }
+
+    private static boolean sameStore(Path a, Path b) {
+        try {
+            FileStore sa = Files.getFileStore(nearestExisting(a));
+            FileStore sb = Files.getFileStore(nearestExisting(b));
+            return sa.equals(sb);
+        } catch (IOException | RuntimeException e) {
+            return false; // checked separately, which only errs on the side of rejecting
+        }
+    }
+
+    private static Path nearestExisting(Path path) throws IOException {
+        Path p = path.toAbsolutePath().normalize();
+        while (p != null && !Files.exists(p)) p = p.getParent();
+        if (p == null) throw new IOException("No existing ancestor for " + path);
+        return p;
+    }
+}
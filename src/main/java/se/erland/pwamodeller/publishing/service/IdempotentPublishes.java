@@ -0,0 +1,105 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.api.ReleaseInfo;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Answers publish retries from the release log instead of publishing again.
+ *
+ * Every release published from an upload records the upload's SHA-256 and, when the request had
+ * one, the SHA-256 of its Idempotency-Key. {@link #find} looks a retry up among the newest
+ * {@link #WINDOW} releases of the dataset whose bundle still exists (retention may have collected
+ * it), before the upload is received:
+ * - Idempotency-Key: the release published with that key (422 when the client also sends a
+ *   digest that differs from what was published under the key)
+ * - X-Bundle-SHA256 (hex SHA-256 of the ZIP, also verified against the upload when it is
+ *   published): the newest release of exactly that content
+ */
+@ApplicationScoped
+public class IdempotentPublishes {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String DIGEST_HEADER = "X-Bundle-SHA256";
+
+    static final int WINDOW = 1000;
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final Pattern SHA256_HEX = Pattern.compile("^[0-9a-fA-F]{64}$");
+
+    private final PublishConfig config;
+
+    @Inject
+    public IdempotentPublishes(PublishConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * The result of the earlier publish this request repeats, if any. {@code key} and
+     * {@code sha256} are the raw header values (null when absent); both are validated (422).
+     */
+    public Optional<PublishResult> find(String datasetId, String key, String sha256) {
+        DatasetIdPolicy.requireValid(datasetId);
+        requireValidKey(key);
+        requireValidDigest(sha256);
+        if (key == null && sha256 == null) return Optional.empty();
+
+        Path datasetDir = config.getDataRoot().toAbsolutePath().normalize().resolve("datasets").resolve(datasetId);
+        if (!Files.isDirectory(datasetDir)) return Optional.empty();
+
+        String keySha256 = keySha256(key);
+        ReleaseInfo r;
+        try {
+            r = ReleaseLog.find(datasetDir, keySha256, sha256, WINDOW);
+        } catch (IOException e) {
+            throw new PublishingException(500, "Failed to read releases", e);
+        }
+        if (r == null) return Optional.empty();
+        if (keySha256 != null && keySha256.equals(r.keySha256) && sha256 != null
+                && r.uploadSha256 != null && !sha256.equalsIgnoreCase(r.uploadSha256)) {
+            throw PublishingException.validation(KEY_HEADER + " was already used for different content");
+        }
+        Path bundleDir = config.getDataRoot().toAbsolutePath().normalize().resolve("bundles").resolve(r.bundleId);
+        if (!Files.isDirectory(bundleDir)) return Optional.empty();
+        return Optional.of(PublisherService.result(config, datasetId, r.bundleId, r.publishedAt));
+    }
+
+    /** Hex SHA-256 of an Idempotency-Key, which is what the release log stores; null for null. */
+    static String keySha256(String key) {
+        if (key == null) return null;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Checks an X-Bundle-SHA256 value (null is fine); 422 unless it is 64 hex digits. */
+    public static void requireValidDigest(String sha256) {
+        if (sha256 != null && !SHA256_HEX.matcher(sha256).matches()) {
+            throw PublishingException.validation(DIGEST_HEADER + " must be a hex SHA-256 (64 hex digits)");
+        }
+    }
+
+    /** Checks an Idempotency-Key value (null is fine); 422 unless it is 1-255 visible ASCII characters. */
+    public static void requireValidKey(String key) {
+        if (key == null) return;
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH || !key.chars().allMatch(c -> c >= 0x21 && c <= 0x7e)) {
+            throw PublishingException.validation(KEY_HEADER + " must be 1-" + MAX_KEY_LENGTH + " visible ASCII characters");
+        }
+    }
+}
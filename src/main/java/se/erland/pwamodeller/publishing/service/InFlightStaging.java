@@ -0,0 +1,64 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paths owned by a running publish (STAGING_ROOT/&lt;uuid&gt;, job spools, sealed upload
+ * sessions, bundles/.tmp.* dirs, and bundles/&lt;bundleId&gt; until latest.json points to it).
+ * Registered when created, removed when the owner is done with them; {@link StagingJanitor} and
+ * {@link BundleCollector} never delete a registered path, however old. Registrations are counted,
+ * so two publishes racing for the same bundle dir do not unregister each other.
+ */
+final class InFlightStaging {
+
+    /**
+     * Held by {@link BundleCollector} while it checks and deletes one bundle dir, and by
+     * {@link #addExisting}: a dir is either registered before the collector looks at it, or gone.
+     */
+    static final ReentrantLock BUNDLE_DELETES = new ReentrantLock();
+
+    private static final Map<Path, Integer> PATHS = new ConcurrentHashMap<>();
+
+    private InFlightStaging() {}
+
+    static void add(Path path) {
+        PATHS.merge(key(path), 1, Integer::sum);
+    }
+
+    /**
+     * Registers a published dir that is only read (e.g. a delta's base bundle); false, and nothing
+     * registered, when it does not exist (any more).
+     */
+    static boolean addExisting(Path dir) {
+        BUNDLE_DELETES.lock();
+        try {
+            if (!Files.isDirectory(dir)) return false;
+            add(dir);
+            return true;
+        } finally {
+            BUNDLE_DELETES.unlock();
+        }
+    }
+
+    static void remove(Path path) {
+        if (path != null) PATHS.computeIfPresent(key(path), (p, n) -> n > 1 ? n - 1 : null);
+    }
+
+    static boolean contains(Path path) {
+        return PATHS.containsKey(key(path));
+    }
+
+    /** Copy of the registered paths. */
+    static Set<Path> snapshot() {
+        return Set.copyOf(PATHS.keySet());
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
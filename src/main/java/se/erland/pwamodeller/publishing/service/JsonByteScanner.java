@@ -0,0 +1,399 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Byte-level JSON (RFC 8259) well-formedness scanner.
+ *
+ * Checks the grammar and UTF-8 validity directly on the encoded bytes: nothing is decoded to
+ * chars and no per-token objects are created; the only state is a small nesting stack.
+ * Input is pushed in chunks and tokens may span chunk boundaries, so the same scanner serves
+ * memory-mapped files and streams.
+ *
+ * Accepts what the Parsson parser accepts (any top-level value, only space/tab/CR/LF as
+ * whitespace, nesting below 1000) and additionally rejects malformed UTF-8.
+ */
+final class JsonByteScanner {
+
+    /** Deepest accepted nesting of arrays/objects (Parsson rejects depth 1000). */
+    static final int DEFAULT_MAX_DEPTH = 999;
+
+    /** Files smaller than this are read into the heap; mapping them costs more than it saves. */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+    private static final long MAP_WINDOW = 1L << 30;
+    private static final int CANCEL_CHECK_BYTES = 1 << 20;
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private static final int VALUE = 0;              // expecting a value
+    private static final int VALUE_OR_END_ARRAY = 1; // right after '['
+    private static final int KEY_OR_END_OBJECT = 2;  // right after '{'
+    private static final int KEY = 3;                // after ',' in an object
+    private static final int COLON = 4;
+    private static final int AFTER_VALUE = 5;        // expecting ',', ']', '}' or end of input
+    private static final int STRING = 6;
+    private static final int ESCAPE = 7;
+    private static final int UNICODE_ESCAPE = 8;
+    private static final int UTF8 = 9;               // inside a multi-byte sequence
+    private static final int MINUS = 10;
+    private static final int ZERO = 11;
+    private static final int INT = 12;
+    private static final int DOT = 13;
+    private static final int FRAC = 14;
+    private static final int EXP = 15;
+    private static final int EXP_SIGN = 16;
+    private static final int EXP_DIGITS = 17;
+    private static final int LITERAL = 18;
+
+    private final String fileName;
+    private final int maxDepth;
+    private boolean[] inObject = new boolean[16]; // nesting stack: true = object, false = array
+    private int depth;
+
+    private int state = VALUE;
+    private boolean stringIsKey;
+    private int hexRemaining;
+    private int utf8Remaining;
+    private int utf8Lo;
+    private int utf8Hi;
+    private byte[] literal;
+    private int literalPos;
+
+    private long consumed;      // bytes fed so far
+    private long base;          // absolute offset of index 0 of the current buffer
+    private long line = 1;
+    private long lineStart;     // absolute offset of the first byte of the current line
+
+    JsonByteScanner(String fileName, int maxDepth) {
+        this.fileName = fileName;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Scans a whole file; large files are memory-mapped and fed in slices, checking
+     * {@code cancelled} between slices (throws CancellationException once it is set).
+     */
+    static void scanFile(Path path, String fileName, int maxDepth, BooleanSupplier cancelled) throws IOException {
+        JsonByteScanner scanner = new JsonByteScanner(fileName, maxDepth);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < MAP_THRESHOLD) {
+                scanner.feed(ByteBuffer.wrap(Files.readAllBytes(path)));
+            } else {
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos));
+                    // Each slice lowers the limit, so loop on capacity rather than hasRemaining().
+                    while (map.position() < map.capacity()) {
+                        if (cancelled.getAsBoolean()) throw new CancellationException("Validation of " + fileName + " cancelled");
+                        map.limit(Math.min(map.capacity(), map.position() + CANCEL_CHECK_BYTES));
+                        scanner.feed(map);
+                    }
+                }
+            }
+        }
+        scanner.finish();
+    }
+
+    void feed(byte[] b, int off, int len) {
+        feed(ByteBuffer.wrap(b, off, len));
+    }
+
+    /** Consumes buf from its position to its limit. */
+    void feed(ByteBuffer buf) {
+        final int end = buf.limit();
+        int i = buf.position();
+        base = consumed - i;
+        while (i < end) {
+            int b = buf.get(i) & 0xFF;
+            switch (state) {
+                case STRING -> i = string(buf, i, end);
+                case AFTER_VALUE -> {
+                    if (isWhitespace(b)) {
+                        i = whitespace(buf, i, end);
+                        continue;
+                    }
+                    if (depth == 0) throw error(i, "unexpected data after the top-level value");
+                    if (b == ',') {
+                        state = inObject[depth - 1] ? KEY : VALUE;
+                    } else if (b == ']' && !inObject[depth - 1] || b == '}' && inObject[depth - 1]) {
+                        depth--;
+                    } else {
+                        throw error(i, "expected ',' or '" + (inObject[depth - 1] ? '}' : ']') + "'");
+                    }
+                    i++;
+                }
+                case VALUE, VALUE_OR_END_ARRAY -> {
+                    if (isWhitespace(b)) {
+                        i = whitespace(buf, i, end);
+                        continue;
+                    }
+                    if (b == ']' && state == VALUE_OR_END_ARRAY) {
+                        depth--;
+                        state = AFTER_VALUE;
+                    } else {
+                        startValue(b, i);
+                    }
+                    i++;
+                }
+                case KEY_OR_END_OBJECT, KEY -> {
+                    if (isWhitespace(b)) {
+                        i = whitespace(buf, i, end);
+                        continue;
+                    }
+                    if (b == '"') {
+                        stringIsKey = true;
+                        state = STRING;
+                    } else if (b == '}' && state == KEY_OR_END_OBJECT) {
+                        depth--;
+                        state = AFTER_VALUE;
+                    } else {
+                        throw error(i, "expected a string key");
+                    }
+                    i++;
+                }
+                case COLON -> {
+                    if (isWhitespace(b)) {
+                        i = whitespace(buf, i, end);
+                        continue;
+                    }
+                    if (b != ':') throw error(i, "expected ':'");
+                    state = VALUE;
+                    i++;
+                }
+                case ESCAPE -> {
+                    switch (b) {
+                        case '"', '\\', '/', 'b', 'f', 'n', 'r', 't' -> state = STRING;
+                        case 'u' -> {
+                            hexRemaining = 4;
+                            state = UNICODE_ESCAPE;
+                        }
+                        default -> throw error(i, "invalid escape sequence");
+                    }
+                    i++;
+                }
+                case UNICODE_ESCAPE -> {
+                    if (!isHex(b)) throw error(i, "invalid \\u escape");
+                    if (--hexRemaining == 0) state = STRING;
+                    i++;
+                }
+                case UTF8 -> {
+                    if (b < utf8Lo || b > utf8Hi) throw error(i, "invalid UTF-8 sequence");
+                    utf8Lo = 0x80;
+                    utf8Hi = 0xBF;
+                    if (--utf8Remaining == 0) state = STRING;
+                    i++;
+                }
+                case LITERAL -> {
+                    if (b != literal[literalPos]) throw error(i, "invalid literal");
+                    if (++literalPos == literal.length) state = AFTER_VALUE;
+                    i++;
+                }
+                default -> i = number(b, i);
+            }
+        }
+        consumed = base + end;
+        base = consumed;
+        buf.position(end);
+    }
+
+    /** Fails unless exactly one complete top-level value has been fed. */
+    void finish() {
+        switch (state) {
+            case ZERO, INT, FRAC, EXP_DIGITS -> state = AFTER_VALUE;
+            default -> {}
+        }
+        if (state != AFTER_VALUE || depth != 0) {
+            throw error(0, consumed == 0 ? "empty document" : "unexpected end of input");
+        }
+    }
+
+    private void startValue(int b, int i) {
+        switch (b) {
+            case '{' -> {
+                push(true, i);
+                state = KEY_OR_END_OBJECT;
+            }
+            case '[' -> {
+                push(false, i);
+                state = VALUE_OR_END_ARRAY;
+            }
+            case '"' -> {
+                stringIsKey = false;
+                state = STRING;
+            }
+            case '-' -> state = MINUS;
+            case '0' -> state = ZERO;
+            case '1', '2', '3', '4', '5', '6', '7', '8', '9' -> state = INT;
+            case 't' -> startLiteral(TRUE);
+            case 'f' -> startLiteral(FALSE);
+            case 'n' -> startLiteral(NULL);
+            default -> throw error(i, "expected a value");
+        }
+    }
+
+    private void startLiteral(byte[] lit) {
+        literal = lit;
+        literalPos = 1;
+        state = LITERAL;
+    }
+
+    private void push(boolean object, int i) {
+        if (depth >= maxDepth) throw error(i, "nesting deeper than " + maxDepth);
+        if (depth == inObject.length) {
+            boolean[] grown = new boolean[Math.min(maxDepth, inObject.length * 2)];
+            System.arraycopy(inObject, 0, grown, 0, depth);
+            inObject = grown;
+        }
+        inObject[depth++] = object;
+    }
+
+    /** Fast path through string content; returns the index after the bytes it handled. */
+    private int string(ByteBuffer buf, int i, int end) {
+        // Skip 8 plain bytes at a time; any quote, backslash, control or non-ASCII byte drops to the byte loop.
+        while (i + Long.BYTES <= end && isPlain(buf.getLong(i))) {
+            i += Long.BYTES;
+        }
+        while (i < end) {
+            int b = buf.get(i) & 0xFF;
+            if (b == '"') {
+                state = stringIsKey ? COLON : AFTER_VALUE;
+                return i + 1;
+            }
+            if (b == '\\') {
+                state = ESCAPE;
+                return i + 1;
+            }
+            if (b < 0x20) throw error(i, "unescaped control character in string");
+            if (b >= 0x80) {
+                startUtf8(b, i);
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /** Lead byte of a multi-byte sequence: sets how many continuation bytes follow and the range of the first one. */
+    private void startUtf8(int b, int i) {
+        utf8Lo = 0x80;
+        utf8Hi = 0xBF;
+        if (b >= 0xC2 && b <= 0xDF) {
+            utf8Remaining = 1;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            utf8Remaining = 2;
+            if (b == 0xE0) utf8Lo = 0xA0;       // overlong
+            else if (b == 0xED) utf8Hi = 0x9F;  // UTF-16 surrogates
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            utf8Remaining = 3;
+            if (b == 0xF0) utf8Lo = 0x90;       // overlong
+            else if (b == 0xF4) utf8Hi = 0x8F;  // above U+10FFFF
+        } else {
+            throw error(i, "invalid UTF-8 sequence");
+        }
+        state = UTF8;
+    }
+
+    /**
+     * One byte inside a number. A byte that cannot continue the number ends it (if it is
+     * complete) and is re-read as the byte after the value.
+     */
+    private int number(int b, int i) {
+        boolean digit = b >= '0' && b <= '9';
+        switch (state) {
+            case MINUS -> {
+                if (!digit) throw error(i, "expected a digit after '-'");
+                state = b == '0' ? ZERO : INT;
+            }
+            case ZERO -> {
+                if (b == '.') state = DOT;
+                else if (b == 'e' || b == 'E') state = EXP;
+                else return endNumber(i);
+            }
+            case INT -> {
+                if (digit) return i + 1;
+                if (b == '.') state = DOT;
+                else if (b == 'e' || b == 'E') state = EXP;
+                else return endNumber(i);
+            }
+            case DOT -> {
+                if (!digit) throw error(i, "expected a digit after '.'");
+                state = FRAC;
+            }
+            case FRAC -> {
+                if (digit) return i + 1;
+                if (b == 'e' || b == 'E') state = EXP;
+                else return endNumber(i);
+            }
+            case EXP -> {
+                if (b == '+' || b == '-') state = EXP_SIGN;
+                else if (digit) state = EXP_DIGITS;
+                else throw error(i, "expected a digit in exponent");
+            }
+            case EXP_SIGN -> {
+                if (!digit) throw error(i, "expected a digit in exponent");
+                state = EXP_DIGITS;
+            }
+            case EXP_DIGITS -> {
+                if (!digit) return endNumber(i);
+            }
+            default -> throw new IllegalStateException("Unknown scanner state " + state);
+        }
+        return i + 1;
+    }
+
+    private int endNumber(int i) {
+        state = AFTER_VALUE;
+        return i;
+    }
+
+    private int whitespace(ByteBuffer buf, int i, int end) {
+        while (i < end) {
+            int b = buf.get(i);
+            if (b == '\n') {
+                line++;
+                lineStart = base + i + 1;
+            } else if (b != ' ' && b != '\t' && b != '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /** True when none of the 8 bytes is '"', '\\', below 0x20 or above 0x7F (SWAR zero-byte tests). */
+    private static boolean isPlain(long w) {
+        long quote = w ^ (ONES * '"');
+        long backslash = w ^ (ONES * '\\');
+        long special = ((quote - ONES) & ~quote)
+                | ((backslash - ONES) & ~backslash)
+                | (w - ONES * 0x20)
+                | w;
+        return (special & HIGHS) == 0;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isHex(int b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+    }
+
+    private IllegalArgumentException error(int indexInChunk, String reason) {
+        return new IllegalArgumentException("Invalid JSON in " + fileName + ": " + reason
+                + " at line " + line + ", column " + (base + indexInChunk - lineStart + 1));
+    }
+}
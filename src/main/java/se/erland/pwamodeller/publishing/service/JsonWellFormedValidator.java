@@ -1,29 +1,50 @@
 package se.erland.pwamodeller.publishing.service;
 
-import jakarta.json.Json;
-import jakarta.json.stream.JsonParser;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
 
-/** Streaming JSON well-formedness check using JSON-P parser. */
+/**
+ * JSON well-formedness check (grammar, UTF-8, nesting depth) on raw bytes via {@link JsonByteScanner};
+ * files are memory-mapped, streams are scanned chunk by chunk.
+ */
 public final class JsonWellFormedValidator {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private JsonWellFormedValidator() {}
 
     public static void validateJsonFile(Path path, long maxBytes) throws IOException {
+        validateJsonFile(path, maxBytes, () -> false);
+    }
+
+    /** As {@link #validateJsonFile(Path, long)}; stops with a CancellationException once {@code cancelled} is set. */
+    public static void validateJsonFile(Path path, long maxBytes, BooleanSupplier cancelled) throws IOException {
         long size = Files.size(path);
         if (size > maxBytes) {
             throw new IllegalArgumentException("JSON file too large: " + path.getFileName() + " (" + size + " bytes), max=" + maxBytes);
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
-             JsonParser parser = Json.createParser(reader)) {
-            while (parser.hasNext()) {
-                parser.next();
+        JsonByteScanner.scanFile(path, path.getFileName().toString(), JsonByteScanner.DEFAULT_MAX_DEPTH, cancelled);
+    }
+
+    /**
+     * Validates JSON read from a stream (e.g. a ZIP entry while it is being extracted).
+     * The stream is consumed to its end (trailing data must be whitespace) but is NOT closed.
+     */
+    public static void validateJsonStream(InputStream in, String fileName, long maxBytes) throws IOException {
+        JsonByteScanner scanner = new JsonByteScanner(fileName, JsonByteScanner.DEFAULT_MAX_DEPTH);
+        byte[] buf = new byte[BUFFER_SIZE];
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            total += n;
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("JSON file too large: " + fileName + " (> " + maxBytes + " bytes), max=" + maxBytes);
             }
+            scanner.feed(buf, 0, n);
         }
+        scanner.finish();
     }
 }
@@ -0,0 +1,85 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Validates the JSON files of one bundle concurrently.
+ *
+ * Files are submitted as soon as they are on disk (e.g. while the next ZIP entry is still being
+ * extracted). The first failure sets a shared cancellation flag: running scans stop at their next
+ * slice, queued ones do not start, and the caller can stop extracting. {@link #await()} rethrows
+ * that first failure, so the 422 names the file that was actually bad.
+ */
+final class ParallelJsonValidation implements AutoCloseable {
+
+    private final long maxBytes;
+    private final Executor executor;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+    ParallelJsonValidation(long maxBytes, Executor executor) {
+        this.maxBytes = maxBytes;
+        this.executor = executor;
+    }
+
+    void submit(Path file) {
+        tasks.add(CompletableFuture.runAsync(() -> {
+            if (cancelled.get()) return;
+            try {
+                JsonWellFormedValidator.validateJsonFile(file, maxBytes, cancelled::get);
+            } catch (CancellationException ce) {
+                // Another file already failed.
+            } catch (IOException e) {
+                fail(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }, executor));
+    }
+
+    /** True once any submitted file has failed. */
+    boolean failed() {
+        return cancelled.get();
+    }
+
+    /** Waits for all submitted files; throws the first failure (IllegalArgumentException for bad JSON). */
+    void await() throws IOException {
+        waitForAll();
+        Throwable t = firstFailure.get();
+        if (t == null) return;
+        if (t instanceof UncheckedIOException uio) throw uio.getCause();
+        if (t instanceof RuntimeException re) throw re;
+        throw new IllegalStateException(t);
+    }
+
+    /** Cancels what is still running and waits, so no scan still has a file open during cleanup. */
+    @Override
+    public void close() {
+        cancelled.set(true);
+        waitForAll();
+    }
+
+    private void fail(RuntimeException e) {
+        firstFailure.compareAndSet(null, e);
+        cancelled.set(true);
+    }
+
+    private void waitForAll() {
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ignored) {
+            // Tasks record their own failures.
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes precompressed {@code <file>.gz} sidecars next to bundle files so nginx can
+ * serve them with gzip_static instead of compressing on every request.
+ *
+ * Bundles are immutable, so maximum compression is paid once at publish time.
+ */
+final class Precompressor {
+
+    static final String GZIP_SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Precompressor() {}
+
+    /**
+     * Compresses all files in parallel on {@code executor}. On any failure, sidecars already written are
+     * removed again (a truncated .gz would be served as-is) and the error is rethrown.
+     */
+    static void gzipAll(List<Path> files, Executor executor) throws IOException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Path f : files) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    gzip(f);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ce) {
+            // Wait for the rest so no task is still writing while we clean up.
+            futures.forEach(fu -> fu.handle((v, t) -> null).join());
+            for (Path f : files) Files.deleteIfExists(sidecar(f));
+            Throwable cause = ce.getCause();
+            if (cause instanceof IOException ioe) throw ioe;
+            throw new IOException("Failed to precompress bundle files", cause);
+        }
+    }
+
+    static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+    }
+
+    /** Writes the sidecar via a temp file + rename, so a concurrent reader never sees a partial .gz. */
+    static void gzip(Path file) throws IOException {
+        Path target = sidecar(file);
+        Path tmp = file.resolveSibling("." + target.getFileName() + ".tmp." + UUID.randomUUID());
+        try {
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = new GZIPOutputStream(
+                         Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                         BUFFER_SIZE) {
+                     { def.setLevel(Deflater.BEST_COMPRESSION); }
+                 }) {
+                in.transferTo(out);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous publish jobs.
+ *
+ * The request thread only copies the upload to STAGING_ROOT/job-&lt;jobId&gt;.zip; validation and
+ * publishing run on a fixed worker pool with a bounded queue. When the queue is full, new jobs are
+ * rejected with 503 + Retry-After instead of piling up; {@link #requireCapacity} lets the HTTP
+ * layer do that before the request body is received. Disk space for the job is reserved with
+ * {@link DiskSpaceGuard} (by the HTTP layer before the body is received, or here before spooling)
+ * and held until the job has run. Job state is kept in memory and finished jobs are forgotten
+ * after {@link #RETENTION}.
+ */
+@Startup // registers its gauges before the first publish
+@ApplicationScoped
+public class PublishJobService {
+
+    private static final Logger LOG = Logger.getLogger(PublishJobService.class.getName());
+
+    public static final String SPOOL_PREFIX = "job-";
+    static final Duration RETENTION = Duration.ofHours(1);
+    static final long RETRY_AFTER_SECONDS = 5;
+
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    /** Mutable job state; written by the worker, read by status requests. */
+    public static final class Job {
+        private final String jobId;
+        private final String datasetId;
+        private final Instant submittedAt = Instant.now();
+        private final long submittedNanos = System.nanoTime();
+        private volatile State state = State.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile PublishResult result;
+        private volatile PublishingException error;
+
+        Job(String jobId, String datasetId) {
+            this.jobId = jobId;
+            this.datasetId = datasetId;
+        }
+
+        public String jobId() { return jobId; }
+        public String datasetId() { return datasetId; }
+        public Instant submittedAt() { return submittedAt; }
+        public State state() { return state; }
+        public Instant startedAt() { return startedAt; }
+        public Instant finishedAt() { return finishedAt; }
+        /** Set when SUCCEEDED. */
+        public PublishResult result() { return result; }
+        /** Set when FAILED; carries the status the synchronous endpoint would have returned. */
+        public PublishingException error() { return error; }
+    }
+
+    private final PublishConfig config;
+    private final ZipValidator validator;
+    private final PublisherService publisher;
+    private final PublishMetrics metrics;
+    private final DiskSpaceGuard diskSpace;
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public PublishJobService(PublishConfig config, ZipValidator validator, PublisherService publisher) {
+        this(config, validator, publisher, PublishMetrics.noop());
+    }
+
+    public PublishJobService(PublishConfig config, ZipValidator validator, PublisherService publisher, PublishMetrics metrics) {
+        this(config, validator, publisher, metrics, new DiskSpaceGuard(config));
+    }
+
+    @Inject
+    public PublishJobService(PublishConfig config, ZipValidator validator, PublisherService publisher, PublishMetrics metrics,
+                             DiskSpaceGuard diskSpace) {
+        this.config = config;
+        this.validator = validator;
+        this.publisher = publisher;
+        this.metrics = metrics;
+        this.diskSpace = diskSpace;
+        int workers = config.getAsyncWorkers();
+        int capacity = config.getAsyncQueueCapacity();
+        this.queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, queue,
+                new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        metrics.gauges("async", executor, ThreadPoolExecutor::getActiveCount, e -> e.getQueue().size());
+    }
+
+    public Job submit(String datasetId, InputStream upload, Optional<String> title) {
+        return submit(datasetId, upload, title, -1);
+    }
+
+    /**
+     * Spools the upload and queues validate-and-publish.
+     * Fails with 503 before reading {@code upload} when the pool is already saturated, and with
+     * 503/507 when {@code contentLength} (negative when unknown) does not fit on disk. By then a
+     * multipart body has been received; see {@link #requireCapacity}.
+     */
+    public Job submit(String datasetId, InputStream upload, Optional<String> title, long contentLength) {
+        return submit(datasetId, upload, title, contentLength, null, null);
+    }
+
+    /**
+     * Like {@link #submit(String, InputStream, Optional, long)}; the job checks the upload against
+     * {@code sha256} and records {@code idempotencyKey} with the release (either may be null).
+     */
+    public Job submit(String datasetId, InputStream upload, Optional<String> title, long contentLength,
+                      String idempotencyKey, String sha256) {
+        return submit(datasetId, upload, title, contentLength, idempotencyKey, sha256, null);
+    }
+
+    /**
+     * Like {@link #submit(String, InputStream, Optional, long, String, String)} with disk space
+     * already reserved for the upload ({@link DiskSpaceGuard#reserveForUpload}), which the job
+     * takes over and releases, also when this throws; null to reserve here.
+     */
+    public Job submit(String datasetId, InputStream upload, Optional<String> title, long contentLength,
+                      String idempotencyKey, String sha256, DiskSpaceGuard.Reservation reserved) {
+        try {
+            if (!DatasetIdPolicy.isValid(datasetId)) {
+                throw PublishingException.validation("Invalid datasetId: '" + datasetId + "'");
+            }
+            requireCapacity(datasetId);
+        } catch (RuntimeException e) {
+            if (reserved != null) reserved.close();
+            throw e;
+        }
+        DiskSpaceGuard.Reservation reservation = reserved != null ? reserved : reserveForUpload(datasetId, contentLength);
+
+        String jobId = UUID.randomUUID().toString();
+        Path spool;
+        try {
+            spool = spool(jobId, upload);
+        } catch (RuntimeException e) {
+            reservation.close();
+            throw e;
+        }
+
+        Job job = new Job(jobId, datasetId);
+        jobs.put(jobId, job);
+        try {
+            executor.execute(() -> run(job, spool, title, idempotencyKey, sha256, reservation));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            deleteQuietly(spool);
+            InFlightStaging.remove(spool);
+            reservation.close();
+            throw busy(datasetId);
+        }
+        return job;
+    }
+
+    /**
+     * 503 + Retry-After when a job submitted now would be rejected. Checked by
+     * {@link se.erland.pwamodeller.publishing.api.PublishAdmissionFilter} before the request
+     * body is received; {@link #submit} checks again.
+     */
+    public void requireCapacity(String datasetId) {
+        evictFinished();
+        if (saturated()) throw busy(datasetId);
+    }
+
+    public Optional<Job> get(String jobId) {
+        evictFinished();
+        return jobId == null ? Optional.empty() : Optional.ofNullable(jobs.get(jobId));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Job job, Path spool, Optional<String> title, String idempotencyKey, String sha256,
+                     DiskSpaceGuard.Reservation reservation) {
+        job.startedAt = Instant.now();
+        job.state = State.RUNNING;
+        try (InputStream in = Files.newInputStream(spool)) {
+            ValidatedBundle vb = sha256 != null
+                    ? validator.validateToStaging(job.datasetId, in, sha256)
+                    : validator.validateToStaging(job.datasetId, in);
+            job.result = publisher.publish(job.datasetId, vb, title, idempotencyKey);
+            job.state = State.SUCCEEDED;
+        } catch (PublishingException pe) {
+            job.error = pe;
+            job.state = State.FAILED;
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Publish job " + job.jobId + " failed", e);
+            job.error = new PublishingException(500, "Failed to process publish request", e);
+            job.state = State.FAILED;
+        } finally {
+            deleteQuietly(spool);
+            InFlightStaging.remove(spool);
+            reservation.close();
+            job.finishedAt = Instant.now();
+            // Queue wait included, like the synchronous endpoint's wait for a slot.
+            metrics.request(job.datasetId, job.error != null ? job.error.getStatus() : 201, job.submittedNanos);
+        }
+    }
+
+    private DiskSpaceGuard.Reservation reserveForUpload(String datasetId, long contentLength) {
+        try {
+            return diskSpace.reserveForUpload(contentLength);
+        } catch (PublishingException pe) {
+            metrics.request(datasetId, pe.getStatus(), System.nanoTime());
+            throw pe;
+        }
+    }
+
+    private Path spool(String jobId, InputStream upload) {
+        Path stagingRoot = config.getStagingRoot().toAbsolutePath().normalize();
+        Path spool = stagingRoot.resolve(SPOOL_PREFIX + jobId + ".zip");
+        long max = config.getMaxZipBytes();
+        InFlightStaging.add(spool); // until the job has run
+        try {
+            FileOps.ensureDir(stagingRoot);
+            try (OutputStream out = Files.newOutputStream(spool, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                byte[] buf = new byte[64 * 1024];
+                long total = 0;
+                int read;
+                while ((read = upload.read(buf)) > 0) {
+                    total += read;
+                    if (total > max) throw PublishingException.tooLarge("ZIP too large; max=" + max);
+                    out.write(buf, 0, read);
+                }
+            }
+            return spool;
+        } catch (PublishingException pe) {
+            deleteQuietly(spool);
+            InFlightStaging.remove(spool);
+            throw pe;
+        } catch (IOException e) {
+            deleteQuietly(spool);
+            InFlightStaging.remove(spool);
+            throw new PublishingException(500, "Failed to spool upload", e);
+        }
+    }
+
+    /** All workers busy and no queue slot left (the queue may still drain before execute). */
+    private boolean saturated() {
+        return executor.getActiveCount() >= executor.getMaximumPoolSize() && queue.remainingCapacity() == 0;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try { Files.deleteIfExists(file); } catch (IOException ignored) {}
+    }
+
+    private PublishingException busy(String datasetId) {
+        metrics.request(datasetId, 503, System.nanoTime());
+        return PublishingException.unavailable("Publish queue is full; retry later", RETRY_AFTER_SECONDS);
+    }
+
+    private void evictFinished() {
+        Instant cutoff = Instant.now().minus(RETENTION);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(cutoff));
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "publish-job-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
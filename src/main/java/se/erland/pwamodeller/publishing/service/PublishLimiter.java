@@ -0,0 +1,69 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.Startup;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many validate-and-publish runs execute at once, independent of how many
+ * request threads the HTTP layer has. Callers beyond the cap wait up to
+ * PUBLISH_ACQUIRE_TIMEOUT_MS in arrival order, then get 503 + Retry-After.
+ */
+@Startup // registers its gauges before the first publish
+@ApplicationScoped
+public class PublishLimiter {
+
+    static final long RETRY_AFTER_SECONDS = 5;
+
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+
+    public PublishLimiter(PublishConfig config) {
+        this(config, PublishMetrics.noop());
+    }
+
+    @Inject
+    public PublishLimiter(PublishConfig config, PublishMetrics metrics) {
+        this.maxConcurrent = config.getMaxConcurrentPublishes();
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.acquireTimeoutMillis = config.getPublishAcquireTimeout().toMillis();
+        metrics.gauges("sync", this, PublishLimiter::inFlight, PublishLimiter::waiting);
+    }
+
+    /** Runs {@code work} while holding a permit. */
+    public <T> T run(Supplier<T> work) {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw PublishingException.unavailable("Interrupted while waiting for a publish slot", RETRY_AFTER_SECONDS);
+        }
+        if (!acquired) {
+            throw PublishingException.unavailable("Too many concurrent publishes; retry later", RETRY_AFTER_SECONDS);
+        }
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Publishes currently holding a permit. */
+    public int inFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /** Publishes waiting for a permit. */
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+}
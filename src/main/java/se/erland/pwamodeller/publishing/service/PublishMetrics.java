@@ -0,0 +1,243 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publish metrics (Micrometer, scraped at GET /api/metrics). Publish timers and summaries are
+ * tagged by dataset; only datasets in the {@link DatasetCatalog} get their own tag value, anything
+ * else (rejected publishes to unknown datasets, the first publish of a new one) is "other". Timers
+ * publish the fixed {@link #SLO_BUCKETS} rather than a percentile histogram:
+ * - publish.stage (timer, tag stage): spool, extract, validate, references, promote,
+ *   precompress, commit (metadata under the dataset lock), archive (background), cleanup; "spool" only exists
+ *   with PUBLISH_STREAMING_VALIDATION=false, streaming validation reads the upload as part of "extract"
+ * - publish.requests (timer, tag status): whole publish as the client sees it, including the wait
+ *   for a slot; the count per status gives successes, 409s, 413s, 422s and 503s
+ * - publish.bytes.in / publish.bytes.out (summaries): upload size, bytes placed under bundles/
+ *
+ * - publish.janitor.removed / publish.janitor.reclaimed (counters, tag kind): stale staging/temp
+ *   entries and bytes removed by {@link StagingJanitor}, and kind=trash for dirs of finished or
+ *   failed publishes deleted by {@link TrashReaper}
+ * - publish.archive (counter, tag result=archived|failed|rejected) and publish.archive.pending
+ *   (gauge): background ZIP archiving by {@link ZipArchiver}; the "archive" stage is timed there too
+ * - publish.gc.removed / publish.gc.reclaimed (counters, tag kind=bundle|blob): unreferenced
+ *   bundles and blobs removed by {@link BundleCollector}
+ * - publish.active / publish.waiting (gauges, tag mode=sync|async): publishes running and waiting
+ *   for a slot ({@link PublishLimiter}) or a worker ({@link PublishJobService})
+ * - publish.disk.usable / publish.disk.reserved (gauges, tag root=staging|data|uploads): free space and
+ *   space held for in-flight publishes ({@link DiskSpaceGuard})
+ */
+@ApplicationScoped
+public class PublishMetrics {
+
+    public static final String STAGE_SPOOL = "spool";
+    public static final String STAGE_EXTRACT = "extract";
+    public static final String STAGE_VALIDATE = "validate";
+    public static final String STAGE_REFERENCES = "references";
+    public static final String STAGE_PROMOTE = "promote";
+    public static final String STAGE_PRECOMPRESS = "precompress";
+    public static final String STAGE_COMMIT = "commit";
+    public static final String STAGE_ARCHIVE = "archive";
+    public static final String STAGE_CLEANUP = "cleanup";
+
+    /** Histogram buckets (le) of the publish.stage and publish.requests timers. */
+    static final Duration[] SLO_BUCKETS = {
+            Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(2)};
+
+    static final String OTHER_DATASET = "other";
+
+    private static final PublishMetrics NOOP = new PublishMetrics(new CompositeMeterRegistry());
+
+    private final MeterRegistry registry;
+    private final Predicate<String> knownDataset;
+    /** Stage timers per dataset tag, indexed like {@link PublishTimings#STAGES}; saves the registry lookup per stage. */
+    private final ConcurrentHashMap<String, AtomicReferenceArray<Timer>> stageTimers = new ConcurrentHashMap<>();
+
+    /** Tags every valid dataset id; for services constructed outside CDI. */
+    public PublishMetrics(MeterRegistry registry) {
+        this(registry, DatasetIdPolicy::isValid);
+    }
+
+    @Inject
+    public PublishMetrics(MeterRegistry registry, DatasetCatalog catalog) {
+        this(registry, catalog::contains);
+    }
+
+    private PublishMetrics(MeterRegistry registry, Predicate<String> knownDataset) {
+        this.registry = registry;
+        this.knownDataset = knownDataset;
+    }
+
+    /** Records nothing; for services constructed outside CDI. */
+    public static PublishMetrics noop() {
+        return NOOP;
+    }
+
+    MeterRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Records a stage that started at {@code startNanos} (System.nanoTime()) and ends now, both as a
+     * metric and into the current request's {@link PublishTimings}.
+     */
+    public void stage(String stage, String datasetId, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        PublishTimings.record(stage, elapsed);
+        int i = PublishTimings.indexOf(stage);
+        String dataset = datasetTag(datasetId);
+        AtomicReferenceArray<Timer> timers = stageTimers.get(dataset);
+        if (timers == null) {
+            timers = stageTimers.computeIfAbsent(dataset, d -> new AtomicReferenceArray<>(PublishTimings.STAGES.length));
+        }
+        Timer timer = i < 0 ? null : timers.get(i);
+        if (timer == null) {
+            timer = Timer.builder("publish.stage")
+                    .description("Time spent in one publish stage")
+                    .tag("stage", stage)
+                    .tag("dataset", dataset)
+                    .serviceLevelObjectives(SLO_BUCKETS)
+                    .register(registry);
+            if (i >= 0) timers.set(i, timer); // racing writers store the same registered timer
+        }
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    public void bytesIn(String datasetId, long bytes) {
+        bytes("publish.bytes.in", "Uploaded bundle bytes", datasetId, bytes);
+    }
+
+    public void bytesOut(String datasetId, long bytes) {
+        bytes("publish.bytes.out", "Bytes placed under bundles/ (including .gz sidecars)", datasetId, bytes);
+    }
+
+    /** Runs one publish and records its duration under the HTTP status it ends with. */
+    public <T> T track(String datasetId, Supplier<T> publish) {
+        long start = System.nanoTime();
+        int status = 500;
+        try {
+            T result = publish.get();
+            status = 201;
+            return result;
+        } catch (PublishingException pe) {
+            status = pe.getStatus();
+            throw pe;
+        } finally {
+            request(datasetId, status, start);
+        }
+    }
+
+    /** Records a publish that started at {@code startNanos} and ended now with {@code status}. */
+    public void request(String datasetId, int status, long startNanos) {
+        Timer.builder("publish.requests")
+                .description("Publish requests by final status")
+                .tag("dataset", datasetTag(datasetId))
+                .tag("status", Integer.toString(status))
+                .serviceLevelObjectives(SLO_BUCKETS)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Records one stale staging/temp entry removed by {@link StagingJanitor}. */
+    void janitorReclaimed(String kind, long bytes) {
+        Counter.builder("publish.janitor.removed")
+                .description("Stale staging/temp entries removed by the janitor")
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+        Counter.builder("publish.janitor.reclaimed")
+                .description("Bytes freed by the janitor")
+                .baseUnit("bytes")
+                .tag("kind", kind)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /** Counts one uploaded ZIP by how archiving it ended. */
+    void archive(String result) {
+        Counter.builder("publish.archive")
+                .description("Uploaded ZIPs by archiving outcome")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    /** Registers publish.archive.pending. */
+    <T> void archiveGauge(T source, ToDoubleFunction<T> pending) {
+        Gauge.builder("publish.archive.pending", source, pending)
+                .description("Uploaded ZIPs waiting to be archived, including retries")
+                .register(registry);
+    }
+
+    /** Records one unreferenced bundle or blob removed by {@link BundleCollector}. */
+    void gcReclaimed(String kind, long bytes) {
+        Counter.builder("publish.gc.removed")
+                .description("Unreferenced bundles and blobs removed by the collector")
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+        Counter.builder("publish.gc.reclaimed")
+                .description("Bytes freed by the collector")
+                .baseUnit("bytes")
+                .tag("kind", kind)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /** Registers publish.active and publish.waiting for one publish mode ("sync" or "async"). */
+    <T> void gauges(String mode, T source, ToDoubleFunction<T> active, ToDoubleFunction<T> waiting) {
+        Gauge.builder("publish.active", source, active)
+                .description("Publishes currently running")
+                .tag("mode", mode)
+                .register(registry);
+        Gauge.builder("publish.waiting", source, waiting)
+                .description("Publishes waiting to run")
+                .tag("mode", mode)
+                .register(registry);
+    }
+
+    /** Registers publish.disk.usable and publish.disk.reserved for one filesystem root ("staging" or "data"). */
+    <T> void diskGauges(String root, T source, ToDoubleFunction<T> usable, ToDoubleFunction<T> reserved) {
+        Gauge.builder("publish.disk.usable", source, usable)
+                .description("Usable space on the filesystem")
+                .baseUnit("bytes")
+                .tag("root", root)
+                .register(registry);
+        Gauge.builder("publish.disk.reserved", source, reserved)
+                .description("Space reserved for publishes in flight")
+                .baseUnit("bytes")
+                .tag("root", root)
+                .register(registry);
+    }
+
+    private void bytes(String name, String description, String datasetId, long bytes) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("dataset", datasetTag(datasetId))
+                .register(registry)
+                .record(bytes);
+    }
+
+    /** Only known datasets become tag values, so requests cannot inflate cardinality. */
+    private String datasetTag(String datasetId) {
+        return knownDataset.test(datasetId) ? datasetId : OTHER_DATASET;
+    }
+}
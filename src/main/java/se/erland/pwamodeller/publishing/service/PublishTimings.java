@@ -0,0 +1,102 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.util.Locale;
+
+/**
+ * Stage durations of one synchronous publish request, for the Server-Timing header and the
+ * per-request timing log line.
+ *
+ * Bound to the request thread between {@link #begin()} and {@link #end()}; services report into it
+ * through {@link PublishMetrics#stage}. Recording is one array add, no allocation. Stages recorded
+ * on other threads (async jobs) are not collected.
+ */
+public final class PublishTimings {
+
+    /** Stage names in pipeline order; also the Server-Timing metric names. */
+    static final String[] STAGES = {
+            PublishMetrics.STAGE_SPOOL,
+            PublishMetrics.STAGE_EXTRACT,
+            PublishMetrics.STAGE_VALIDATE,
+            PublishMetrics.STAGE_REFERENCES,
+            PublishMetrics.STAGE_PROMOTE,
+            PublishMetrics.STAGE_PRECOMPRESS,
+            PublishMetrics.STAGE_COMMIT,
+            PublishMetrics.STAGE_ARCHIVE,
+            PublishMetrics.STAGE_CLEANUP,
+    };
+
+    private static final ThreadLocal<PublishTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final long[] nanos = new long[STAGES.length];
+    private final boolean[] seen = new boolean[STAGES.length];
+
+    private PublishTimings() {
+    }
+
+    /** Starts collecting for the current thread's publish. */
+    public static PublishTimings begin() {
+        PublishTimings t = new PublishTimings();
+        CURRENT.set(t);
+        return t;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /** Adds {@code elapsedNanos} to {@code stage} of the current thread's publish, if any. */
+    static void record(String stage, long elapsedNanos) {
+        PublishTimings t = CURRENT.get();
+        if (t == null) return;
+        int i = indexOf(stage);
+        if (i < 0) return;
+        t.nanos[i] += elapsedNanos;
+        t.seen[i] = true;
+    }
+
+    static int indexOf(String stage) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i] == stage) return i; // callers pass the constants
+        }
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(stage)) return i;
+        }
+        return -1;
+    }
+
+    /** Stage duration in milliseconds, or -1 when the stage did not run. */
+    public double millis(String stage) {
+        int i = indexOf(stage);
+        return i < 0 || !seen[i] ? -1 : nanos[i] / 1e6;
+    }
+
+    /** Milliseconds since {@link #begin()}. */
+    public double totalMillis() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    /** Stages that ran, in pipeline order. */
+    public String[] stages() {
+        int n = 0;
+        for (boolean s : seen) if (s) n++;
+        String[] out = new String[n];
+        for (int i = 0, j = 0; i < STAGES.length; i++) {
+            if (seen[i]) out[j++] = STAGES[i];
+        }
+        return out;
+    }
+
+    /** RFC Server-Timing value, e.g. {@code extract;dur=12.4, validate;dur=3.1, total;dur=20.0}. */
+    public String serverTiming() {
+        StringBuilder sb = new StringBuilder(160);
+        for (String stage : stages()) {
+            sb.append(stage).append(";dur=").append(format(millis(stage))).append(", ");
+        }
+        return sb.append("total;dur=").append(format(totalMillis())).toString();
+    }
+
+    static String format(double millis) {
+        return String.format(Locale.ROOT, "%.1f", millis);
+    }
+}
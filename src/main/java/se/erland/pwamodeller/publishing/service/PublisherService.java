@@ -4,13 +4,16 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
 import jakarta.json.Json;
-import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonReader;
 import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PromotionStrategy;
 import se.erland.pwamodeller.publishing.config.PublishConfig;
 import se.erland.pwamodeller.publishing.fs.FileOps;
+import se.erland.pwamodeller.publishing.jfr.DatasetLockEvent;
+import se.erland.pwamodeller.publishing.jfr.FileOperationEvent;
+import se.erland.pwamodeller.publishing.jfr.PublishStageEvent;
 import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
 
 import java.io.IOException;
@@ -18,27 +21,74 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * Step 3 + Step 5 hardening:
  * - Write bundle to a temp dir, then move to final dir.
- * - Update latest.json last (atomic rename).
+ *   Staged files are renamed/hard-linked when staging and data share a volume.
+ * - Optional precompressed .gz sidecars for nginx gzip_static.
+ * - Optional content-addressed blob store (bundle files are hard links to blobs/).
+ * - Update latest.json last (atomic rename), under a per-dataset lock.
  * - Best-effort rollback: if latest write fails, remove new bundle dir.
- * - Optional ZIP archiving.
+ * - Optional ZIP archiving, handed to {@link ZipArchiver} so it stays off the request path.
+ * - The new bundle dir is registered in {@link InFlightStaging} until latest.json points to it,
+ *   so {@link BundleCollector} cannot take it for unreferenced.
  */
 @ApplicationScoped
 public class PublisherService {
 
+    private static final Logger LOG = Logger.getLogger(PublisherService.class.getName());
+
     private final PublishConfig config;
+    private final DatasetCatalog catalog;
+    private final PublishMetrics metrics;
+    private final ZipArchiver archiver;
+    private final BundleWorkers workers;
+    private final TrashReaper trash;
 
-    @Inject
     public PublisherService(PublishConfig config) {
+        this(config, null);
+    }
+
+    public PublisherService(PublishConfig config, DatasetCatalog catalog) {
+        this(config, catalog, PublishMetrics.noop());
+    }
+
+    public PublisherService(PublishConfig config, DatasetCatalog catalog, PublishMetrics metrics) {
+        this(config, catalog, metrics, new ZipArchiver(config, metrics), new BundleWorkers(), new TrashReaper(config, metrics));
+    }
+
+    @Inject
+    public PublisherService(PublishConfig config, DatasetCatalog catalog, PublishMetrics metrics,
+                            ZipArchiver archiver, BundleWorkers workers, TrashReaper trash) {
         this.config = config;
+        this.catalog = catalog;
+        this.metrics = metrics;
+        this.archiver = archiver;
+        this.workers = workers;
+        this.trash = trash;
     }
 
     public PublishResult publish(String datasetId, ValidatedBundle vb, Optional<String> datasetTitleOpt) {
+        return publish(datasetId, vb, datasetTitleOpt, null);
+    }
+
+    /**
+     * Publishes and records {@code idempotencyKey} (null for none) with the release, so a retry
+     * carrying the same key is answered by {@link IdempotentPublishes}. 409 when the key was
+     * already used for this dataset.
+     */
+    public PublishResult publish(String datasetId, ValidatedBundle vb, Optional<String> datasetTitleOpt, String idempotencyKey) {
         DatasetIdPolicy.requireValid(datasetId);
+        String keySha256 = IdempotentPublishes.keySha256(idempotencyKey);
         String bundleId = vb.bundleId();
         Instant now = Instant.now();
 
@@ -51,8 +101,10 @@ public class PublisherService {
 
         Path tempBundleDir = bundlesRoot.resolve(".tmp." + bundleId + "." + now.toEpochMilli());
 
+        boolean tempCreated = false;
         boolean bundleCreated = false;
 
+        InFlightStaging.add(bundleFinalDir); // until latest.json references it (or the publish failed)
         try {
             FileOps.ensureDir(bundlesRoot);
             FileOps.ensureDir(datasetsRoot);
@@ -62,47 +114,136 @@ public class PublisherService {
                 throw PublishingException.conflict("Bundle already exists: " + bundleId);
             }
 
-            // 1) Copy bundle files to temp dir
-            FileOps.ensureDir(tempBundleDir);
-            Files.copy(vb.manifestPath(), tempBundleDir.resolve("manifest.json"), StandardCopyOption.COPY_ATTRIBUTES);
-            Files.copy(vb.modelPath(), tempBundleDir.resolve("model.json"), StandardCopyOption.COPY_ATTRIBUTES);
-            Files.copy(vb.indexesPath(), tempBundleDir.resolve("indexes.json"), StandardCopyOption.COPY_ATTRIBUTES);
+            // 1) Promote bundle files to temp dir (rename/link on the same volume, copy otherwise)
+            InFlightStaging.add(tempBundleDir);
+            try {
+                Files.createDirectory(tempBundleDir);
+            } catch (FileAlreadyExistsException e) {
+                throw PublishingException.conflict("Bundle is already being published: " + bundleId);
+            }
+            tempCreated = true;
+            PromotionStrategy strategy = config.getPromotionStrategy();
+            long t = System.nanoTime();
+            PublishStageEvent promote = new PublishStageEvent();
+            promote.begin();
+            if (config.isBlobStore()) {
+                // Stage "promote" includes gzipping new blobs here; "precompress" is also recorded for that part.
+                promoteViaBlobStore(datasetId, vb, tempBundleDir, dataRoot, strategy);
+                metrics.stage(PublishMetrics.STAGE_PROMOTE, datasetId, t);
+            } else {
+                promoteFile(vb.manifestPath(), tempBundleDir.resolve("manifest.json"), strategy);
+                promoteFile(vb.modelPath(), tempBundleDir.resolve("model.json"), strategy);
+                promoteFile(vb.indexesPath(), tempBundleDir.resolve("indexes.json"), strategy);
+                metrics.stage(PublishMetrics.STAGE_PROMOTE, datasetId, t);
+                t = System.nanoTime();
+                precompressIfConfigured(tempBundleDir, bundleId);
+                if (config.isPrecompress()) metrics.stage(PublishMetrics.STAGE_PRECOMPRESS, datasetId, t);
+            }
+            metrics.bytesOut(datasetId, bundleBytes(tempBundleDir));
 
             // 2) Move temp dir -> final dir (atomic if supported)
-            moveDir(tempBundleDir, bundleFinalDir);
+            try {
+                FileOperationEvent move = new FileOperationEvent();
+                move.begin();
+                moveDir(tempBundleDir, bundleFinalDir);
+                move.commit("move", datasetId, bundleId, tempBundleDir, bundleFinalDir);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                throw PublishingException.conflict("Bundle already exists: " + bundleId);
+            }
             bundleCreated = true;
-
-            // 3) Upsert dataset metadata
-            upsertDatasetJson(datasetDir, datasetId, datasetTitleOpt, now);
-
-            // 4) Append release log (best-effort)
+            promote.commit(PublishMetrics.STAGE_PROMOTE, datasetId, bundleId, bundleFinalDir);
+
+            // 3-5) Metadata commit, serialized per dataset so concurrent publishes cannot lose
+            // a release entry or leave latest.json behind. Bundle I/O above stays outside.
+            t = System.nanoTime();
+            PublishStageEvent commit = new PublishStageEvent();
+            commit.begin();
+            ReentrantLock lock = DatasetLocks.forDataset(datasetId);
+            DatasetLockEvent lockWait = new DatasetLockEvent();
+            lockWait.begin();
+            lock.lock();
+            lockWait.commit(datasetId, bundleId);
             try {
-                appendRelease(datasetDir, bundleId, now);
-            } catch (Exception ignored) {}
-
-            // 5) latest.json LAST (atomic)
-            writeLatest(datasetDir, datasetId, bundleId, now);
+                // A concurrent request with the same key won the race; the caller replays its result.
+                if (keySha256 != null && ReleaseLog.find(datasetDir, keySha256, null, IdempotentPublishes.WINDOW) != null) {
+                    throw PublishingException.conflict("Idempotency-Key was already used for dataset " + datasetId);
+                }
+
+                // Timestamp taken inside the lock: commit order == publishedAt order.
+                now = Instant.now();
+
+                // 3) Upsert dataset metadata
+                FileOperationEvent write = new FileOperationEvent();
+                write.begin();
+                upsertDatasetJson(datasetDir, datasetId, datasetTitleOpt, now);
+                write.commit("writeDatasetJson", datasetId, bundleId, null, datasetDir.resolve("dataset.json"));
+
+                // 4) Append release log (best-effort)
+                try {
+                    write = new FileOperationEvent();
+                    write.begin();
+                    ReleaseLog.append(datasetDir, bundleId, now, vb.uploadSha256(), keySha256);
+                    // Otherwise ReleaseSnapshotCompactor brings releases.json up to date.
+                    if (config.getReleasesSnapshotInterval().isZero()) ReleaseLog.compactSnapshot(datasetDir);
+                    write.commit("appendRelease", datasetId, bundleId, null, datasetDir.resolve(ReleaseLog.LOG_FILE));
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Failed to append release " + bundleId + " for dataset " + datasetId, e);
+                }
+
+                // 5) latest.json LAST (atomic)
+                write = new FileOperationEvent();
+                write.begin();
+                writeLatest(datasetDir, datasetId, bundleId, now);
+                write.commit("writeLatest", datasetId, bundleId, null, datasetDir.resolve("latest.json"));
+                if (catalog != null) catalog.refresh(datasetId);
+            } finally {
+                lock.unlock();
+            }
+            commit.commit(PublishMetrics.STAGE_COMMIT, datasetId, bundleId, datasetDir);
+            metrics.stage(PublishMetrics.STAGE_COMMIT, datasetId, t);
 
-            // 6) Optional archive of uploaded ZIP
-            archiveZipIfConfigured(datasetId, bundleId, vb);
+            // 6) Optional archive of uploaded ZIP: moved out of staging here, archived in the background
+            if (vb.stagingDir() != null) {
+                archiver.submit(datasetId, bundleId, vb.stagingDir().resolve("upload.zip"), vb.uploadSha256());
+            }
 
             // 7) Cleanup staging
-            cleanupQuietly(vb.bundleDir().toAbsolutePath().normalize().getParent().getParent()); // staging/<requestId>
-
-            Optional<URI> latestUrl = config.getBaseUrl().map(b -> ensureSlash(b).resolve("datasets/" + datasetId + "/latest.json"));
-            Optional<URI> manifestUrl = config.getBaseUrl().map(b -> ensureSlash(b).resolve("bundles/" + bundleId + "/manifest.json"));
+            t = System.nanoTime();
+            trash.discard(vb.stagingDir()); // staging/<requestId>
+            metrics.stage(PublishMetrics.STAGE_CLEANUP, datasetId, t);
 
-            return new PublishResult(datasetId, bundleId, now.toString(), latestUrl, manifestUrl);
+            return result(config, datasetId, bundleId, now.toString());
 
         } catch (PublishingException pe) {
             rollbackQuietly(bundleCreated, bundleFinalDir);
-            rollbackQuietly(true, tempBundleDir);
+            rollbackQuietly(tempCreated, tempBundleDir);
             throw pe;
         } catch (Exception e) {
             rollbackQuietly(bundleCreated, bundleFinalDir);
-            rollbackQuietly(true, tempBundleDir);
+            rollbackQuietly(tempCreated, tempBundleDir);
             throw new PublishingException(500, "Failed to publish bundle", e);
+        } finally {
+            // A staging dir left behind by a failed publish is now the janitor's to reclaim.
+            InFlightStaging.remove(tempBundleDir);
+            InFlightStaging.remove(bundleFinalDir);
+            InFlightStaging.remove(vb.stagingDir());
+        }
+    }
+
+    /** The result of publishing {@code bundleId} at {@code publishedAt}; URLs when PUBLISH_BASE_URL is set. */
+    static PublishResult result(PublishConfig config, String datasetId, String bundleId, String publishedAt) {
+        Optional<URI> latestUrl = config.getBaseUrl().map(b -> ensureSlash(b).resolve("datasets/" + datasetId + "/latest.json"));
+        Optional<URI> manifestUrl = config.getBaseUrl().map(b -> ensureSlash(b).resolve("bundles/" + bundleId + "/manifest.json"));
+        return new PublishResult(datasetId, bundleId, publishedAt, latestUrl, manifestUrl);
+    }
+
+    /** Bundle dirs are flat: the three JSON files plus optional .gz sidecars. */
+    private static long bundleBytes(Path bundleDir) throws IOException {
+        long total = 0;
+        try (Stream<Path> files = Files.list(bundleDir)) {
+            for (Path f : (Iterable<Path>) files::iterator) total += Files.size(f);
         }
+        return total;
     }
 
     /** Overridable for tests. */
@@ -122,26 +263,6 @@ public class PublisherService {
         FileOps.atomicWriteUtf8(latestPath, latest.toString());
     }
 
-    private void archiveZipIfConfigured(String datasetId, String bundleId, ValidatedBundle vb) {
-        try {
-            Optional<Path> archRoot = config.getArchiveRoot();
-            if (archRoot.isEmpty()) return;
-
-            Path archiveRoot = archRoot.get().toAbsolutePath().normalize();
-            Path dstDir = archiveRoot.resolve(datasetId);
-            FileOps.ensureDir(dstDir);
-
-            // staging/<requestId>/upload.zip
-            Path bundleDir = vb.bundleDir().toAbsolutePath().normalize();
-            Path stagingDir = bundleDir.getParent().getParent(); // .../<requestId>/unpack/<bundleId> -> .../<requestId>
-            Path zipFile = stagingDir.resolve("upload.zip");
-            if (!Files.isRegularFile(zipFile)) return;
-
-            Path dst = dstDir.resolve(bundleId + ".zip");
-            Files.copy(zipFile, dst, StandardCopyOption.REPLACE_EXISTING);
-        } catch (Exception ignored) {}
-    }
-
     private static void upsertDatasetJson(Path datasetDir, String datasetId, Optional<String> titleOpt, Instant now) throws IOException {
         Path datasetJson = datasetDir.resolve("dataset.json");
         boolean exists = Files.isRegularFile(datasetJson);
@@ -179,26 +300,101 @@ public class PublisherService {
         FileOps.atomicWriteUtf8(datasetJson, b.build().toString());
     }
 
-    private static void appendRelease(Path datasetDir, String bundleId, Instant now) throws IOException {
-        Path releasesPath = datasetDir.resolve("releases.json");
+    /**
+     * Writes .gz sidecars for the bundle files (in parallel) before the bundle becomes visible.
+     * Best-effort: without sidecars nginx simply serves the uncompressed files.
+     */
+    private void precompressIfConfigured(Path tempBundleDir, String bundleId) {
+        if (!config.isPrecompress()) return;
+        try {
+            Precompressor.gzipAll(List.of(
+                    tempBundleDir.resolve("manifest.json"),
+                    tempBundleDir.resolve("model.json"),
+                    tempBundleDir.resolve("indexes.json")), workers.executor());
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to precompress bundle " + bundleId + "; serving uncompressed", e);
+        }
+    }
 
-        JsonObject release = Json.createObjectBuilder()
-                .add("bundleId", bundleId)
-                .add("publishedAt", now.toString())
-                .build();
+    /**
+     * Blob store mode: store each file once under blobs/ by SHA-256 (unchanged files across
+     * releases are not written again) and hard-link the blobs (plus .gz sidecars) into the bundle.
+     */
+    private void promoteViaBlobStore(String datasetId, ValidatedBundle vb, Path tempBundleDir, Path dataRoot, PromotionStrategy strategy) throws IOException {
+        BlobStore blobs = new BlobStore(dataRoot);
+        Map<String, Path> staged = new LinkedHashMap<>();
+        staged.put("manifest.json", vb.manifestPath());
+        staged.put("model.json", vb.modelPath());
+        staged.put("indexes.json", vb.indexesPath());
+
+        // Held until the blobs are linked, so BundleCollector cannot delete a blob found unlinked here.
+        // Once linked into tempBundleDir a blob is referenced, so gzip runs without the lock.
+        Map<String, Path> stored = new LinkedHashMap<>();
+        BlobStore.LINKS.readLock().lock();
+        try {
+            for (Map.Entry<String, Path> e : staged.entrySet()) {
+                Path blob = blobs.store(e.getValue(), vb.sha256().get(e.getKey()), strategy);
+                BlobStore.linkInto(blob, tempBundleDir.resolve(e.getKey()));
+                stored.put(e.getKey(), blob);
+            }
+        } finally {
+            BlobStore.LINKS.readLock().unlock();
+        }
 
-        JsonArrayBuilder arr = Json.createArrayBuilder();
+        if (!config.isPrecompress()) return;
+        List<Path> missing = stored.values().stream()
+                .distinct()
+                .filter(b -> !Files.isRegularFile(Precompressor.sidecar(b)))
+                .toList();
+        long t = System.nanoTime();
+        try {
+            Precompressor.gzipAll(missing, workers.executor());
+            metrics.stage(PublishMetrics.STAGE_PRECOMPRESS, datasetId, t);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to precompress blobs for bundle " + vb.bundleId() + "; serving uncompressed", e);
+        }
 
-        if (Files.isRegularFile(releasesPath)) {
-            try (var reader = Files.newBufferedReader(releasesPath, StandardCharsets.UTF_8);
-                 JsonReader jr = Json.createReader(reader)) {
-                var existing = jr.readArray();
-                existing.forEach(arr::add);
-            } catch (Exception ignored) {}
+        // A sidecar nothing links to yet may be collected meanwhile; that file is then served uncompressed.
+        BlobStore.LINKS.readLock().lock();
+        try {
+            for (Map.Entry<String, Path> e : stored.entrySet()) {
+                Path gz = Precompressor.sidecar(e.getValue());
+                if (Files.isRegularFile(gz)) {
+                    BlobStore.linkInto(gz, tempBundleDir.resolve(e.getKey() + Precompressor.GZIP_SUFFIX));
+                }
+            }
+        } finally {
+            BlobStore.LINKS.readLock().unlock();
         }
+    }
 
-        arr.add(release);
-        FileOps.atomicWriteUtf8(releasesPath, arr.build().toString());
+    /**
+     * Places a staged file at dst without copying bytes when the strategy allows it.
+     * Staged files are owned by this publish, so moving them out of staging is safe.
+     * Falls back to a copy if the rename/link is rejected (e.g. cross-device).
+     */
+    static void promoteFile(Path src, Path dst, PromotionStrategy strategy) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        try {
+            switch (strategy) {
+                case MOVE -> {
+                    Files.move(src, dst, StandardCopyOption.ATOMIC_MOVE);
+                    event.commit("move", null, null, src, dst);
+                    return;
+                }
+                case LINK -> {
+                    Files.createLink(dst, src);
+                    event.commit("link", null, null, src, dst);
+                    return;
+                }
+                default -> { }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.deleteIfExists(dst);
+        }
+        Files.copy(src, dst, StandardCopyOption.COPY_ATTRIBUTES);
+        event.commit("copy", null, null, src, dst);
     }
 
     private static void moveDir(Path src, Path dst) throws IOException {
@@ -215,17 +411,8 @@ public class PublisherService {
         return URI.create(s);
     }
 
-    private static void rollbackQuietly(boolean should, Path path) {
-        if (!should || path == null) return;
-        cleanupQuietly(path);
-    }
-
-    private static void cleanupQuietly(Path dir) {
-        if (dir == null) return;
-        try (var walk = Files.walk(dir)) {
-            walk.sorted((a,b) -> b.compareTo(a)).forEach(p -> {
-                try { Files.deleteIfExists(p); } catch (IOException ignored) {}
-            });
-        } catch (IOException ignored) {}
+    private void rollbackQuietly(boolean should, Path path) {
+        if (!should) return;
+        trash.discard(path);
     }
 }
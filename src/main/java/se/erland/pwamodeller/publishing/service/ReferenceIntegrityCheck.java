@@ -0,0 +1,201 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional semantic check (PUBLISH_REFERENCE_CHECK=true): element ids referenced from
+ * indexes.json must exist in model.json.
+ *
+ * Both files are streamed once with the JSON-P event parser; no DOM is built. Element ids are
+ * the string values of "id" members anywhere in model.json. References in indexes.json are:
+ * - the keys of a "byId" object
+ * - string values of "id" members inside a "byId" or other "by..." index
+ * - string values of the {@link #REFERENCE_FIELDS} members (elementId, sourceId, ...), anywhere
+ * - strings inside arrays nested in any other "by..." index (byType: {"Component": ["id-1", ...]})
+ * Other members ending in "Id" (bundleId, datasetId, schemaId, ...) are not element references.
+ *
+ * Ids are kept as 64-bit hashes in an open-addressing long set (about 16 bytes per id), so
+ * memory does not depend on id length. A hash collision can hide a dangling reference; it can
+ * never reject a valid bundle.
+ *
+ * Runs after the well-formedness check, so parse errors are not expected here.
+ */
+final class ReferenceIntegrityCheck {
+
+    /** Dangling ids named in the error message; the total is always reported. */
+    static final int MAX_REPORTED = 10;
+
+    /** Members that name a model element wherever they appear in indexes.json. */
+    static final Set<String> REFERENCE_FIELDS = Set.of(
+            "elementId", "sourceId", "targetId", "relationshipId", "parentId", "viewId");
+
+    private static final JsonParserFactory PARSERS = Json.createParserFactory(Map.of());
+
+    private ReferenceIntegrityCheck() {}
+
+    /** Throws IllegalArgumentException naming the first dangling references. */
+    static void check(Path modelPath, Path indexesPath) throws IOException {
+        LongHashSet ids = collectModelIds(modelPath);
+
+        Set<String> reported = new LinkedHashSet<>();
+        long[] dangling = {0};
+        forEachIndexReference(indexesPath, ref -> {
+            if (ids.contains(hash(ref))) return;
+            dangling[0]++;
+            if (reported.size() < MAX_REPORTED) reported.add(ref);
+        });
+
+        if (dangling[0] > 0) {
+            throw new IllegalArgumentException("indexes.json has " + dangling[0]
+                    + " reference(s) to element ids missing from model.json: " + String.join(", ", reported)
+                    + (dangling[0] > reported.size() ? ", ..." : ""));
+        }
+    }
+
+    static LongHashSet collectModelIds(Path modelPath) throws IOException {
+        LongHashSet ids = new LongHashSet();
+        try (InputStream in = Files.newInputStream(modelPath);
+             JsonParser parser = PARSERS.createParser(in)) {
+            String key = null;
+            while (parser.hasNext()) {
+                JsonParser.Event e = parser.next();
+                if (e == JsonParser.Event.KEY_NAME) {
+                    key = parser.getString();
+                    continue;
+                }
+                if (e == JsonParser.Event.VALUE_STRING && "id".equals(key)) {
+                    ids.add(hash(parser.getString()));
+                }
+                key = null;
+            }
+        }
+        return ids;
+    }
+
+    interface ReferenceSink {
+        void accept(String elementId);
+    }
+
+    static void forEachIndexReference(Path indexesPath, ReferenceSink sink) throws IOException {
+        // One frame per open container: array or object, a byId map, or inside a by... index
+        // (byId entries included).
+        Deque<Frame> stack = new ArrayDeque<>();
+        try (InputStream in = Files.newInputStream(indexesPath);
+             JsonParser parser = PARSERS.createParser(in)) {
+            String key = null;
+            while (parser.hasNext()) {
+                JsonParser.Event e = parser.next();
+                Frame top = stack.peek();
+                switch (e) {
+                    case KEY_NAME -> {
+                        key = parser.getString();
+                        if (top != null && top.byId) sink.accept(key);
+                        continue;
+                    }
+                    case START_OBJECT, START_ARRAY -> {
+                        boolean byId = "byId".equals(key);
+                        boolean inIndex = !byId && ((top != null && top.inIndex) || isIndexName(key));
+                        boolean inById = top != null && (top.byId || top.inById);
+                        stack.push(new Frame(e == JsonParser.Event.START_ARRAY, byId, inIndex, inById));
+                    }
+                    case END_OBJECT, END_ARRAY -> stack.pop();
+                    case VALUE_STRING -> {
+                        if (key != null ? isReferenceMember(key, top) : top != null && top.array && top.inIndex) {
+                            sink.accept(parser.getString());
+                        }
+                    }
+                    default -> { }
+                }
+                key = null;
+            }
+        }
+    }
+
+    private static boolean isIndexName(String key) {
+        return key != null && key.length() > 2 && key.startsWith("by") && Character.isUpperCase(key.charAt(2));
+    }
+
+    private static boolean isReferenceMember(String key, Frame top) {
+        if (REFERENCE_FIELDS.contains(key)) return true;
+        return key.equals("id") && top != null && (top.inIndex || top.inById);
+    }
+
+    private record Frame(boolean array, boolean byId, boolean inIndex, boolean inById) {}
+
+    /** FNV-1a over the UTF-16 chars, then the MurmurHash3 finalizer to spread the bits. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Open-addressing set of longs (linear probing, load factor 0.5); 0 is stored out of band. */
+    static final class LongHashSet {
+        private long[] table = new long[1024];
+        private int size;
+        private boolean hasZero;
+
+        void add(long v) {
+            if (v == 0) {
+                hasZero = true;
+                return;
+            }
+            if ((size + 1) * 2 > table.length) grow();
+            if (insert(table, v)) size++;
+        }
+
+        boolean contains(long v) {
+            if (v == 0) return hasZero;
+            int mask = table.length - 1;
+            for (int i = (int) v & mask; ; i = (i + 1) & mask) {
+                long cur = table[i];
+                if (cur == v) return true;
+                if (cur == 0) return false;
+            }
+        }
+
+        int size() {
+            return size + (hasZero ? 1 : 0);
+        }
+
+        private void grow() {
+            long[] next = new long[table.length * 2];
+            for (long v : table) {
+                if (v != 0) insert(next, v);
+            }
+            table = next;
+        }
+
+        private static boolean insert(long[] t, long v) {
+            int mask = t.length - 1;
+            for (int i = (int) v & mask; ; i = (i + 1) & mask) {
+                long cur = t[i];
+                if (cur == v) return false;
+                if (cur == 0) {
+                    t[i] = v;
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+
+import se.erland.pwamodeller.publishing.api.ReleaseInfo;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only release log per dataset.
+ *
+ * Files under datasets/&lt;datasetId&gt;/:
+ * - releases.jsonl: one release object per line ({"seq","bundleId","publishedAt"}, plus
+ *   "uploadSha256" and "keySha256" when the release was published from an upload / with an
+ *   Idempotency-Key; only the key's hash is stored), appended O(1)
+ * - releases.idx:   big-endian long per release = end offset of its line in releases.jsonl
+ * - releases.json:  the whole log as one JSON array (served as before, without "keySha256"),
+ *   a compacted snapshot: written with the first release and rewritten by
+ *   {@link #compactSnapshot} ({@link ReleaseSnapshotCompactor}), so a publish only appends
+ *
+ * Writers must hold the dataset lock ({@link DatasetLocks}). Readers only trust entries present
+ * in releases.idx, so they never see a half-written line.
+ */
+public final class ReleaseLog {
+
+    private static final Logger LOG = Logger.getLogger(ReleaseLog.class.getName());
+
+    static final String LOG_FILE = "releases.jsonl";
+    static final String INDEX_FILE = "releases.idx";
+    static final String SNAPSHOT_FILE = "releases.json";
+
+    private static final String KEY_MEMBER = "keySha256";
+    private static final byte[] KEY_MARKER = ('"' + KEY_MEMBER + '"').getBytes(StandardCharsets.UTF_8);
+
+    /** Log length each dataset's releases.json was last written from (the log only grows). */
+    private static final Map<Path, Long> SNAPSHOT_LOG_SIZES = new ConcurrentHashMap<>();
+
+    /** One page of releases, newest first; nextBefore is null on the last page. */
+    public record Page(long total, List<ReleaseInfo> releases, Long nextBefore) {}
+
+    private ReleaseLog() {}
+
+    /** Appends a release. Caller holds the dataset lock. */
+    public static void append(Path datasetDir, String bundleId, Instant publishedAt) throws IOException {
+        append(datasetDir, bundleId, publishedAt, null, null);
+    }
+
+    /** Appends a release with the upload digest and Idempotency-Key hash, each optional. Caller holds the dataset lock. */
+    static void append(Path datasetDir, String bundleId, Instant publishedAt, String uploadSha256, String keySha256) throws IOException {
+        migrateLegacySnapshot(datasetDir);
+        long seq = recoverIndex(datasetDir);
+
+        JsonObjectBuilder release = Json.createObjectBuilder()
+                .add("seq", seq)
+                .add("bundleId", bundleId)
+                .add("publishedAt", publishedAt.toString());
+        if (uploadSha256 != null) release.add("uploadSha256", uploadSha256);
+        if (keySha256 != null) release.add(KEY_MEMBER, keySha256);
+        String line = release.build().toString() + "\n";
+
+        Path logFile = datasetDir.resolve(LOG_FILE);
+        long end;
+        try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(ch, ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+            end = ch.size();
+        }
+
+        try (FileChannel ch = FileChannel.open(datasetDir.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(ch, ByteBuffer.allocate(Long.BYTES).putLong(0, end));
+        }
+
+        if (seq == 0 || !Files.isRegularFile(datasetDir.resolve(SNAPSHOT_FILE))) {
+            writeSnapshot(datasetDir);
+        }
+    }
+
+    /**
+     * Rewrites releases.json unless it was written from the log as it is now by this process;
+     * false when it was current (or there is no log). Caller holds the dataset lock.
+     */
+    public static boolean compactSnapshot(Path datasetDir) throws IOException {
+        Path logFile = datasetDir.resolve(LOG_FILE);
+        if (!Files.isRegularFile(logFile)) return false;
+        Long written = SNAPSHOT_LOG_SIZES.get(datasetDir.toAbsolutePath().normalize());
+        if (written != null && written == Files.size(logFile) && Files.isRegularFile(datasetDir.resolve(SNAPSHOT_FILE))) {
+            return false;
+        }
+        writeSnapshot(datasetDir);
+        return true;
+    }
+
+    /**
+     * Reads up to {@code limit} releases with seq &lt; {@code before} (all when null), newest first.
+     * Only the requested slice of releases.jsonl is read.
+     */
+    public static Page page(Path datasetDir, int limit, Long before) throws IOException {
+        Path logFile = datasetDir.resolve(LOG_FILE);
+        Path indexFile = datasetDir.resolve(INDEX_FILE);
+
+        if (!Files.isRegularFile(indexFile) || !Files.isRegularFile(logFile)) {
+            if (!Files.isRegularFile(logFile) && !Files.isRegularFile(datasetDir.resolve(SNAPSHOT_FILE))) {
+                return new Page(0, List.of(), null);
+            }
+            // Legacy dataset or lost index: build it once under the dataset lock.
+            ReentrantLock lock = DatasetLocks.forDataset(datasetDir.getFileName().toString());
+            lock.lock();
+            try {
+                migrateLegacySnapshot(datasetDir);
+                recoverIndex(datasetDir);
+            } finally {
+                lock.unlock();
+            }
+            if (!Files.isRegularFile(indexFile) || !Files.isRegularFile(logFile)) {
+                return new Page(0, List.of(), null);
+            }
+        }
+
+        try (FileChannel idx = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel log = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long total = idx.size() / Long.BYTES;
+            long hi = before == null ? total : Math.max(0, Math.min(before, total));
+            long lo = Math.max(0, hi - limit);
+            if (hi == lo) return new Page(total, List.of(), null);
+
+            long start = lo == 0 ? 0 : readLong(idx, lo - 1);
+            long end = readLong(idx, hi - 1);
+
+            ByteBuffer buf = ByteBuffer.allocate(Math.toIntExact(end - start));
+            while (buf.hasRemaining()) {
+                if (log.read(buf, start + buf.position()) < 0) {
+                    throw new IOException("Release log shorter than its index: " + logFile);
+                }
+            }
+
+            List<ReleaseInfo> out = new ArrayList<>((int) (hi - lo));
+            for (String line : new String(buf.array(), StandardCharsets.UTF_8).split("\n")) {
+                if (!line.isBlank()) out.add(parse(line));
+            }
+            Collections.reverse(out);
+            return new Page(total, out, lo > 0 ? lo : null);
+        }
+    }
+
+    /**
+     * Newest release among the latest {@code window} whose Idempotency-Key hash equals
+     * {@code keySha256} (when given) or, failing that, whose upload digest equals
+     * {@code uploadSha256} (when given); null when there is none.
+     */
+    static ReleaseInfo find(Path datasetDir, String keySha256, String uploadSha256, int window) throws IOException {
+        ReleaseInfo byDigest = null;
+        int seen = 0;
+        Long before = null;
+        do {
+            Page page = page(datasetDir, Math.min(window - seen, 500), before);
+            for (ReleaseInfo r : page.releases()) {
+                if (keySha256 != null && keySha256.equals(r.keySha256)) return r;
+                if (byDigest == null && uploadSha256 != null && uploadSha256.equalsIgnoreCase(r.uploadSha256)) {
+                    if (keySha256 == null) return r;
+                    byDigest = r;
+                }
+            }
+            seen += page.releases().size();
+            before = page.nextBefore();
+        } while (before != null && seen < window);
+        return byDigest;
+    }
+
+    /**
+     * Makes releases.idx consistent with releases.jsonl and returns the number of releases.
+     * Repairs a crash between the log append and the index append (or a torn last line).
+     */
+    private static long recoverIndex(Path datasetDir) throws IOException {
+        Path logFile = datasetDir.resolve(LOG_FILE);
+        Path indexFile = datasetDir.resolve(INDEX_FILE);
+
+        long logSize = Files.isRegularFile(logFile) ? Files.size(logFile) : 0;
+        if (Files.isRegularFile(indexFile)) {
+            try (FileChannel idx = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                long count = idx.size() / Long.BYTES;
+                long lastEnd = count == 0 ? 0 : readLong(idx, count - 1);
+                if (idx.size() % Long.BYTES == 0 && lastEnd == logSize) return count;
+            }
+        } else if (logSize == 0) {
+            return 0;
+        }
+
+        LOG.warning(() -> "Rebuilding release index for " + datasetDir);
+        ByteArrayOutputStream ends = new ByteArrayOutputStream();
+        long pos = 0;
+        long lastNewline = 0;
+        long count = 0;
+        if (logSize > 0) {
+            try (InputStream in = Files.newInputStream(logFile)) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    for (int i = 0; i < n; i++) {
+                        if (buf[i] == '\n') {
+                            lastNewline = pos + i + 1;
+                            ends.writeBytes(ByteBuffer.allocate(Long.BYTES).putLong(0, lastNewline).array());
+                            count++;
+                        }
+                    }
+                    pos += n;
+                }
+            }
+            if (lastNewline < logSize) {
+                // Torn trailing line from an interrupted append.
+                try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                    ch.truncate(lastNewline);
+                }
+            }
+        }
+        FileOps.atomicWrite(indexFile, ends.toByteArray());
+        return count;
+    }
+
+    /** One-time import of a pre-existing releases.json array into the log. */
+    private static void migrateLegacySnapshot(Path datasetDir) throws IOException {
+        Path logFile = datasetDir.resolve(LOG_FILE);
+        Path snapshot = datasetDir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(logFile) || !Files.isRegularFile(snapshot)) return;
+
+        JsonArray legacy;
+        try (var reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8);
+             JsonReader jr = Json.createReader(reader)) {
+            legacy = jr.readArray();
+        } catch (Exception e) {
+            // Keep the unreadable history aside instead of overwriting it with the next snapshot.
+            Path aside = datasetDir.resolve(SNAPSHOT_FILE + ".unreadable." + System.currentTimeMillis());
+            Files.move(snapshot, aside);
+            LOG.log(Level.WARNING, "Unreadable " + snapshot + " moved to " + aside.getFileName(), e);
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        long seq = 0;
+        for (JsonValue v : legacy) {
+            if (v.getValueType() != JsonValue.ValueType.OBJECT) continue;
+            JsonObject o = v.asJsonObject();
+            sb.append(Json.createObjectBuilder()
+                    .add("seq", seq++)
+                    .add("bundleId", o.getString("bundleId", ""))
+                    .add("publishedAt", o.getString("publishedAt", ""))
+                    .build()).append('\n');
+        }
+        FileOps.atomicWriteUtf8(logFile, sb.toString());
+    }
+
+    /**
+     * Rewrites releases.json from the log. Lines are already JSON objects, so only those carrying
+     * an Idempotency-Key hash are parsed, to drop it.
+     */
+    private static void writeSnapshot(Path datasetDir) throws IOException {
+        byte[] log = Files.readAllBytes(datasetDir.resolve(LOG_FILE));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(log.length + 2);
+        out.write('[');
+        int lineStart = 0;
+        boolean first = true;
+        for (int i = 0; i < log.length; i++) {
+            if (log[i] != '\n') continue;
+            if (i > lineStart) {
+                if (!first) out.write(',');
+                if (contains(log, lineStart, i, KEY_MARKER)) {
+                    out.writeBytes(withoutKey(new String(log, lineStart, i - lineStart, StandardCharsets.UTF_8)));
+                } else {
+                    out.write(log, lineStart, i - lineStart);
+                }
+                first = false;
+            }
+            lineStart = i + 1;
+        }
+        out.write(']');
+        FileOps.atomicWrite(datasetDir.resolve(SNAPSHOT_FILE), out.toByteArray());
+        SNAPSHOT_LOG_SIZES.put(datasetDir.toAbsolutePath().normalize(), (long) log.length);
+    }
+
+    private static byte[] withoutKey(String line) {
+        try (JsonReader jr = Json.createReader(new StringReader(line))) {
+            return Json.createObjectBuilder(jr.readObject()).remove(KEY_MEMBER).build().toString()
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean contains(byte[] b, int from, int to, byte[] marker) {
+        outer:
+        for (int i = from; i <= to - marker.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (b[i + j] != marker[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static ReleaseInfo parse(String line) {
+        try (JsonReader jr = Json.createReader(new StringReader(line))) {
+            JsonObject o = jr.readObject();
+            ReleaseInfo r = new ReleaseInfo();
+            r.seq = o.getJsonNumber("seq").longValue();
+            r.bundleId = o.getString("bundleId", null);
+            r.publishedAt = o.getString("publishedAt", null);
+            r.uploadSha256 = o.getString("uploadSha256", null);
+            r.keySha256 = o.getString(KEY_MEMBER, null);
+            return r;
+        }
+    }
+
+    private static long readLong(FileChannel ch, long index) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(Long.BYTES);
+        while (b.hasRemaining()) {
+            if (ch.read(b, index * Long.BYTES + b.position()) < 0) throw new IOException("Truncated release index");
+        }
+        return b.getLong(0);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+}
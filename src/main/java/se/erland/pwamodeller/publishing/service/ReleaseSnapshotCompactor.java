@@ -0,0 +1,90 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps each dataset's releases.json snapshot close to its release log. A publish only appends to
+ * releases.jsonl, so every PUBLISH_RELEASES_SNAPSHOT_INTERVAL_SECONDS the snapshots whose log
+ * changed are rewritten ({@link ReleaseLog#compactSnapshot}; all of them on the first run after
+ * startup), and once more at shutdown. With an interval of 0 the publish rewrites the snapshot
+ * itself and nothing is scheduled.
+ */
+@ApplicationScoped
+public class ReleaseSnapshotCompactor {
+
+    private static final Logger LOG = Logger.getLogger(ReleaseSnapshotCompactor.class.getName());
+
+    private final PublishConfig config;
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public ReleaseSnapshotCompactor(PublishConfig config) {
+        this.config = config;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        long interval = config.getReleasesSnapshotInterval().toSeconds();
+        if (interval <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "releases-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.SECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        compactQuietly();
+    }
+
+    /** Rewrites every stale releases.json now; returns how many were rewritten. */
+    public synchronized int compact() throws IOException {
+        Path datasetsRoot = config.getDataRoot().toAbsolutePath().normalize().resolve("datasets");
+        if (!Files.isDirectory(datasetsRoot)) return 0;
+        int rewritten = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(datasetsRoot, Files::isDirectory)) {
+            for (Path datasetDir : ds) {
+                ReentrantLock lock = DatasetLocks.forDataset(datasetDir.getFileName().toString());
+                lock.lock();
+                try {
+                    if (ReleaseLog.compactSnapshot(datasetDir)) rewritten++;
+                } catch (NoSuchFileException ignored) {
+                    // removed meanwhile
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Failed to rewrite releases snapshot in " + datasetDir, e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return rewritten;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Releases snapshot compaction failed", e);
+        }
+    }
+}
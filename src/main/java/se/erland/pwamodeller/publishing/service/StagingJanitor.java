@@ -0,0 +1,156 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Reclaims what a crashed or killed publish leaves behind:
+ * - STAGING_ROOT/&lt;uuid&gt;/ (ZIP/delta staging), job-*.zip spools, upload-*.completing sessions
+ *   and archive-*.zip ZIPs abandoned by {@link ZipArchiver} not modified for PUBLISH_JANITOR_MIN_AGE_SECONDS
+ * - DATA_ROOT/bundles/.tmp.* directories of the same age
+ * - open upload sessions past their expiresAt
+ *
+ * Paths registered in {@link InFlightStaging} are never touched, whatever their age. Deletes are
+ * throttled to PUBLISH_JANITOR_DELETES_PER_SECOND files so a large backlog does not starve
+ * publishes of I/O. Runs every PUBLISH_JANITOR_INTERVAL_SECONDS (0 disables).
+ */
+@ApplicationScoped
+public class StagingJanitor {
+
+    private static final Logger LOG = Logger.getLogger(StagingJanitor.class.getName());
+
+    private static final Pattern STAGING_DIR = Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$");
+    private static final Duration FIRST_RUN_MAX_DELAY = Duration.ofMinutes(1);
+
+    static final String KIND_STAGING = "staging";
+    static final String KIND_JOB = "job";
+    static final String KIND_UPLOAD = "upload";
+    static final String KIND_TMP_BUNDLE = "tmp-bundle";
+    static final String KIND_ARCHIVE = "archive";
+
+    /** What one sweep removed. */
+    public record Sweep(int removed, long bytes) {}
+
+    private final PublishConfig config;
+    private final UploadSessionService sessions;
+    private final PublishMetrics metrics;
+    private ScheduledExecutorService scheduler;
+
+    public StagingJanitor(PublishConfig config) {
+        this(config, new UploadSessionService(config), PublishMetrics.noop());
+    }
+
+    @Inject
+    public StagingJanitor(PublishConfig config, UploadSessionService sessions, PublishMetrics metrics) {
+        this.config = config;
+        this.sessions = sessions;
+        this.metrics = metrics;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        long interval = config.getJanitorInterval().toSeconds();
+        if (interval <= 0) return;
+        // First run soon after startup: that is when a crash has just left orphans behind.
+        long first = Math.min(interval, FIRST_RUN_MAX_DELAY.toSeconds());
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "staging-janitor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::sweepQuietly, first, interval, TimeUnit.SECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /** Removes stale staging and temp entries now. */
+    public synchronized Sweep sweep() throws InterruptedException {
+        Instant cutoff = Instant.now().minus(config.getJanitorMinAge());
+        ThrottledDelete deleter = new ThrottledDelete(config.getJanitorDeletesPerSecond());
+        int removed = 0;
+        long bytes = 0;
+
+        List<Candidate> candidates = new ArrayList<>();
+        Path stagingRoot = config.getStagingRoot().toAbsolutePath().normalize();
+        for (Path p : list(stagingRoot)) {
+            String name = p.getFileName().toString();
+            if (STAGING_DIR.matcher(name).matches()) {
+                candidates.add(new Candidate(p, KIND_STAGING, true));
+            } else if (name.startsWith(PublishJobService.SPOOL_PREFIX) && name.endsWith(".zip")) {
+                candidates.add(new Candidate(p, KIND_JOB, true));
+            } else if (name.startsWith(UploadSessionService.DIR_PREFIX) && name.endsWith(UploadSessionService.COMPLETING_SUFFIX)) {
+                candidates.add(new Candidate(p, KIND_UPLOAD, true));
+            } else if (name.startsWith(ZipArchiver.PENDING_PREFIX) && name.endsWith(".zip")) {
+                candidates.add(new Candidate(p, KIND_ARCHIVE, true));
+            }
+        }
+        for (Path p : sessions.expiredSessions()) {
+            candidates.add(new Candidate(p, KIND_UPLOAD, false));
+        }
+        Path bundlesRoot = config.getDataRoot().toAbsolutePath().normalize().resolve("bundles");
+        for (Path p : list(bundlesRoot)) {
+            if (p.getFileName().toString().startsWith(".tmp.")) candidates.add(new Candidate(p, KIND_TMP_BUNDLE, true));
+        }
+
+        for (Candidate c : candidates) {
+            if (InFlightStaging.contains(c.path)) continue;
+            try {
+                if (c.byAge && !Files.getLastModifiedTime(c.path, LinkOption.NOFOLLOW_LINKS).toInstant().isBefore(cutoff)) continue;
+                long reclaimed = deleter.delete(c.path);
+                metrics.janitorReclaimed(c.kind, reclaimed);
+                removed++;
+                bytes += reclaimed;
+            } catch (NoSuchFileException ignored) {
+                // finished (and cleaned up) by its owner meanwhile
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Janitor failed to remove " + c.path, e);
+            }
+        }
+        if (removed > 0) {
+            LOG.info("Janitor removed " + removed + " stale staging/temp entries, reclaimed " + bytes + " bytes");
+        }
+        return new Sweep(removed, bytes);
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Janitor sweep failed", e);
+        }
+    }
+
+    private record Candidate(Path path, String kind, boolean byAge) {}
+
+    private static List<Path> list(Path dir) {
+        List<Path> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) out.add(p);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Janitor failed to list " + dir, e);
+        }
+        return out;
+    }
+}
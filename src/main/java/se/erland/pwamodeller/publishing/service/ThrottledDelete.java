@@ -0,0 +1,88 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes files and directory trees at a bounded rate (files + directories per second), so
+ * background cleanup does not starve publishes of I/O. One instance paces one sweep.
+ */
+final class ThrottledDelete {
+
+    private final long nanosPerPermit;
+    private long next = System.nanoTime();
+
+    /** @param perSecond deletes per second; zero or less means unthrottled */
+    ThrottledDelete(int perSecond) {
+        this.nanosPerPermit = perSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / perSecond;
+    }
+
+    /** Deletes a file or directory tree, one throttled delete per entry; returns the file bytes freed. */
+    long delete(Path root) throws IOException, InterruptedException {
+        long[] bytes = {0};
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    acquireUnchecked();
+                    Files.deleteIfExists(file);
+                    bytes[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (exc instanceof NoSuchFileException) return FileVisitResult.CONTINUE;
+                    throw exc;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null && !(exc instanceof NoSuchFileException)) throw exc;
+                    acquireUnchecked();
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (Interrupted e) {
+            throw new InterruptedException("Interrupted while deleting " + root);
+        }
+        return bytes[0];
+    }
+
+    /** Waits for the next delete slot. */
+    void acquire() throws InterruptedException {
+        try {
+            acquireUnchecked();
+        } catch (Interrupted e) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void acquireUnchecked() {
+        if (nanosPerPermit == 0) return;
+        long now = System.nanoTime();
+        if (next > now) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(next - now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Interrupted();
+            }
+        }
+        next = Math.max(next, now) + nanosPerPermit;
+    }
+
+    /** Carries an interrupt out of the FileVisitor, which cannot throw InterruptedException. */
+    private static final class Interrupted extends RuntimeException {
+        Interrupted() {
+            super(null, null, false, false);
+        }
+    }
+}
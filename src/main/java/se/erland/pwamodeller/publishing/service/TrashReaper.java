@@ -0,0 +1,178 @@
+package se.erland.pwamodeller.publishing.service;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes directory deletes off the request thread.
+ *
+ * {@link #discard} renames a staging dir (or a rolled-back bundle dir) into the .trash dir of its
+ * root, which is O(1) and on the same filesystem: STAGING_ROOT/.trash and DATA_ROOT/.trash (not
+ * under bundles/, which is served publicly). A "trash-reaper" thread deletes what lands there,
+ * woken by each discard and at least every {@link #POLL_SECONDS} seconds, throttled to
+ * PUBLISH_JANITOR_DELETES_PER_SECOND. Leftovers from before a restart are reaped on startup.
+ *
+ * Until the reaper runs (instances constructed outside CDI never start it) dirs are deleted
+ * inline.
+ */
+@ApplicationScoped
+public class TrashReaper {
+
+    private static final Logger LOG = Logger.getLogger(TrashReaper.class.getName());
+
+    static final String TRASH_DIR = ".trash";
+    static final String KIND_TRASH = "trash";
+    private static final long POLL_SECONDS = 30;
+
+    private final PublishConfig config;
+    private final PublishMetrics metrics;
+    private final Semaphore wake = new Semaphore(0);
+    private volatile boolean running;
+    private Thread thread;
+
+    public TrashReaper(PublishConfig config) {
+        this(config, PublishMetrics.noop());
+    }
+
+    @Inject
+    public TrashReaper(PublishConfig config, PublishMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        thread = new Thread(this::run, "trash-reaper");
+        thread.setDaemon(true);
+        running = true;
+        thread.start();
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (thread == null) return;
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Moves {@code dir} (under STAGING_ROOT or DATA_ROOT) out of the way for the reaper to delete;
+     * deletes it inline when the reaper is not running, the dir is under neither root or the
+     * rename fails. Missing or null dirs are ignored.
+     */
+    public void discard(Path dir) {
+        if (dir == null || !Files.exists(dir)) return;
+        Path trash = running ? trashDirFor(dir.toAbsolutePath().normalize()) : null;
+        if (trash != null) {
+            try {
+                Files.createDirectories(trash);
+                Files.move(dir, trash.resolve(dir.getFileName() + "." + UUID.randomUUID()), StandardCopyOption.ATOMIC_MOVE);
+                wake.release();
+                return;
+            } catch (NoSuchFileException e) {
+                return; // already gone
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.FINE, "Cannot move " + dir + " to trash; deleting inline", e);
+            }
+        }
+        deleteQuietly(dir);
+    }
+
+    /** Discards a staging dir a publish owns and releases it from {@link InFlightStaging}. */
+    public void discardStaging(Path stagingDir) {
+        discard(stagingDir);
+        InFlightStaging.remove(stagingDir);
+    }
+
+    /** Deletes a file or directory tree now, ignoring failures. */
+    static void deleteQuietly(Path dir) {
+        if (dir == null) return;
+        try (var walk = Files.walk(dir)) {
+            walk.sorted((a,b) -> b.compareTo(a)).forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+            });
+        } catch (IOException ignored) {}
+    }
+
+    /** Deletes everything currently in the trash dirs. */
+    public synchronized StagingJanitor.Sweep reap() throws InterruptedException {
+        ThrottledDelete deleter = new ThrottledDelete(config.getJanitorDeletesPerSecond());
+        int removed = 0;
+        long bytes = 0;
+        for (Path trash : trashDirs()) {
+            for (Path p : list(trash)) {
+                try {
+                    long reclaimed = deleter.delete(p);
+                    metrics.janitorReclaimed(KIND_TRASH, reclaimed);
+                    removed++;
+                    bytes += reclaimed;
+                } catch (NoSuchFileException ignored) {
+                    // reaped concurrently
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Failed to reap " + p, e);
+                }
+            }
+        }
+        return new StagingJanitor.Sweep(removed, bytes);
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    reap();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "Reaping trash failed", e);
+                }
+                wake.tryAcquire(POLL_SECONDS, TimeUnit.SECONDS);
+                wake.drainPermits(); // one pass covers every discard so far
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Path> trashDirs() {
+        return List.of(
+                config.getStagingRoot().toAbsolutePath().normalize().resolve(TRASH_DIR),
+                config.getDataRoot().toAbsolutePath().normalize().resolve(TRASH_DIR));
+    }
+
+    /** The trash dir of the (innermost) root {@code dir} lies under, or null when it is under neither. */
+    private Path trashDirFor(Path dir) {
+        Path found = null;
+        for (Path trash : trashDirs()) {
+            if (!dir.startsWith(trash.getParent()) || dir.startsWith(trash)) continue;
+            if (found == null || trash.getNameCount() > found.getNameCount()) found = trash;
+        }
+        return found;
+    }
+
+    private static List<Path> list(Path dir) {
+        List<Path> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) out.add(p);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Cannot list " + dir, e);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,332 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable, chunked uploads of bundle ZIPs.
+ *
+ * A session lives in STAGING_ROOT/upload-&lt;sessionId&gt;/:
+ * - session.json: datasetId, createdAt, expiresAt, optional totalBytes
+ * - chunks/&lt;n&gt;.part: chunk n (0-based); re-sending a chunk replaces it, chunks may arrive in parallel
+ *
+ * Completing a session renames it (so late chunk PUTs fail) and streams the chunks in order
+ * into the regular {@link ZipValidator} pipeline. Expired sessions are purged lazily.
+ *
+ * The max ZIP size applies to the sum of a session's chunks. Each session has one byte counter
+ * (chunks stored plus chunks being received) that every PUT adds to as it reads, so parallel
+ * PUTs cannot each pass the check and together exceed the limit.
+ */
+@ApplicationScoped
+public class UploadSessionService {
+
+    public static final String DIR_PREFIX = "upload-";
+    static final int MAX_CHUNKS = 10_000;
+
+    private static final Pattern SESSION_ID = Pattern.compile("^[0-9a-f-]{36}$");
+    static final String COMPLETING_SUFFIX = ".completing";
+
+    /** Session status; receivedChunks sorted, contiguousBytes = bytes of chunks 0..k without gaps. */
+    public record Status(String sessionId, String datasetId, String expiresAt, Long totalBytes,
+                         List<Integer> receivedChunks, long receivedBytes, long contiguousBytes) {}
+
+    private final PublishConfig config;
+    /** Per open session: bytes of stored chunks plus bytes reserved by PUTs still being received. */
+    private final ConcurrentHashMap<String, AtomicLong> sessionBytes = new ConcurrentHashMap<>();
+
+    private final TrashReaper trash;
+
+    public UploadSessionService(PublishConfig config) {
+        this(config, new TrashReaper(config));
+    }
+
+    @Inject
+    public UploadSessionService(PublishConfig config, TrashReaper trash) {
+        this.config = config;
+        this.trash = trash;
+    }
+
+    public Status create(String datasetId, OptionalLong totalBytes) {
+        if (!DatasetIdPolicy.isValid(datasetId)) {
+            throw PublishingException.validation("Invalid datasetId: '" + datasetId + "'");
+        }
+        if (totalBytes.isPresent() && (totalBytes.getAsLong() <= 0 || totalBytes.getAsLong() > config.getMaxZipBytes())) {
+            throw PublishingException.tooLarge("Declared upload size out of range; max=" + config.getMaxZipBytes());
+        }
+        purgeExpired();
+
+        String sessionId = UUID.randomUUID().toString();
+        Path dir = sessionDir(sessionId);
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(config.getUploadSessionTtl());
+        try {
+            FileOps.ensureDir(dir.resolve("chunks"));
+            JsonObjectBuilder b = Json.createObjectBuilder()
+                    .add("sessionId", sessionId)
+                    .add("datasetId", datasetId)
+                    .add("createdAt", now.toString())
+                    .add("expiresAt", expiresAt.toString());
+            totalBytes.ifPresent(t -> b.add("totalBytes", t));
+            FileOps.atomicWriteUtf8(dir.resolve("session.json"), b.build().toString());
+        } catch (IOException e) {
+            throw new PublishingException(500, "Failed to create upload session", e);
+        }
+        return status(datasetId, sessionId);
+    }
+
+    public void putChunk(String datasetId, String sessionId, int index, InputStream body) {
+        if (index < 0 || index >= MAX_CHUNKS) {
+            throw PublishingException.validation("Chunk index must be between 0 and " + (MAX_CHUNKS - 1));
+        }
+        Path dir = requireSession(datasetId, sessionId);
+        Path chunks = dir.resolve("chunks");
+        Path target = chunks.resolve(index + ".part");
+        Path tmp = chunks.resolve("." + index + ".tmp." + UUID.randomUUID());
+
+        AtomicLong used = null;
+        long reserved = 0;
+        boolean stored = false;
+        try {
+            used = sessionBytes(sessionId, chunks);
+            // A re-sent chunk replaces the stored one, so that one's bytes do not count against it.
+            long replacing = Files.isRegularFile(target) ? Files.size(target) : 0;
+            try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                byte[] buf = new byte[8192];
+                int read;
+                while ((read = body.read(buf)) > 0) {
+                    reserved += read;
+                    if (used.addAndGet(read) - replacing > config.getMaxZipBytes()) {
+                        throw PublishingException.tooLarge("Upload exceeds max ZIP size; max=" + config.getMaxZipBytes());
+                    }
+                    out.write(buf, 0, read);
+                }
+            }
+            synchronized (used) { // the replaced chunk's size must be the one actually replaced
+                long replaced = Files.isRegularFile(target) ? Files.size(target) : 0;
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                used.addAndGet(-replaced);
+            }
+            stored = true;
+        } catch (NoSuchFileException e) {
+            throw new PublishingException(404, "Upload session not found: " + sessionId);
+        } catch (IOException e) {
+            throw new PublishingException(500, "Failed to store chunk " + index, e);
+        } finally {
+            if (used != null && !stored) used.addAndGet(-reserved);
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+        }
+    }
+
+    public Status status(String datasetId, String sessionId) {
+        Path dir = requireSession(datasetId, sessionId);
+        try {
+            JsonObject session = readSession(dir);
+            TreeMap<Integer, Long> chunks = listChunks(dir.resolve("chunks"));
+
+            long received = 0;
+            long contiguous = 0;
+            int expected = 0;
+            for (var e : chunks.entrySet()) {
+                received += e.getValue();
+                if (e.getKey() == expected) {
+                    contiguous += e.getValue();
+                    expected++;
+                }
+            }
+            Long total = session.containsKey("totalBytes") ? session.getJsonNumber("totalBytes").longValue() : null;
+            return new Status(sessionId, datasetId, session.getString("expiresAt"), total,
+                    List.copyOf(chunks.keySet()), received, contiguous);
+        } catch (IOException e) {
+            throw new PublishingException(500, "Failed to read upload session", e);
+        }
+    }
+
+    /**
+     * Seals the session and returns its chunks as one stream (chunk 0, 1, ...).
+     * The caller validates/publishes the stream and then calls {@link #discard}.
+     */
+    public Completed complete(String datasetId, String sessionId) {
+        Path dir = requireSession(datasetId, sessionId);
+        Path sealed = dir.resolveSibling(dir.getFileName() + COMPLETING_SUFFIX);
+        InFlightStaging.add(sealed);
+        try {
+            Files.move(dir, sealed, StandardCopyOption.ATOMIC_MOVE);
+            sessionBytes.remove(sessionId); // counted again from disk if the session is reopened
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            InFlightStaging.remove(sealed);
+            throw PublishingException.conflict("Upload session is already being completed: " + sessionId);
+        } catch (IOException e) {
+            InFlightStaging.remove(sealed);
+            throw new PublishingException(500, "Failed to seal upload session", e);
+        }
+
+        try {
+            JsonObject session = readSession(sealed);
+            TreeMap<Integer, Long> chunks = listChunks(sealed.resolve("chunks"));
+            if (chunks.isEmpty()) {
+                reopen(sealed, dir);
+                throw PublishingException.validation("Upload session has no chunks");
+            }
+
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i <= chunks.lastKey(); i++) {
+                if (!chunks.containsKey(i)) missing.add(i);
+            }
+            if (!missing.isEmpty()) {
+                reopen(sealed, dir);
+                throw PublishingException.validation("Upload session is missing chunks " + missing);
+            }
+            long received = chunks.values().stream().mapToLong(Long::longValue).sum();
+            if (session.containsKey("totalBytes") && session.getJsonNumber("totalBytes").longValue() != received) {
+                reopen(sealed, dir);
+                throw PublishingException.validation("Upload is incomplete: received " + received
+                        + " of " + session.getJsonNumber("totalBytes").longValue() + " bytes");
+            }
+
+            List<Path> parts = new ArrayList<>();
+            for (Integer i : chunks.keySet()) parts.add(sealed.resolve("chunks").resolve(i + ".part"));
+            return new Completed(sealed, parts);
+        } catch (PublishingException pe) {
+            throw pe;
+        } catch (IOException e) {
+            InFlightStaging.remove(sealed);
+            throw new PublishingException(500, "Failed to read upload session", e);
+        }
+    }
+
+    public void abort(String datasetId, String sessionId) {
+        discard(requireSession(datasetId, sessionId));
+    }
+
+    public void discard(Path sessionDir) {
+        String name = sessionDir.getFileName().toString();
+        if (name.startsWith(DIR_PREFIX) && !name.endsWith(COMPLETING_SUFFIX)) {
+            sessionBytes.remove(name.substring(DIR_PREFIX.length()));
+        }
+        trash.discardStaging(sessionDir);
+    }
+
+    /** Deletes open sessions whose expiresAt has passed (sealed ones belong to an in-flight publish). */
+    public void purgeExpired() {
+        expiredSessions().forEach(this::discard);
+    }
+
+    /** Open session directories whose expiresAt has passed. */
+    public List<Path> expiredSessions() {
+        Path stagingRoot = config.getStagingRoot().toAbsolutePath().normalize();
+        if (!Files.isDirectory(stagingRoot)) return List.of();
+        Instant now = Instant.now();
+        List<Path> expired = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(stagingRoot, DIR_PREFIX + "*")) {
+            for (Path dir : ds) {
+                if (dir.getFileName().toString().endsWith(COMPLETING_SUFFIX)) continue;
+                try {
+                    Instant expiresAt = Instant.parse(readSession(dir).getString("expiresAt"));
+                    if (expiresAt.isBefore(now)) expired.add(dir);
+                } catch (Exception ignored) {}
+            }
+        } catch (IOException ignored) {}
+        return expired;
+    }
+
+    /** A sealed session: the ordered chunk files and the directory to discard afterwards. */
+    public record Completed(Path sessionDir, List<Path> parts) {
+        public InputStream openStream() throws IOException {
+            List<InputStream> streams = new ArrayList<>(parts.size());
+            try {
+                for (Path p : parts) streams.add(Files.newInputStream(p));
+            } catch (IOException e) {
+                for (InputStream in : streams) in.close();
+                throw e;
+            }
+            Enumeration<InputStream> en = Collections.enumeration(streams);
+            return new SequenceInputStream(en);
+        }
+    }
+
+    private Path requireSession(String datasetId, String sessionId) {
+        if (sessionId == null || !SESSION_ID.matcher(sessionId).matches()) {
+            throw new PublishingException(404, "Upload session not found: " + sessionId);
+        }
+        Path dir = sessionDir(sessionId);
+        try {
+            JsonObject session = readSession(dir);
+            if (!session.getString("datasetId", "").equals(datasetId)) {
+                throw new PublishingException(404, "Upload session not found: " + sessionId);
+            }
+            if (Instant.parse(session.getString("expiresAt")).isBefore(Instant.now())) {
+                discard(dir);
+                throw new PublishingException(410, "Upload session expired: " + sessionId);
+            }
+            return dir;
+        } catch (NoSuchFileException e) {
+            throw new PublishingException(404, "Upload session not found: " + sessionId);
+        } catch (IOException e) {
+            throw new PublishingException(500, "Failed to read upload session", e);
+        }
+    }
+
+    private Path sessionDir(String sessionId) {
+        return config.getStagingRoot().toAbsolutePath().normalize().resolve(DIR_PREFIX + sessionId);
+    }
+
+    private static void reopen(Path sealed, Path dir) {
+        try { Files.move(sealed, dir, StandardCopyOption.ATOMIC_MOVE); } catch (IOException ignored) {}
+        InFlightStaging.remove(sealed);
+    }
+
+    private static JsonObject readSession(Path dir) throws IOException {
+        try (var reader = Files.newBufferedReader(dir.resolve("session.json"), StandardCharsets.UTF_8);
+             JsonReader jr = Json.createReader(reader)) {
+            return jr.readObject();
+        }
+    }
+
+    private static TreeMap<Integer, Long> listChunks(Path chunks) throws IOException {
+        TreeMap<Integer, Long> out = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(chunks, "*.part")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    out.put(Integer.parseInt(name.substring(0, name.length() - ".part".length())), Files.size(p));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return out;
+    }
+
+    /** The session's byte counter, starting from the chunks already on disk (e.g. after a restart). */
+    private AtomicLong sessionBytes(String sessionId, Path chunks) throws IOException {
+        AtomicLong used = sessionBytes.get(sessionId);
+        if (used != null) return used;
+        long stored = listChunks(chunks).values().stream().mapToLong(Long::longValue).sum();
+        return sessionBytes.computeIfAbsent(sessionId, id -> new AtomicLong(stored));
+    }
+}
@@ -1,12 +1,32 @@
 package se.erland.pwamodeller.publishing.service;
 
 import java.nio.file.Path;
+import java.util.Map;
 
-/** Result of ZIP validation (staging only). */
+/**
+ * Result of ZIP validation (staging only).
+ *
+ * sha256 maps bundle file names (manifest.json, model.json, indexes.json) to their hex SHA-256,
+ * computed during extraction when the blob store is enabled; empty otherwise.
+ *
+ * stagingDir is the STAGING_ROOT/&lt;uuid&gt; directory holding the bundle (and upload.zip), removed
+ * after publishing; null when the bundle does not live in its own staging directory.
+ *
+ * uploadSha256 is the hex SHA-256 of the uploaded ZIP, computed while it is received. It is
+ * recorded with the release (see {@link IdempotentPublishes}) and verifies the archive copy; null
+ * when the bundle was not built from an upload.
+ */
 public record ValidatedBundle(
         String bundleId,
         Path bundleDir,
         Path manifestPath,
         Path modelPath,
-        Path indexesPath
-) {}
+        Path indexesPath,
+        Map<String, String> sha256,
+        Path stagingDir,
+        String uploadSha256
+) {
+    public ValidatedBundle(String bundleId, Path bundleDir, Path manifestPath, Path modelPath, Path indexesPath) {
+        this(bundleId, bundleDir, manifestPath, modelPath, indexesPath, Map.of(), null, null);
+    }
+}
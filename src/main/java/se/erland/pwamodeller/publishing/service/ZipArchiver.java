@@ -0,0 +1,189 @@
+package se.erland.pwamodeller.publishing.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.fs.FileOps;
+import se.erland.pwamodeller.publishing.jfr.FileOperationEvent;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Archives uploaded ZIPs to ARCHIVE_ROOT/&lt;datasetId&gt;/&lt;bundleId&gt;.zip off the request path.
+ *
+ * {@link #submit} renames upload.zip out of the publish's staging dir (O(1), same directory tree)
+ * to STAGING_ROOT/archive-&lt;uuid&gt;.zip and queues it. The worker hard-links that file into the
+ * archive dir when both are on one volume and copies it otherwise, checks the result against the
+ * SHA-256 computed while the upload was received, and renames it into place. Failed attempts are
+ * retried with backoff up to {@link #MAX_ATTEMPTS} times.
+ *
+ * At most PUBLISH_ARCHIVE_QUEUE_CAPACITY ZIPs wait at once; beyond that a ZIP is not archived.
+ * Every outcome is counted in publish.archive{result}. The publish itself never fails on archiving.
+ */
+@ApplicationScoped
+public class ZipArchiver {
+
+    private static final Logger LOG = Logger.getLogger(ZipArchiver.class.getName());
+
+    public static final String PENDING_PREFIX = "archive-";
+    static final int MAX_ATTEMPTS = 4;
+    static final long FIRST_RETRY_DELAY_MS = 1_000;
+
+    static final String RESULT_ARCHIVED = "archived";
+    static final String RESULT_FAILED = "failed";
+    static final String RESULT_REJECTED = "rejected";
+
+    private record Task(String datasetId, String bundleId, Path pending, String sha256) {}
+
+    private final PublishConfig config;
+    private final PublishMetrics metrics;
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public ZipArchiver(PublishConfig config) {
+        this(config, PublishMetrics.noop());
+    }
+
+    @Inject
+    public ZipArchiver(PublishConfig config, PublishMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "zip-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        // The worker exits when idle, so instances created outside CDI do not pin a thread.
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        metrics.archiveGauge(this, ZipArchiver::pending);
+    }
+
+    /**
+     * Takes over {@code uploadZip} and archives it in the background.
+     * Returns false when nothing was queued (no archive root, no ZIP, or the queue is full).
+     */
+    public boolean submit(String datasetId, String bundleId, Path uploadZip, String sha256) {
+        if (config.getArchiveRoot().isEmpty() || uploadZip == null || !Files.isRegularFile(uploadZip)) return false;
+        if (pending.incrementAndGet() > config.getArchiveQueueCapacity()) {
+            pending.decrementAndGet();
+            metrics.archive(RESULT_REJECTED);
+            LOG.warning("Archive queue is full; not archiving bundle " + bundleId + " of dataset " + datasetId);
+            return false;
+        }
+
+        Path stagingRoot = config.getStagingRoot().toAbsolutePath().normalize();
+        Path pendingZip = stagingRoot.resolve(PENDING_PREFIX + UUID.randomUUID() + ".zip");
+        InFlightStaging.add(pendingZip); // until archived or given up
+        Task task = new Task(datasetId, bundleId, pendingZip, sha256);
+        try {
+            Files.move(uploadZip, pendingZip, StandardCopyOption.ATOMIC_MOVE);
+            executor.execute(() -> attempt(task, 1));
+            return true;
+        } catch (IOException | RejectedExecutionException e) {
+            LOG.log(Level.WARNING, "Failed to queue archiving of bundle " + bundleId + " of dataset " + datasetId, e);
+            finish(task, RESULT_FAILED);
+            return false;
+        }
+    }
+
+    /** ZIPs waiting to be archived, including those waiting for a retry. */
+    public int pending() {
+        return pending.get();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Queued ZIPs are archived first; pending retries are dropped (the janitor reclaims their files).
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void attempt(Task task, int attempt) {
+        long t = System.nanoTime();
+        try {
+            archive(task);
+            metrics.stage(PublishMetrics.STAGE_ARCHIVE, task.datasetId(), t);
+            finish(task, RESULT_ARCHIVED);
+        } catch (IOException | RuntimeException e) {
+            if (attempt < MAX_ATTEMPTS && !executor.isShutdown()) {
+                long delay = FIRST_RETRY_DELAY_MS << (attempt - 1);
+                LOG.log(Level.FINE, "Archiving bundle " + task.bundleId() + " failed (attempt " + attempt + "); retrying in " + delay + " ms", e);
+                try {
+                    executor.schedule(() -> attempt(task, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException ignored) {
+                    // shutting down
+                }
+            }
+            LOG.log(Level.WARNING, "Failed to archive bundle " + task.bundleId() + " of dataset " + task.datasetId()
+                    + " after " + attempt + " attempts", e);
+            finish(task, RESULT_FAILED);
+        }
+    }
+
+    private void archive(Task task) throws IOException {
+        Path dstDir = config.getArchiveRoot().orElseThrow().toAbsolutePath().normalize().resolve(task.datasetId());
+        FileOps.ensureDir(dstDir);
+        Path dst = dstDir.resolve(task.bundleId() + ".zip");
+        Path tmp = dstDir.resolve(".tmp." + task.bundleId() + "." + UUID.randomUUID() + ".zip");
+        try {
+            FileOperationEvent place = new FileOperationEvent();
+            place.begin();
+            String op;
+            try {
+                Files.createLink(tmp, task.pending());
+                op = "link";
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.deleteIfExists(tmp);
+                Files.copy(task.pending(), tmp);
+                op = "copy";
+            }
+            place.commit(op, task.datasetId(), task.bundleId(), task.pending(), tmp);
+
+            if (task.sha256() != null) {
+                String actual = BlobStore.sha256Of(tmp);
+                if (!task.sha256().equals(actual)) {
+                    throw new IOException("Checksum mismatch for archived " + dst + ": expected " + task.sha256() + ", got " + actual);
+                }
+            }
+            try {
+                Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void finish(Task task, String result) {
+        try {
+            Files.deleteIfExists(task.pending());
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Failed to remove " + task.pending(), e);
+        }
+        InFlightStaging.remove(task.pending());
+        metrics.archive(result);
+        pending.decrementAndGet();
+    }
+}
@@ -6,38 +6,79 @@ import jakarta.inject.Inject;
 import se.erland.pwamodeller.publishing.api.PublishingException;
 import se.erland.pwamodeller.publishing.config.PublishConfig;
 import se.erland.pwamodeller.publishing.fs.FileOps;
+import se.erland.pwamodeller.publishing.jfr.PublishStageEvent;
+import se.erland.pwamodeller.publishing.jfr.ZipEntryExtractEvent;
 import se.erland.pwamodeller.publishing.policy.DatasetIdPolicy;
 
 import jakarta.json.Json;
+import jakarta.json.JsonException;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
- * Hardening (Step 5): spool incoming ZIP to a staging file first (size-capped),
- * then unzip with traversal protection and validate required JSON files.
+ * Hardening (Step 5): unzip the incoming ZIP into staging (size-capped) with traversal
+ * protection and validate required JSON files.
+ *
+ * By default the upload is unpacked and validated in a single streaming pass; with
+ * PUBLISH_STREAMING_VALIDATION=false it is spooled to upload.zip first and re-read.
+ * With PUBLISH_REFERENCE_CHECK=true, indexes.json is also checked against model.json
+ * ({@link ReferenceIntegrityCheck}).
  *
  * Does NOT publish to DATA_ROOT.
  */
 @ApplicationScoped
 public class ZipValidator {
 
+    private static final String MANIFEST_JSON = "manifest.json";
+    private static final String MODEL_JSON = "model.json";
+    private static final String INDEXES_JSON = "indexes.json";
+
     private final PublishConfig config;
+    private final PublishMetrics metrics;
+    private final BundleWorkers workers;
+    private final TrashReaper trash;
 
-    @Inject
     public ZipValidator(PublishConfig config) {
+        this(config, PublishMetrics.noop());
+    }
+
+    public ZipValidator(PublishConfig config, PublishMetrics metrics) {
+        this(config, metrics, new BundleWorkers(), new TrashReaper(config, metrics));
+    }
+
+    @Inject
+    public ZipValidator(PublishConfig config, PublishMetrics metrics, BundleWorkers workers, TrashReaper trash) {
         this.config = config;
+        this.metrics = metrics;
+        this.workers = workers;
+        this.trash = trash;
     }
 
     public ValidatedBundle validateToStaging(String datasetId, InputStream zipStream) {
+        return validateToStaging(datasetId, zipStream, null);
+    }
+
+    /**
+     * Like {@link #validateToStaging(String, InputStream)}, but rejects the upload (422) when its
+     * SHA-256 differs from {@code expectedSha256} (hex, as sent by the client); null skips the check.
+     */
+    public ValidatedBundle validateToStaging(String datasetId, InputStream zipStream, String expectedSha256) {
         DatasetIdPolicy.requireValid(datasetId);
 
         String requestId = UUID.randomUUID().toString();
@@ -45,71 +86,235 @@ public class ZipValidator {
         Path unpackDir = stagingDir.resolve("unpack");
         Path zipFile = stagingDir.resolve("upload.zip");
 
+        InFlightStaging.add(stagingDir); // until PublisherService is done with it
         try {
             FileOps.ensureDir(unpackDir);
             FileOps.ensureDir(stagingDir);
 
-            // 1) spool upload.zip with maxZipBytes
-            spoolZip(zipStream, zipFile, config.getMaxZipBytes());
-
-            // 2) extract upload.zip to unpackDir with traversal protection
-            extractZip(zipFile, unpackDir);
-
-            // 3) find and validate bundle structure
-            List<Path> manifests = findFilesNamed(unpackDir, "manifest.json");
-            if (manifests.isEmpty()) throw PublishingException.validation("ZIP is missing manifest.json");
-            if (manifests.size() > 1) throw PublishingException.validation("ZIP contains multiple manifest.json files; expected exactly one");
-
-            Path manifestPath = manifests.get(0);
-            String bundleId = readBundleId(manifestPath);
-
-            // Conflict check (bundle already exists)
-            Path bundleFinalDir = config.getDataRoot().toAbsolutePath().normalize().resolve("bundles").resolve(bundleId);
-            if (Files.exists(bundleFinalDir)) {
-                throw PublishingException.conflict("Bundle already exists: " + bundleId);
-            }
-
-            Path bundleDir = manifestPath.getParent();
-            if (bundleDir == null) throw PublishingException.validation("Invalid manifest path");
-
-            Path modelPath = bundleDir.resolve("model.json");
-            Path indexesPath = bundleDir.resolve("indexes.json");
-
-            if (!Files.isRegularFile(modelPath)) throw PublishingException.validation("ZIP is missing model.json next to manifest.json");
-            if (!Files.isRegularFile(indexesPath)) throw PublishingException.validation("ZIP is missing indexes.json next to manifest.json");
-
-            // Size + well-formed JSON checks
-            JsonWellFormedValidator.validateJsonFile(manifestPath, config.getMaxJsonBytes());
-            JsonWellFormedValidator.validateJsonFile(modelPath, config.getMaxJsonBytes());
-            JsonWellFormedValidator.validateJsonFile(indexesPath, config.getMaxJsonBytes());
-
-            return new ValidatedBundle(bundleId, bundleDir, manifestPath, modelPath, indexesPath);
+            return config.isStreamingValidation()
+                    ? streamAndValidate(datasetId, zipStream, zipFile, unpackDir, expectedSha256)
+                    : spoolAndValidate(datasetId, zipStream, zipFile, unpackDir, expectedSha256);
 
         } catch (PublishingException pe) {
-            cleanupQuietly(stagingDir);
+            trash.discardStaging(stagingDir);
             throw pe;
         } catch (IllegalArgumentException iae) {
-            cleanupQuietly(stagingDir);
+            trash.discardStaging(stagingDir);
             if (iae.getMessage() != null && iae.getMessage().toLowerCase().contains("too large")) {
                 throw PublishingException.tooLarge(iae.getMessage());
             }
             throw PublishingException.validation(iae.getMessage());
         } catch (Exception e) {
-            cleanupQuietly(stagingDir);
+            trash.discardStaging(stagingDir);
             throw new PublishingException(500, "Internal error during ZIP validation", e);
         }
     }
 
     public Path getZipFileFromValidatedBundle(ValidatedBundle vb) {
         // staging/<requestId>/upload.zip
-        Path bundleDir = vb.bundleDir().toAbsolutePath().normalize();
-        Path stagingDir = bundleDir.getParent().getParent(); // unpack/.. -> staging
-        return stagingDir.resolve("upload.zip");
+        return vb.stagingDir().resolve("upload.zip");
+    }
+
+    /**
+     * Buffered mode: spool upload.zip, extract it, then locate and validate the bundle files.
+     */
+    private ValidatedBundle spoolAndValidate(String datasetId, InputStream zipStream, Path zipFile, Path unpackDir,
+                                             String expectedSha256) throws IOException {
+        // 1) spool upload.zip with maxZipBytes
+        long t = System.nanoTime();
+        PublishStageEvent spool = new PublishStageEvent();
+        spool.begin();
+        MessageDigest uploadDigest = sha256();
+        spoolZip(zipStream, zipFile, config.getMaxZipBytes(), uploadDigest);
+        spool.commit(PublishMetrics.STAGE_SPOOL, datasetId, null, zipFile);
+        metrics.stage(PublishMetrics.STAGE_SPOOL, datasetId, t);
+        metrics.bytesIn(datasetId, Files.size(zipFile));
+        String uploadSha256 = requireDigest(hex(uploadDigest), expectedSha256);
+
+        // 2) extract upload.zip to unpackDir with traversal protection
+        t = System.nanoTime();
+        Map<Path, String> digests = config.isBlobStore() ? new HashMap<>() : null;
+        extractZip(datasetId, zipFile, unpackDir, digests);
+        metrics.stage(PublishMetrics.STAGE_EXTRACT, datasetId, t);
+
+        // 3) find and validate bundle structure
+        t = System.nanoTime();
+        PublishStageEvent validateEvent = new PublishStageEvent();
+        validateEvent.begin();
+        List<Path> manifests = findFilesNamed(unpackDir, MANIFEST_JSON);
+        if (manifests.isEmpty()) throw PublishingException.validation("ZIP is missing manifest.json");
+        if (manifests.size() > 1) throw PublishingException.validation("ZIP contains multiple manifest.json files; expected exactly one");
+
+        Path manifestPath = manifests.get(0);
+        String bundleId = readBundleId(manifestPath);
+        requireNoExistingBundle(bundleId);
+
+        Path bundleDir = manifestPath.getParent();
+        if (bundleDir == null) throw PublishingException.validation("Invalid manifest path");
+
+        Path modelPath = bundleDir.resolve(MODEL_JSON);
+        Path indexesPath = bundleDir.resolve(INDEXES_JSON);
+
+        if (!Files.isRegularFile(modelPath)) throw PublishingException.validation("ZIP is missing model.json next to manifest.json");
+        if (!Files.isRegularFile(indexesPath)) throw PublishingException.validation("ZIP is missing indexes.json next to manifest.json");
+
+        // Size + well-formed JSON checks, all three files at once
+        try (ParallelJsonValidation validation = new ParallelJsonValidation(config.getMaxJsonBytes(), workers.executor())) {
+            validation.submit(manifestPath);
+            validation.submit(modelPath);
+            validation.submit(indexesPath);
+            validation.await();
+        }
+        validateEvent.commit(PublishMetrics.STAGE_VALIDATE, datasetId, bundleId, bundleDir);
+        metrics.stage(PublishMetrics.STAGE_VALIDATE, datasetId, t);
+        checkReferences(datasetId, modelPath, indexesPath);
+
+        return new ValidatedBundle(bundleId, bundleDir, manifestPath, modelPath, indexesPath, digestsFor(bundleDir, digests),
+                unpackDir.getParent(), uploadSha256);
+    }
+
+    /**
+     * Streaming mode: unpack straight from the upload stream (for multipart requests, the part
+     * the HTTP layer has already stored), so the ZIP is read once instead of being copied to
+     * upload.zip and read again. Each bundle file is validated as soon as it is written, in
+     * parallel with extracting the next entry, and extraction stops at the first bad one.
+     *
+     * The manifest is checked inline (its bundleId is needed right away); model.json and
+     * indexes.json next to it go to {@link ParallelJsonValidation}, as in spooled mode; those
+     * extracted before the manifest are submitted once it has been seen, files with those names
+     * in other directories are not validated. upload.zip is only kept when it will be archived;
+     * the upload's SHA-256 is computed on the way either way.
+     *
+     * Metrics: "extract" covers the unpack loop (JSON validation overlaps it), "validate" only
+     * the wait for validations still running afterwards.
+     */
+    private ValidatedBundle streamAndValidate(String datasetId, InputStream zipStream, Path zipFile, Path unpackDir,
+                                              String expectedSha256) throws IOException {
+        long t = System.nanoTime();
+        Map<Path, Set<String>> seenByDir = new HashMap<>();
+        Map<Path, String> digests = config.isBlobStore() ? new HashMap<>() : null;
+        Path manifestPath = null;
+        String bundleId = null;
+        List<Path> beforeManifest = new ArrayList<>();
+
+        MessageDigest uploadDigest = sha256();
+        OutputStream archiveCopy = new DigestOutputStream(config.getArchiveRoot().isPresent()
+                ? Files.newOutputStream(zipFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                : OutputStream.nullOutputStream(), uploadDigest);
+
+        try (ParallelJsonValidation validation = new ParallelJsonValidation(config.getMaxJsonBytes(), workers.executor());
+             CappedInputStream capped = new CappedInputStream(zipStream, config.getMaxZipBytes(), archiveCopy);
+             ZipInputStream zis = new ZipInputStream(capped, StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            while (!validation.failed() && (entry = zis.getNextEntry()) != null) {
+                Path out = resolveEntry(unpackDir, entry);
+                if (out == null) continue;
+
+                if (entry.isDirectory()) {
+                    FileOps.ensureDir(out);
+                    continue;
+                }
+
+                Path parent = out.getParent();
+                if (parent != null) FileOps.ensureDir(parent);
+
+                String fileName = out.getFileName().toString();
+                boolean json = MODEL_JSON.equals(fileName) || INDEXES_JSON.equals(fileName);
+                // Only the files next to manifest.json are bundle files; before it, any may be.
+                boolean bundleJson = json && manifestPath != null && parent != null && parent.equals(manifestPath.getParent());
+                MessageDigest md = digests != null && isBundleFile(fileName) ? sha256() : null;
+                ZipEntryExtractEvent extract = new ZipEntryExtractEvent();
+                extract.begin();
+                try (OutputStream os = digestingOutput(out, md)) {
+                    if (MANIFEST_JSON.equals(fileName)) {
+                        if (manifestPath != null) {
+                            throw PublishingException.validation("ZIP contains multiple manifest.json files; expected exactly one");
+                        }
+                        byte[] manifest = readBounded(zis, MANIFEST_JSON, config.getMaxJsonBytes());
+                        os.write(manifest);
+                        JsonWellFormedValidator.validateJsonStream(new ByteArrayInputStream(manifest), MANIFEST_JSON, config.getMaxJsonBytes());
+                        bundleId = readBundleId(new ByteArrayInputStream(manifest));
+                        requireNoExistingBundle(bundleId);
+                        manifestPath = out;
+                    } else if (bundleJson) {
+                        copyBounded(zis, os, fileName, config.getMaxJsonBytes());
+                    } else {
+                        zis.transferTo(os);
+                    }
+                }
+                extract.commit(datasetId, entry, out);
+                // Validate on the pool (from the page cache) while the next entry is extracted.
+                if (bundleJson) {
+                    validation.submit(out);
+                } else if (json && manifestPath == null) {
+                    beforeManifest.add(out);
+                }
+                if (md != null) digests.put(out, HexFormat.of().formatHex(md.digest()));
+                seenByDir.computeIfAbsent(parent, d -> new HashSet<>()).add(fileName);
+            }
+            metrics.stage(PublishMetrics.STAGE_EXTRACT, datasetId, t);
+            t = System.nanoTime();
+            PublishStageEvent validateEvent = new PublishStageEvent();
+            validateEvent.begin();
+            if (manifestPath != null && !validation.failed()) {
+                for (Path p : beforeManifest) {
+                    if (p.getParent().equals(manifestPath.getParent())) validation.submit(p);
+                }
+            }
+            validation.await();
+            validateEvent.commit(PublishMetrics.STAGE_VALIDATE, datasetId, bundleId,
+                    manifestPath != null ? manifestPath.getParent() : unpackDir);
+            metrics.stage(PublishMetrics.STAGE_VALIDATE, datasetId, t);
+
+            // Drain the central directory so the size cap and the archive copy see the whole upload.
+            capped.transferTo(OutputStream.nullOutputStream());
+            metrics.bytesIn(datasetId, capped.total);
+        } finally {
+            archiveCopy.close();
+        }
+        String uploadSha256 = requireDigest(hex(uploadDigest), expectedSha256);
+
+        if (manifestPath == null) throw PublishingException.validation("ZIP is missing manifest.json");
+
+        Path bundleDir = manifestPath.getParent();
+        if (bundleDir == null) throw PublishingException.validation("Invalid manifest path");
+
+        Set<String> seen = seenByDir.getOrDefault(bundleDir, Set.of());
+        if (!seen.contains(MODEL_JSON)) throw PublishingException.validation("ZIP is missing model.json next to manifest.json");
+        if (!seen.contains(INDEXES_JSON)) throw PublishingException.validation("ZIP is missing indexes.json next to manifest.json");
+
+        Path modelPath = bundleDir.resolve(MODEL_JSON);
+        Path indexesPath = bundleDir.resolve(INDEXES_JSON);
+        checkReferences(datasetId, modelPath, indexesPath);
+
+        return new ValidatedBundle(bundleId, bundleDir, manifestPath, modelPath, indexesPath, digestsFor(bundleDir, digests),
+                unpackDir.getParent(), uploadSha256);
+    }
+
+    private void checkReferences(String datasetId, Path modelPath, Path indexesPath) throws IOException {
+        if (!config.isReferenceCheck()) return;
+        long t = System.nanoTime();
+        ReferenceIntegrityCheck.check(modelPath, indexesPath);
+        metrics.stage(PublishMetrics.STAGE_REFERENCES, datasetId, t);
+    }
+
+    void requireNoExistingBundle(String bundleId) {
+        Path bundleFinalDir = config.getDataRoot().toAbsolutePath().normalize().resolve("bundles").resolve(bundleId);
+        if (Files.exists(bundleFinalDir)) {
+            throw PublishingException.conflict("Bundle already exists: " + bundleId);
+        }
+    }
+
+    // Package-private for the JMH benchmarks (src/jmh/java).
+    static void spoolZip(InputStream in, Path zipFile, long maxZipBytes) throws IOException {
+        spoolZip(in, zipFile, maxZipBytes, null);
     }
 
-    private static void spoolZip(InputStream in, Path zipFile, long maxZipBytes) throws IOException {
+    /** Spools the upload; {@code digest}, when given, is updated with every byte written. */
+    static void spoolZip(InputStream in, Path zipFile, long maxZipBytes, MessageDigest digest) throws IOException {
         long total = 0;
-        try (OutputStream out = Files.newOutputStream(zipFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        OutputStream file = Files.newOutputStream(zipFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try (OutputStream out = digest != null ? new DigestOutputStream(file, digest) : file) {
             byte[] buf = new byte[8192];
             int read;
             while ((read = in.read(buf)) > 0) {
@@ -122,22 +327,13 @@ public class ZipValidator {
         }
     }
 
-    private static void extractZip(Path zipFile, Path unpackDir) throws IOException {
+    static void extractZip(String datasetId, Path zipFile, Path unpackDir, Map<Path, String> digests) throws IOException {
         try (InputStream fis = Files.newInputStream(zipFile);
              ZipInputStream zis = new ZipInputStream(fis, StandardCharsets.UTF_8)) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
-                String name = entry.getName();
-                if (name == null || name.isBlank()) continue;
-
-                if (name.startsWith("/") || name.startsWith("\\")) {
-                    throw new IllegalArgumentException("ZIP contains absolute path entry: " + name);
-                }
-
-                Path out = unpackDir.resolve(name).normalize();
-                if (!out.startsWith(unpackDir)) {
-                    throw new IllegalArgumentException("ZIP traversal entry rejected: " + name);
-                }
+                Path out = resolveEntry(unpackDir, entry);
+                if (out == null) continue;
 
                 if (entry.isDirectory()) {
                     FileOps.ensureDir(out);
@@ -147,17 +343,108 @@ public class ZipValidator {
                 Path parent = out.getParent();
                 if (parent != null) FileOps.ensureDir(parent);
 
-                try (var os = Files.newOutputStream(out, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                MessageDigest md = digests != null && isBundleFile(out.getFileName().toString()) ? sha256() : null;
+                ZipEntryExtractEvent extract = new ZipEntryExtractEvent();
+                extract.begin();
+                try (var os = digestingOutput(out, md)) {
                     byte[] buf = new byte[8192];
                     int read;
                     while ((read = zis.read(buf)) > 0) {
                         os.write(buf, 0, read);
                     }
                 }
+                extract.commit(datasetId, entry, out);
+                if (md != null) digests.put(out, HexFormat.of().formatHex(md.digest()));
             }
         }
     }
 
+    private static boolean isBundleFile(String fileName) {
+        return MANIFEST_JSON.equals(fileName) || MODEL_JSON.equals(fileName) || INDEXES_JSON.equals(fileName);
+    }
+
+    private static OutputStream digestingOutput(Path out, MessageDigest md) throws IOException {
+        OutputStream os = Files.newOutputStream(out, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return md == null ? os : new DigestOutputStream(os, md);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(MessageDigest md) {
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static String requireDigest(String actual, String expected) {
+        if (expected != null && !expected.equalsIgnoreCase(actual)) {
+            throw PublishingException.validation("Upload SHA-256 mismatch: expected " + expected + ", got " + actual);
+        }
+        return actual;
+    }
+
+    /** SHA-256 per bundle file name (manifest.json, ...), empty when digests were not collected. */
+    private static Map<String, String> digestsFor(Path bundleDir, Map<Path, String> digests) {
+        if (digests == null) return Map.of();
+        Map<String, String> out = new HashMap<>();
+        for (String name : List.of(MANIFEST_JSON, MODEL_JSON, INDEXES_JSON)) {
+            String hex = digests.get(bundleDir.resolve(name));
+            if (hex != null) out.put(name, hex);
+        }
+        return Map.copyOf(out);
+    }
+
+    /**
+     * Maps a ZIP entry to its target under unpackDir with traversal protection.
+     * Returns null for entries that should be skipped.
+     */
+    private static Path resolveEntry(Path unpackDir, ZipEntry entry) {
+        String name = entry.getName();
+        if (name == null || name.isBlank()) return null;
+
+        if (name.startsWith("/") || name.startsWith("\\")) {
+            throw new IllegalArgumentException("ZIP contains absolute path entry: " + name);
+        }
+
+        Path out = unpackDir.resolve(name).normalize();
+        if (!out.startsWith(unpackDir)) {
+            throw new IllegalArgumentException("ZIP traversal entry rejected: " + name);
+        }
+        return out;
+    }
+
+    private static void copyBounded(InputStream in, OutputStream out, String fileName, long maxBytes) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while ((read = in.read(buf)) > 0) {
+            total += read;
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("JSON file too large: " + fileName + " (> " + maxBytes + " bytes), max=" + maxBytes);
+            }
+            out.write(buf, 0, read);
+        }
+    }
+
+    static byte[] readBounded(InputStream in, String fileName, long maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buf)) > 0) {
+            total += read;
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("JSON file too large: " + fileName + " (> " + maxBytes + " bytes), max=" + maxBytes);
+            }
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
     private static List<Path> findFilesNamed(Path root, String fileName) throws IOException {
         List<Path> out = new ArrayList<>();
         try (var stream = Files.walk(root)) {
@@ -167,9 +454,14 @@ public class ZipValidator {
         return out;
     }
 
-    private static String readBundleId(Path manifestPath) throws IOException {
-        try (var reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8);
-             JsonReader jr = Json.createReader(reader)) {
+    static String readBundleId(Path manifestPath) throws IOException {
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            return readBundleId(in);
+        }
+    }
+
+    private static String readBundleId(InputStream manifest) {
+        try (JsonReader jr = Json.createReader(new InputStreamReader(manifest, StandardCharsets.UTF_8))) {
             JsonObject obj = jr.readObject();
             String bundleId = obj.getString("bundleId", "").trim();
             if (bundleId.isEmpty()) {
@@ -179,15 +471,61 @@ public class ZipValidator {
                 throw new IllegalArgumentException("Invalid bundleId in manifest.json");
             }
             return bundleId;
+        } catch (JsonException je) {
+            throw new IllegalArgumentException("Invalid JSON in manifest.json: " + je.getMessage(), je);
         }
     }
 
-    private static void cleanupQuietly(Path dir) {
-        if (dir == null) return;
-        try (var walk = Files.walk(dir)) {
-            walk.sorted((a,b) -> b.compareTo(a)).forEach(p -> {
-                try { Files.deleteIfExists(p); } catch (IOException ignored) {}
-            });
-        } catch (IOException ignored) {}
+    /** Enforces maxZipBytes on the raw upload and optionally copies it (for archiving). */
+    private static final class CappedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private final OutputStream copy;
+        private long total;
+
+        CappedInputStream(InputStream in, long maxBytes, OutputStream copy) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+                if (copy != null) copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+                if (copy != null) copy.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Route skips through read() so every byte is counted and copied.
+            byte[] buf = new byte[8192];
+            long done = 0;
+            while (done < n) {
+                int r = read(buf, 0, (int) Math.min(buf.length, n - done));
+                if (r <= 0) break;
+                done += r;
+            }
+            return done;
+        }
+
+        private void count(int n) {
+            total += n;
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("ZIP payload too large; max=" + maxBytes);
+            }
+        }
     }
 }
@@ -0,0 +1,120 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.BundleCollector;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BundleCollectorTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void keepsLatestAndRetainedReleasesAndRemovesTheRest() throws Exception {
+        PublishConfig cfg = config("2", false);
+        Path bundles = tmp.resolve("data").resolve("bundles");
+        for (int i = 1; i <= 4; i++) publish(cfg, "gc-a", "a" + i, "{\"n\":" + i + "}");
+        publish(cfg, "gc-b", "b1", "{}");
+        Path orphan = Files.createDirectories(bundles.resolve("orphan"));
+        Files.write(orphan.resolve("model.json"), new byte[100]);
+
+        BundleCollector.Collection collected = new BundleCollector(cfg).collect();
+
+        assertEquals(3, collected.bundles());
+        assertEquals(0, collected.blobs());
+        assertTrue(collected.bytes() >= 100);
+        for (String kept : new String[] {"a3", "a4", "b1"}) assertTrue(Files.isDirectory(bundles.resolve(kept)), kept);
+        for (String gone : new String[] {"a1", "a2", "orphan"}) assertFalse(Files.exists(bundles.resolve(gone)), gone);
+
+        // Nothing left to collect; release history is untouched.
+        assertEquals(0, new BundleCollector(cfg).collect().bundles());
+        assertEquals(4, Files.readAllLines(tmp.resolve("data").resolve("datasets").resolve("gc-a").resolve("releases.jsonl")).size());
+    }
+
+    @Test
+    void withoutRetentionOnlyUnreferencedBundlesGo() throws Exception {
+        PublishConfig cfg = config(null, false);
+        Path bundles = tmp.resolve("data").resolve("bundles");
+        publish(cfg, "gc-a", "a1", "{}");
+        publish(cfg, "gc-a", "a2", "{}");
+        Files.createDirectories(bundles.resolve("orphan"));
+
+        assertEquals(1, new BundleCollector(cfg).collect().bundles());
+        assertTrue(Files.isDirectory(bundles.resolve("a1")));
+        assertTrue(Files.isDirectory(bundles.resolve("a2")));
+        assertFalse(Files.exists(bundles.resolve("orphan")));
+    }
+
+    @Test
+    void dryRunOnlyCountsUnreferencedBundles() throws Exception {
+        System.setProperty("PUBLISH_GC_DRY_RUN", "true");
+        PublishConfig cfg;
+        try {
+            cfg = config(null, false);
+        } finally {
+            System.clearProperty("PUBLISH_GC_DRY_RUN");
+        }
+        Path bundles = tmp.resolve("data").resolve("bundles");
+        publish(cfg, "gc-a", "a1", "{}");
+        Files.createDirectories(bundles.resolve("orphan"));
+
+        assertEquals(1, new BundleCollector(cfg).collect().bundles());
+        assertTrue(Files.isDirectory(bundles.resolve("orphan")));
+    }
+
+    @Test
+    void removesBlobsNoBundleLinksToAnymore() throws Exception {
+        PublishConfig cfg = config("1", true);
+        publish(cfg, "gc-a", "a1", "{\"old\":true}");
+        publish(cfg, "gc-a", "a2", "{\"new\":true}");
+        long before = blobs();
+
+        BundleCollector.Collection collected = new BundleCollector(cfg).collect();
+
+        assertEquals(1, collected.bundles());
+        // a1's manifest and model blobs plus their .gz sidecars; indexes.json is shared with a2.
+        assertEquals(4, collected.blobs());
+        assertEquals(before - 4, blobs());
+        assertTrue(Files.isRegularFile(tmp.resolve("data").resolve("bundles").resolve("a2").resolve("model.json")));
+    }
+
+    private long blobs() throws Exception {
+        try (Stream<Path> walk = Files.walk(tmp.resolve("data").resolve("blobs"))) {
+            return walk.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private PublishConfig config(String keepReleases, boolean blobStore) {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_JANITOR_DELETES_PER_SECOND", "0");
+        System.setProperty("PUBLISH_BLOB_STORE", Boolean.toString(blobStore));
+        if (keepReleases != null) System.setProperty("PUBLISH_RETENTION_KEEP_RELEASES", keepReleases);
+        try {
+            return PublishConfig.loadFromEnvOrSystem();
+        } finally {
+            System.clearProperty("PUBLISH_JANITOR_DELETES_PER_SECOND");
+            System.clearProperty("PUBLISH_BLOB_STORE");
+            System.clearProperty("PUBLISH_RETENTION_KEEP_RELEASES");
+        }
+    }
+
+    private static void publish(PublishConfig cfg, String datasetId, String bundleId, String model) throws Exception {
+        byte[] zip = TestZips.bundle(bundleId, model, "{}");
+        ValidatedBundle vb = new ZipValidator(cfg).validateToStaging(datasetId, new ByteArrayInputStream(zip));
+        new PublisherService(cfg).publish(datasetId, vb, Optional.empty());
+    }
+}
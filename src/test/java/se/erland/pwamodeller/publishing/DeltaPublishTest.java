@@ -0,0 +1,82 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.DeltaBundleBuilder;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaPublishTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void rebuildsBundleFromBaseWithReplacementAndPatch() throws Exception {
+        PublishConfig cfg = config();
+        publishBase(cfg, "base-1");
+
+        ValidatedBundle vb = new DeltaBundleBuilder(cfg).buildFromBase("delta-ds", "base-1",
+                Map.of("manifest.json", stream("{\"bundleId\":\"next-1\"}")),
+                Map.of("model.json", stream("[{\"op\":\"replace\",\"path\":\"/m\",\"value\":42}]")));
+        new PublisherService(cfg).publish("delta-ds", vb, Optional.empty());
+
+        Path next = tmp.resolve("data").resolve("bundles").resolve("next-1");
+        assertEquals("{\"m\":42}", Files.readString(next.resolve("model.json"), StandardCharsets.UTF_8));
+        assertEquals("{\"i\":2}", Files.readString(next.resolve("indexes.json"), StandardCharsets.UTF_8));
+        assertTrue(Files.readString(tmp.resolve("data").resolve("datasets").resolve("delta-ds").resolve("latest.json"),
+                StandardCharsets.UTF_8).contains("next-1"));
+    }
+
+    @Test
+    void rejectsPatchThatDoesNotApply() {
+        PublishConfig cfg = config();
+        publishBase(cfg, "base-2");
+
+        PublishingException ex = assertThrows(PublishingException.class, () ->
+                new DeltaBundleBuilder(cfg).buildFromBase("delta-ds", "base-2",
+                        Map.of("manifest.json", stream("{\"bundleId\":\"next-2\"}")),
+                        Map.of("model.json", stream("[{\"op\":\"remove\",\"path\":\"/missing\"}]"))));
+        assertEquals(422, ex.getStatus());
+        assertTrue(ex.getMessage().contains("model.json"), ex.getMessage());
+    }
+
+    @Test
+    void unchangedManifestConflictsWithBase() {
+        PublishConfig cfg = config();
+        publishBase(cfg, "base-3");
+
+        PublishingException ex = assertThrows(PublishingException.class, () ->
+                new DeltaBundleBuilder(cfg).buildFromBase("delta-ds", "base-3",
+                        Map.of("indexes.json", stream("{\"i\":3}")), Map.of()));
+        assertEquals(409, ex.getStatus());
+    }
+
+    private PublishConfig config() {
+        return new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                5_000_000, 5_000_000, Optional.empty());
+    }
+
+    private static void publishBase(PublishConfig cfg, String bundleId) {
+        ValidatedBundle vb = new ZipValidator(cfg).validateToStaging("delta-ds", new ByteArrayInputStream(TestZips.bundle(bundleId, "{\"m\":1}", "{\"i\":2}")));
+        new PublisherService(cfg).publish("delta-ds", vb, Optional.empty());
+    }
+
+    private static InputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,129 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.DiskSpaceGuard;
+import se.erland.pwamodeller.publishing.service.PublishMetrics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Thresholds are set relative to the temp filesystem's current usable space, with margins of
+ * hundreds of MB so unrelated writes while the test runs do not change the outcome.
+ */
+public class DiskSpaceGuardTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void admitsWhatFitsAndRejectsWith503Or507() throws Exception {
+        long usable = Files.getFileStore(tmp).getUsableSpace();
+        DiskSpaceGuard guard = guard(usable - 1024 * MB, usable - 512 * MB);
+        try {
+            assertTrue(guard.ready());
+
+            DiskSpaceGuard.Reservation first = guard.reserve(600 * MB);
+            assertEquals(600 * MB, guard.status().get(0).reservedBytes());
+            // staging and data share the temp filesystem: one ledger
+            assertEquals(600 * MB, guard.status().get(1).reservedBytes());
+            assertFalse(guard.ready());
+
+            // Would fit once the publish in flight is done: retry later.
+            PublishingException busy = assertThrows(PublishingException.class, () -> guard.reserve(600 * MB));
+            assertEquals(503, busy.getStatus());
+            assertNotNull(busy.getRetryAfterSeconds());
+
+            first.close();
+            first.close(); // idempotent
+            assertEquals(0, guard.status().get(0).reservedBytes());
+            assertTrue(guard.ready());
+
+            // Does not fit even with nothing else in flight.
+            PublishingException full = assertThrows(PublishingException.class, () -> guard.reserve(2048 * MB));
+            assertEquals(507, full.getStatus());
+            assertNull(full.getRetryAfterSeconds());
+
+            try (DiskSpaceGuard.Reservation again = guard.reserve(600 * MB)) {
+                assertEquals(600 * MB, again.bytes());
+            }
+            assertEquals(0, guard.status().get(0).reservedBytes());
+        } finally {
+            clear();
+        }
+    }
+
+    @Test
+    void uploadReservationScalesContentLengthAndFallsBackToMaxZipBytes() throws Exception {
+        long usable = Files.getFileStore(tmp).getUsableSpace();
+        System.setProperty("PUBLISH_DISK_RESERVE_FACTOR", "3");
+        System.setProperty("PUBLISH_MAX_ZIP_BYTES", Long.toString(10 * MB));
+        DiskSpaceGuard guard = guard(Math.max(0, usable - 1024 * MB), 0);
+        try {
+            try (DiskSpaceGuard.Reservation r = guard.reserveForUpload(MB)) {
+                assertEquals(3 * MB, r.bytes());
+            }
+            try (DiskSpaceGuard.Reservation r = guard.reserveForUpload(-1)) {
+                assertEquals(30 * MB, r.bytes());
+            }
+            // Larger than PUBLISH_MAX_ZIP_BYTES: the upload is cut off (413) at the limit.
+            try (DiskSpaceGuard.Reservation r = guard.reserveForUpload(100 * MB)) {
+                assertEquals(30 * MB, r.bytes());
+            }
+            // Chunks already stored in staging are not counted again.
+            try (DiskSpaceGuard.Reservation r = guard.reserveForStoredUpload(MB)) {
+                assertEquals(2 * MB, r.bytes());
+            }
+        } finally {
+            System.clearProperty("PUBLISH_DISK_RESERVE_FACTOR");
+            System.clearProperty("PUBLISH_MAX_ZIP_BYTES");
+            clear();
+        }
+    }
+
+    @Test
+    void multipartUploadAlsoReservesItsBodyInTheUploadsDirectory() throws Exception {
+        long usable = Files.getFileStore(tmp).getUsableSpace();
+        System.setProperty("PUBLISH_DISK_RESERVE_FACTOR", "3");
+        guard(Math.max(0, usable - 1024 * MB), 0);
+        DiskSpaceGuard guard = new DiskSpaceGuard(PublishConfig.loadFromEnvOrSystem(), PublishMetrics.noop(),
+                tmp.resolve("uploads").toString());
+        try {
+            assertEquals(List.of("staging", "data", "uploads"), guard.status().stream().map(DiskSpaceGuard.DiskStatus::root).toList());
+            // All three on the temp filesystem: one ledger holding the publish and the stored body.
+            try (DiskSpaceGuard.Reservation r = guard.reserveForUpload(MB)) {
+                assertEquals(3 * MB, r.bytes());
+                assertEquals(4 * MB, guard.status().get(2).reservedBytes());
+            }
+            try (DiskSpaceGuard.Reservation r = guard.reserveForRequestBody(MB)) {
+                assertEquals(0, r.bytes());
+                assertEquals(MB, guard.status().get(0).reservedBytes());
+            }
+            assertEquals(0, guard.status().get(2).reservedBytes());
+        } finally {
+            System.clearProperty("PUBLISH_DISK_RESERVE_FACTOR");
+            clear();
+        }
+    }
+
+    private DiskSpaceGuard guard(long minFree, long readyMinFree) {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_DISK_MIN_FREE_BYTES", Long.toString(minFree));
+        System.setProperty("PUBLISH_DISK_READY_MIN_FREE_BYTES", Long.toString(readyMinFree));
+        return new DiskSpaceGuard(PublishConfig.loadFromEnvOrSystem());
+    }
+
+    private static void clear() {
+        System.clearProperty("PUBLISH_DISK_MIN_FREE_BYTES");
+        System.clearProperty("PUBLISH_DISK_READY_MIN_FREE_BYTES");
+    }
+}
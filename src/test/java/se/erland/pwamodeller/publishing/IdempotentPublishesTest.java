@@ -0,0 +1,118 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.IdempotentPublishes;
+import se.erland.pwamodeller.publishing.service.PublishResult;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ReleaseLog;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotentPublishesTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void findsEarlierPublishByKeyOrDigest() throws Exception {
+        for (boolean streaming : new boolean[] {true, false}) {
+            PublishConfig cfg = config(streaming);
+            String ds = streaming ? "idem-stream" : "idem-spool";
+            byte[] zip = TestZips.minimalValidBundle(ds + "-b1");
+            String sha = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(zip));
+
+            ValidatedBundle vb = new ZipValidator(cfg).validateToStaging(ds, new ByteArrayInputStream(zip), sha.toUpperCase());
+            assertEquals(sha, vb.uploadSha256());
+            PublishResult published = new PublisherService(cfg).publish(ds, vb, Optional.empty(), "ci-run-1");
+
+            IdempotentPublishes idempotency = new IdempotentPublishes(cfg);
+            assertEquals(Optional.of(published), idempotency.find(ds, "ci-run-1", null));
+            assertEquals(Optional.of(published), idempotency.find(ds, null, sha));
+            assertEquals(Optional.of(published), idempotency.find(ds, "ci-run-2", sha));
+            assertEquals(Optional.empty(), idempotency.find(ds, "ci-run-2", null));
+            assertEquals(Optional.empty(), idempotency.find("idem-none", "ci-run-1", sha));
+            assertEquals(sha, ReleaseLog.page(tmp.resolve("data").resolve("datasets").resolve(ds), 1, null).releases().get(0).uploadSha256);
+
+            PublishingException reused = assertThrows(PublishingException.class, () -> idempotency.find(ds, "ci-run-1", "0".repeat(64)));
+            assertEquals(422, reused.getStatus());
+        }
+    }
+
+    @Test
+    void keyIsUsedOncePerDataset() throws Exception {
+        PublishConfig cfg = config(true);
+        PublisherService publisher = new PublisherService(cfg);
+        publisher.publish("idem-ds", new ZipValidator(cfg).validateToStaging("idem-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("b1"))),
+                Optional.empty(), "ci-run-1");
+
+        ValidatedBundle other = new ZipValidator(cfg).validateToStaging("idem-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("b2")));
+        PublishingException ex = assertThrows(PublishingException.class,
+                () -> publisher.publish("idem-ds", other, Optional.empty(), "ci-run-1"));
+        assertEquals(409, ex.getStatus());
+        assertFalse(Files.exists(tmp.resolve("data").resolve("bundles").resolve("b2")));
+    }
+
+    @Test
+    void replaysOnlyPublishedBundlesThatStillExist() throws Exception {
+        PublishConfig cfg = config(true);
+        PublisherService publisher = new PublisherService(cfg);
+        for (String bundleId : new String[] {"b1", "b2"}) {
+            publisher.publish("idem-ds", new ZipValidator(cfg).validateToStaging("idem-ds", new ByteArrayInputStream(TestZips.minimalValidBundle(bundleId))),
+                    Optional.empty(), "ci-run-" + bundleId);
+        }
+        Path datasetDir = tmp.resolve("data").resolve("datasets").resolve("idem-ds");
+        ReleaseLog.compactSnapshot(datasetDir);
+        String releases = Files.readString(datasetDir.resolve("releases.json"));
+        assertTrue(releases.contains("\"b2\""));
+        assertFalse(releases.contains("keySha256"));
+
+        IdempotentPublishes idempotency = new IdempotentPublishes(cfg);
+        assertTrue(idempotency.find("idem-ds", "ci-run-b1", null).isPresent());
+        // Collected by retention.
+        Files.move(tmp.resolve("data").resolve("bundles").resolve("b1"), tmp.resolve("collected-b1"));
+        assertEquals(Optional.empty(), idempotency.find("idem-ds", "ci-run-b1", null));
+        assertTrue(idempotency.find("idem-ds", "ci-run-b2", null).isPresent());
+    }
+
+    @Test
+    void digestMismatchRejectsUploadAndDiscardsStaging() throws Exception {
+        for (boolean streaming : new boolean[] {true, false}) {
+            PublishConfig cfg = config(streaming);
+            PublishingException ex = assertThrows(PublishingException.class, () -> new ZipValidator(cfg)
+                    .validateToStaging("idem-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("b1")), "0".repeat(64)));
+            assertEquals(422, ex.getStatus());
+            try (var left = Files.list(tmp.resolve("staging"))) {
+                assertEquals(0, left.count());
+            }
+        }
+        PublishingException bad = assertThrows(PublishingException.class,
+                () -> new IdempotentPublishes(config(true)).find("idem-ds", null, "abc"));
+        assertEquals(422, bad.getStatus());
+    }
+
+    private PublishConfig config(boolean streaming) {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_STREAMING_VALIDATION", Boolean.toString(streaming));
+        try {
+            return PublishConfig.loadFromEnvOrSystem();
+        } finally {
+            System.clearProperty("PUBLISH_DATA_ROOT");
+            System.clearProperty("PUBLISH_STAGING_ROOT");
+            System.clearProperty("PUBLISH_STREAMING_VALIDATION");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package se.erland.pwamodeller.publishing;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JfrEventsTest {
+
+    private static final String PREFIX = "se.erland.pwamodeller.publishing.";
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void publishEmitsStageFileAndLockEvents() throws Exception {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_STREAMING_VALIDATION", "false");
+        Path jfr = tmp.resolve("publish.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("PublishStage", "ZipEntryExtract", "FileOperation", "DatasetLockWait")) {
+                recording.enable(PREFIX + name);
+            }
+            recording.start();
+
+            PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+            String bundleId = "2026-03-02T10-00-00Z_jfr";
+            ValidatedBundle vb = new ZipValidator(cfg).validateToStaging("jfr-ds", new ByteArrayInputStream(TestZips.minimalValidBundle(bundleId)));
+            new PublisherService(cfg).publish("jfr-ds", vb, Optional.empty());
+
+            recording.stop();
+            recording.dump(jfr);
+        } finally {
+            System.clearProperty("PUBLISH_STREAMING_VALIDATION");
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+
+        List<String> stages = events.stream().filter(e -> is(e, "PublishStage")).map(e -> e.getString("stage")).toList();
+        assertEquals(List.of("spool", "validate", "promote", "commit"), stages);
+        RecordedEvent validate = events.stream().filter(e -> is(e, "PublishStage") && "validate".equals(e.getString("stage"))).findFirst().orElseThrow();
+        assertEquals("jfr-ds", validate.getString("datasetId"));
+        assertEquals("2026-03-02T10-00-00Z_jfr", validate.getString("bundleId"));
+        assertTrue(validate.getLong("bytes") > 0);
+
+        List<String> entries = events.stream().filter(e -> is(e, "ZipEntryExtract")).map(e -> e.getString("entry")).toList();
+        assertTrue(entries.contains("model.json"), entries::toString);
+
+        List<String> ops = events.stream().filter(e -> is(e, "FileOperation")).map(e -> e.getString("operation")).toList();
+        assertTrue(ops.containsAll(List.of("move", "writeDatasetJson", "appendRelease", "writeLatest", "atomicWrite")), ops::toString);
+        RecordedEvent latest = events.stream().filter(e -> is(e, "FileOperation") && "writeLatest".equals(e.getString("operation"))).findFirst().orElseThrow();
+        assertEquals("jfr-ds", latest.getString("datasetId"));
+        assertTrue(latest.getString("target").endsWith("latest.json"));
+        assertTrue(latest.getLong("bytes") > 0);
+
+        assertEquals(1, events.stream().filter(e -> is(e, "DatasetLockWait")).count());
+    }
+
+    private static boolean is(RecordedEvent e, String name) {
+        return e.getEventType().getName().equals(PREFIX + name);
+    }
+}
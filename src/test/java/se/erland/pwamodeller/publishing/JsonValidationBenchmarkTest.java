@@ -0,0 +1,84 @@
+package se.erland.pwamodeller.publishing;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.service.JsonWellFormedValidator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Throughput of the byte scanner behind {@link JsonWellFormedValidator#validateJsonFile} versus the
+ * previous approach (UTF-8 decode through a BufferedReader + Parsson parser events) on a
+ * model.json-like file. Prints the best of several runs in MB/s.
+ *
+ * Disabled by default:
+ *   mvn test -Dtest=JsonValidationBenchmarkTest -Dpublish.bench=true [-Dpublish.bench.jsonMb=50]
+ */
+@EnabledIfSystemProperty(named = "publish.bench", matches = "true")
+public class JsonValidationBenchmarkTest {
+
+    private static final int RUNS = 5;
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void scannerVersusParsson() throws Exception {
+        int mb = Integer.getInteger("publish.bench.jsonMb", 50);
+        Path file = tmp.resolve("model.json");
+        writeModel(file, mb * 1024L * 1024L);
+        double sizeMb = Files.size(file) / (1024.0 * 1024.0);
+
+        double parsson = best(() -> {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                 JsonParser parser = Json.createParser(reader)) {
+                while (parser.hasNext()) parser.next();
+            }
+        });
+        double scanner = best(() -> JsonWellFormedValidator.validateJsonFile(file, Long.MAX_VALUE));
+
+        System.out.printf("%-26s %8.1f MB%n", "model.json", sizeMb);
+        System.out.printf("%-26s %8.1f MB/s%n", "parsson (reader + events)", sizeMb / parsson);
+        System.out.printf("%-26s %8.1f MB/s%n", "byte scanner (mmap)", sizeMb / scanner);
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    /** Best wall time in seconds after one warm-up run. */
+    private static double best(Run run) throws Exception {
+        run.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long t0 = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best / 1e9;
+    }
+
+    private static void writeModel(Path file, long targetBytes) throws Exception {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("{\"elements\":[\n");
+            long written = 0;
+            for (int i = 0; written < targetBytes; i++) {
+                String element = (i > 0 ? ",\n" : "")
+                        + "  {\"id\":\"id-" + i + "\",\"type\":\"ApplicationComponent\",\"name\":\"Tjänst " + i
+                        + "\",\"documentation\":\"Beskrivning av komponent " + i + " \\u00e5\\u00e4\\u00f6\","
+                        + "\"properties\":[{\"key\":\"owner\",\"value\":\"team-" + (i % 17) + "\"},"
+                        + "{\"key\":\"cost\",\"value\":" + (i * 13.5) + "}],\"active\":" + (i % 2 == 0) + ",\"parent\":null}";
+                w.write(element);
+                written += element.length();
+            }
+            w.write("\n]}\n");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package se.erland.pwamodeller.publishing;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.service.JsonWellFormedValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential test: the byte scanner behind {@link JsonWellFormedValidator} must accept and
+ * reject exactly what the Parsson parser does (for valid UTF-8 input).
+ */
+public class JsonWellFormedValidatorTest {
+
+    private static final String[] CASES = {
+            "", " ", "1", "-0", "2.5E-3", "0e0", "1E+5", "\"x\"", "true", "null", "{}", "[]", "[] ",
+            "{\"a\" : [ ]}", "[1,\n2]", "\"\\/\"", "\"\\uD800\"", "\"\\u00e5\\n\"", "{\"å\":\"ø€𝄞\"}",
+            "{} {}", "{}x", "01", "-01", "-", "1.", "1.e5", ".5", "1e", "1e+", "+1", "1ee", "1.0e", "1 2",
+            "[1,]", "{\"a\":1,}", "[,1]", "{\"a\"}", "{1:2}", "{\"a\":}", "[1 2]", "{\"a\":1 \"b\":2}",
+            "[\"a\"\"b\"]", "[true false]", "[-]", "[1]]", "]", "}", "[", "{", "\"", "\"\\\"",
+            "\"a\u0001\"", "\"\\x\"", "\"\\u12\"", "\"\\uZZZZ\"", "truex", "tru", "nul", "fals",
+            "\uFEFF{}", "\f{}", "\u00a0{}", "{}\u0000", "[1]\r\n\t ", "{\"a\":{\"b\":[1,{\"c\":null}]}}",
+    };
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void agreesWithParssonOnHandWrittenCases() throws Exception {
+        for (String json : CASES) {
+            assertSameVerdict(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void agreesWithParssonOnMutatedDocuments() throws Exception {
+        Random random = new Random(42);
+        String alphabet = "{}[],:\" \n\t0123456789-+.eEtrufalsn\\/bu";
+        for (int n = 0; n < 3000; n++) {
+            StringBuilder doc = new StringBuilder();
+            value(doc, random, 0);
+            int mutations = random.nextInt(3);
+            for (int m = 0; m < mutations && doc.length() > 0; m++) {
+                int pos = random.nextInt(doc.length());
+                switch (random.nextInt(3)) {
+                    case 0 -> doc.deleteCharAt(pos);
+                    case 1 -> doc.insert(pos, alphabet.charAt(random.nextInt(alphabet.length())));
+                    default -> doc.setCharAt(pos, alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertSameVerdict(doc.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void agreesWithParssonOnSpecialBytesAtEveryOffsetOfLongStrings() throws Exception {
+        String[] specials = {"\"", "\\", "\\n", "\\u00e5", "\u0001", "\u001f", "å", "€", "𝄞", " "};
+        for (String special : specials) {
+            for (int offset = 0; offset < 20; offset++) {
+                String text = "x".repeat(offset) + special + "y".repeat(20 - offset);
+                assertSameVerdict(("[\"" + text + "\",1]").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void enforcesParssonDepthLimit() throws Exception {
+        for (int depth : new int[]{998, 999, 1000, 1001}) {
+            assertSameVerdict(("[".repeat(depth) + "]".repeat(depth)).getBytes(StandardCharsets.UTF_8));
+            assertSameVerdict(("{\"a\":".repeat(depth) + "1" + "}".repeat(depth)).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void rejectsMalformedUtf8() throws Exception {
+        byte[][] bad = {
+                {'"', (byte) 0xC0, (byte) 0xAF, '"'},                          // overlong '/'
+                {'"', (byte) 0xE0, (byte) 0x80, (byte) 0xAF, '"'},             // overlong
+                {'"', (byte) 0xED, (byte) 0xA0, (byte) 0x80, '"'},             // encoded surrogate
+                {'"', (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, '"'}, // above U+10FFFF
+                {'"', (byte) 0xC3, '"'},                                       // truncated
+                {'"', (byte) 0x80, '"'},                                       // stray continuation
+                {'"', (byte) 0xFF, '"'},
+        };
+        for (byte[] json : bad) {
+            assertFalse(scannerAccepts(json), () -> "accepted " + new String(json, StandardCharsets.ISO_8859_1));
+        }
+        assertTrue(scannerAccepts("\"å ø € 𝄞\"".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void reportsFileNameAndPosition() throws Exception {
+        Path file = tmp.resolve("model.json");
+        Files.writeString(file, "{\n  \"a\": [1,]\n}", StandardCharsets.UTF_8);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> JsonWellFormedValidator.validateJsonFile(file, 1_000));
+        assertTrue(ex.getMessage().startsWith("Invalid JSON in model.json"), ex.getMessage());
+        assertTrue(ex.getMessage().contains("line 2, column 11"), ex.getMessage());
+    }
+
+    @Test
+    void largeFileIsScannedMapped() throws Exception {
+        StringBuilder sb = new StringBuilder("[");
+        // Larger than one 1 MiB slice, so the slice boundaries are crossed.
+        for (int i = 0; sb.length() < 3_000_000; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i).append(",\"name\":\"élément ").append(i).append("\",\"v\":-1.5e3}");
+        }
+        byte[] good = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        assertSameVerdict(good);
+
+        byte[] truncated = Arrays.copyOf(good, good.length - 1);
+        assertSameVerdict(truncated);
+    }
+
+    private void assertSameVerdict(byte[] json) throws Exception {
+        boolean expected = parssonAccepts(json);
+        String shown = new String(json, StandardCharsets.UTF_8);
+        String display = shown.length() > 200 ? shown.substring(0, 200) + "..." : shown;
+        assertEquals(expected, scannerAccepts(json), () -> "file verdict differs for: " + display);
+        assertEquals(expected, streamAccepts(json), () -> "stream verdict differs for: " + display);
+    }
+
+    private static boolean parssonAccepts(byte[] json) {
+        try (JsonParser parser = Json.createParser(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            while (parser.hasNext()) parser.next();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private boolean scannerAccepts(byte[] json) throws Exception {
+        Path file = tmp.resolve("doc.json");
+        Files.write(file, json);
+        try {
+            JsonWellFormedValidator.validateJsonFile(file, Long.MAX_VALUE);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** Feeds 1-3 bytes per read so every token also gets split across chunks. */
+    private static boolean streamAccepts(byte[] json) throws Exception {
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(json)) {
+            private int n;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1 + (n++ % 3)));
+            }
+        };
+        try {
+            JsonWellFormedValidator.validateJsonStream(trickle, "doc.json", Long.MAX_VALUE);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void value(StringBuilder sb, Random random, int depth) {
+        int kind = depth > 4 ? 2 + random.nextInt(5) : random.nextInt(7);
+        switch (kind) {
+            case 0 -> {
+                sb.append('{');
+                int n = random.nextInt(4);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append("\"k").append(i).append("\":");
+                    value(sb, random, depth + 1);
+                }
+                sb.append('}');
+            }
+            case 1 -> {
+                sb.append('[');
+                int n = random.nextInt(4);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) sb.append(", ");
+                    value(sb, random, depth + 1);
+                }
+                sb.append(']');
+            }
+            case 2 -> sb.append(List.of("0", "-12", "3.25", "1e9", "-0.5E-2", "7").get(random.nextInt(6)));
+            case 3 -> sb.append(List.of("\"\"", "\"abc\"", "\"a\\\"b\"", "\"\\u00e5\"", "\"€ 𝄞\"", "\"\\n\\t\"").get(random.nextInt(6)));
+            case 4 -> sb.append("true");
+            case 5 -> sb.append("false");
+            default -> sb.append("null");
+        }
+    }
+}
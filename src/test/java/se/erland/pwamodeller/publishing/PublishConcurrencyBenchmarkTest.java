@@ -0,0 +1,125 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.PublishLimiter;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrent-publish benchmark: N uploads submitted at once, run on a platform worker pool
+ * (like the HTTP worker pool) and, when the JDK has them, on virtual threads; every publish
+ * goes through {@link PublishLimiter}. Prints throughput and p50/p99 latency (submit to done).
+ *
+ * Disabled by default:
+ *   mvn test -Dtest=PublishConcurrencyBenchmarkTest -Dpublish.bench=true
+ *     [-Dpublish.bench.uploads=64] [-Dpublish.bench.modelKb=512] [-Dpublish.bench.maxConcurrent=8]
+ */
+@EnabledIfSystemProperty(named = "publish.bench", matches = "true")
+public class PublishConcurrencyBenchmarkTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void compareExecutors() throws Exception {
+        int uploads = Integer.getInteger("publish.bench.uploads", 64);
+        int modelKb = Integer.getInteger("publish.bench.modelKb", 512);
+        int maxConcurrent = Integer.getInteger("publish.bench.maxConcurrent", 8);
+
+        run("warm-up", Executors.newFixedThreadPool(4), Math.max(8, uploads / 4), modelKb, maxConcurrent, false);
+        System.out.printf("%-22s %8s %10s %10s %10s%n", "executor", "uploads", "ops/s", "p50 ms", "p99 ms");
+        run("platform pool=16", Executors.newFixedThreadPool(16), uploads, modelKb, maxConcurrent, true);
+        run("platform pool=" + uploads, Executors.newFixedThreadPool(uploads), uploads, modelKb, maxConcurrent, true);
+        ExecutorService virtual = virtualThreadExecutor();
+        if (virtual != null) {
+            run("virtual", virtual, uploads, modelKb, maxConcurrent, true);
+        } else {
+            System.out.printf("%-22s (not available on Java %s)%n", "virtual", Runtime.version().feature());
+        }
+    }
+
+    private void run(String name, ExecutorService executor, int uploads, int modelKb, int maxConcurrent, boolean report)
+            throws Exception {
+        Path root = tmp.resolve(name.replaceAll("[^a-z0-9]", "_"));
+        System.setProperty("PUBLISH_DATA_ROOT", root.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", root.resolve("staging").toString());
+        System.setProperty("PUBLISH_MAX_CONCURRENT", String.valueOf(maxConcurrent));
+        System.setProperty("PUBLISH_ACQUIRE_TIMEOUT_MS", String.valueOf(TimeUnit.MINUTES.toMillis(5)));
+        try {
+            PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+            ZipValidator validator = new ZipValidator(cfg);
+            PublisherService publisher = new PublisherService(cfg);
+            PublishLimiter limiter = new PublishLimiter(cfg);
+
+            List<byte[]> zips = new ArrayList<>(uploads);
+            for (int i = 0; i < uploads; i++) zips.add(makeZip("bench-" + i, modelKb));
+
+            long start = System.nanoTime();
+            List<Future<Long>> futures = new ArrayList<>(uploads);
+            for (int i = 0; i < uploads; i++) {
+                byte[] zip = zips.get(i);
+                String datasetId = "bench-ds-" + (i % 4);
+                long submitted = System.nanoTime();
+                futures.add(executor.submit(() -> limiter.run(() -> {
+                    ValidatedBundle vb = validator.validateToStaging(datasetId, new ByteArrayInputStream(zip));
+                    publisher.publish(datasetId, vb, Optional.empty());
+                    return System.nanoTime() - submitted;
+                })));
+            }
+            long[] latencies = new long[uploads];
+            for (int i = 0; i < uploads; i++) latencies[i] = futures.get(i).get(5, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            if (report) System.out.printf("%-22s %8d %10.1f %10.1f %10.1f%n", name, uploads,
+                    uploads / (elapsed / 1e9), percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99));
+            assertEquals(0, limiter.inFlight());
+        } finally {
+            executor.shutdownNow();
+            System.clearProperty("PUBLISH_MAX_CONCURRENT");
+            System.clearProperty("PUBLISH_ACQUIRE_TIMEOUT_MS");
+        }
+    }
+
+    /** Executors.newVirtualThreadPerTaskExecutor() on Java 21+, null otherwise. */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static double percentileMillis(long[] sorted, double p) {
+        int idx = Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, idx)] / 1e6;
+    }
+
+    private static byte[] makeZip(String bundleId, int modelKb) {
+        StringBuilder model = new StringBuilder("{\"elements\":[");
+        for (int i = 0; model.length() < modelKb * 1024; i++) {
+            if (i > 0) model.append(',');
+            model.append("{\"id\":\"e").append(i).append("\",\"name\":\"Element ").append(i).append("\"}");
+        }
+        model.append("]}");
+        return TestZips.bundle(bundleId, model.toString(), "{\"i\":2}");
+    }
+}
@@ -0,0 +1,120 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.PublishJobService;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PublishJobServiceTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void jobPublishesInBackground() throws Exception {
+        PublishConfig cfg = config();
+        PublishJobService jobs = new PublishJobService(cfg, new ZipValidator(cfg), new PublisherService(cfg));
+
+        PublishJobService.Job job = jobs.submit("job-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("job-bundle-1")), Optional.empty());
+        awaitFinished(job);
+
+        assertEquals(PublishJobService.State.SUCCEEDED, job.state());
+        assertEquals("job-bundle-1", job.result().bundleId());
+        assertSame(job, jobs.get(job.jobId()).orElseThrow());
+        assertTrue(Files.isRegularFile(tmp.resolve("data").resolve("bundles").resolve("job-bundle-1").resolve("manifest.json")));
+        assertNoSpoolLeft();
+    }
+
+    @Test
+    void failedValidationIsReportedOnTheJob() throws Exception {
+        PublishConfig cfg = config();
+        PublishJobService jobs = new PublishJobService(cfg, new ZipValidator(cfg), new PublisherService(cfg));
+
+        PublishJobService.Job job = jobs.submit("job-ds", new ByteArrayInputStream("not a zip".getBytes(StandardCharsets.UTF_8)), Optional.empty());
+        awaitFinished(job);
+
+        assertEquals(PublishJobService.State.FAILED, job.state());
+        assertEquals(422, job.error().getStatus());
+        assertNoSpoolLeft();
+    }
+
+    @Test
+    void saturatedPoolRejectsWithRetryAfter() throws Exception {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_ASYNC_WORKERS", "1");
+        System.setProperty("PUBLISH_ASYNC_QUEUE_CAPACITY", "1");
+        try {
+            PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            ZipValidator blocking = new ZipValidator(cfg) {
+                @Override
+                public ValidatedBundle validateToStaging(String datasetId, InputStream zipStream) {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.validateToStaging(datasetId, zipStream);
+                }
+            };
+            PublishJobService jobs = new PublishJobService(cfg, blocking, new PublisherService(cfg));
+
+            PublishJobService.Job running = jobs.submit("job-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("job-bundle-2")), Optional.empty());
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            PublishJobService.Job queued = jobs.submit("job-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("job-bundle-3")), Optional.empty());
+            assertEquals(PublishJobService.State.QUEUED, queued.state());
+
+            PublishingException ex = assertThrows(PublishingException.class, () ->
+                    jobs.submit("job-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("job-bundle-4")), Optional.empty()));
+            assertEquals(503, ex.getStatus());
+            assertNotNull(ex.getRetryAfterSeconds());
+
+            release.countDown();
+            awaitFinished(running);
+            awaitFinished(queued);
+            assertEquals(PublishJobService.State.SUCCEEDED, running.state());
+            assertEquals(PublishJobService.State.SUCCEEDED, queued.state());
+        } finally {
+            System.clearProperty("PUBLISH_ASYNC_WORKERS");
+            System.clearProperty("PUBLISH_ASYNC_QUEUE_CAPACITY");
+        }
+    }
+
+    private PublishConfig config() {
+        return new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                5_000_000, 5_000_000, Optional.empty());
+    }
+
+    private void assertNoSpoolLeft() throws Exception {
+        try (var files = Files.list(tmp.resolve("staging"))) {
+            assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith(PublishJobService.SPOOL_PREFIX)));
+        }
+    }
+
+    private static void awaitFinished(PublishJobService.Job job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (job.finishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(job.finishedAt(), "job did not finish");
+    }
+}
@@ -0,0 +1,61 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.PublishLimiter;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PublishLimiterTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void callerBeyondLimitGets503AfterTimeout() throws Exception {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_MAX_CONCURRENT", "1");
+        System.setProperty("PUBLISH_ACQUIRE_TIMEOUT_MS", "50");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            PublishLimiter limiter = new PublishLimiter(PublishConfig.loadFromEnvOrSystem());
+            CountDownLatch holding = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            Future<String> first = pool.submit(() -> limiter.run(() -> {
+                holding.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "first";
+            }));
+            assertTrue(holding.await(10, TimeUnit.SECONDS));
+            assertEquals(1, limiter.inFlight());
+
+            PublishingException ex = assertThrows(PublishingException.class, () -> limiter.run(() -> "second"));
+            assertEquals(503, ex.getStatus());
+            assertNotNull(ex.getRetryAfterSeconds());
+
+            release.countDown();
+            assertEquals("first", first.get(10, TimeUnit.SECONDS));
+            assertEquals("third", limiter.run(() -> "third"));
+            assertEquals(0, limiter.inFlight());
+        } finally {
+            pool.shutdownNow();
+            System.clearProperty("PUBLISH_MAX_CONCURRENT");
+            System.clearProperty("PUBLISH_ACQUIRE_TIMEOUT_MS");
+        }
+    }
+}
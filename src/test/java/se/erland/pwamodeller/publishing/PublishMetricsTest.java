@@ -0,0 +1,114 @@
+package se.erland.pwamodeller.publishing;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.DatasetCatalog;
+import se.erland.pwamodeller.publishing.service.PublishLimiter;
+import se.erland.pwamodeller.publishing.service.PublishMetrics;
+import se.erland.pwamodeller.publishing.service.PublishTimings;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PublishMetricsTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void recordsStagesStatusesAndBytes() throws Exception {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        try {
+            PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+            PublishMetrics metrics = new PublishMetrics(registry);
+            ZipValidator validator = new ZipValidator(cfg, metrics);
+            PublisherService publisher = new PublisherService(cfg, null, metrics);
+            PublishLimiter limiter = new PublishLimiter(cfg, metrics);
+
+            byte[] zip = TestZips.minimalValidBundle("2026-03-01T10-00-00Z_metrics");
+            for (int i = 0; i < 2; i++) {
+                try {
+                    metrics.track("metrics-ds", () -> limiter.run(() -> publisher.publish("metrics-ds",
+                            validator.validateToStaging("metrics-ds", new ByteArrayInputStream(zip)), Optional.empty())));
+                } catch (PublishingException pe) {
+                    assertEquals(409, pe.getStatus());
+                }
+            }
+
+            String scrape = registry.scrape();
+            // Streaming validation (the default) has no separate "spool" stage.
+            for (String stage : new String[] {"extract", "validate", "promote", "precompress", "commit", "cleanup"}) {
+                assertTrue(scrape.contains("publish_stage_seconds_count{dataset=\"metrics-ds\",stage=\"" + stage + "\",}"),
+                        () -> "missing stage " + stage + " in\n" + scrape);
+            }
+            assertTrue(scrape.contains("publish_requests_seconds_count{dataset=\"metrics-ds\",status=\"201\",} 1.0"), scrape);
+            assertTrue(scrape.contains("publish_requests_seconds_count{dataset=\"metrics-ds\",status=\"409\",} 1.0"), scrape);
+            assertTrue(scrape.contains("publish_bytes_in_bytes_count{dataset=\"metrics-ds\",}"), scrape);
+            assertTrue(scrape.contains("publish_bytes_out_bytes_count{dataset=\"metrics-ds\",} 1.0"), scrape);
+            assertTrue(scrape.contains("publish_active{mode=\"sync\",} 0.0"), scrape);
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test
+    void tagsOnlyCatalogDatasetsWithFixedBuckets() throws Exception {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        try {
+            DatasetCatalog catalog = new DatasetCatalog(new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"),
+                    Optional.empty(), 5_000_000, 5_000_000, Optional.empty(), true));
+            Files.createDirectories(tmp.resolve("data").resolve("datasets").resolve("known-ds"));
+            catalog.reload();
+            PublishMetrics metrics = new PublishMetrics(registry, catalog);
+            for (int i = 0; i < 50; i++) {
+                metrics.request("unknown-" + i, 413, System.nanoTime());
+            }
+            metrics.request("known-ds", 201, System.nanoTime());
+
+            String scrape = registry.scrape();
+            assertTrue(scrape.contains("publish_requests_seconds_count{dataset=\"other\",status=\"413\",} 50.0"), scrape);
+            assertTrue(scrape.contains("publish_requests_seconds_count{dataset=\"known-ds\",status=\"201\",} 1.0"), scrape);
+            assertFalse(scrape.contains("unknown-"), scrape);
+            assertEquals(12, scrape.lines().filter(l -> l.startsWith("publish_requests_seconds_bucket{")).count(), scrape);
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test
+    void collectsRequestTimingsOnThePublishingThread() throws Exception {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+        PublishMetrics metrics = PublishMetrics.noop();
+        PublishTimings timings = PublishTimings.begin();
+        try {
+            new PublisherService(cfg, null, metrics).publish("timed-ds", new ZipValidator(cfg, metrics)
+                    .validateToStaging("timed-ds", new ByteArrayInputStream(TestZips.minimalValidBundle("2026-03-01T11-00-00Z_timed"))), Optional.empty());
+        } finally {
+            PublishTimings.end();
+        }
+
+        assertArrayEquals(new String[] {"extract", "validate", "promote", "precompress", "commit", "cleanup"}, timings.stages());
+        assertEquals(-1, timings.millis("archive"));
+        assertTrue(timings.serverTiming().matches("extract;dur=\\d+\\.\\d, validate;dur=.*, cleanup;dur=\\d+\\.\\d, total;dur=\\d+\\.\\d"),
+                timings.serverTiming());
+
+        // Nothing is collected once the request has ended.
+        metrics.stage(PublishMetrics.STAGE_ARCHIVE, "timed-ds", System.nanoTime());
+        assertEquals(-1, timings.millis("archive"));
+    }
+}
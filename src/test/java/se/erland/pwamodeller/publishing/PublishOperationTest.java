@@ -2,8 +2,11 @@ package se.erland.pwamodeller.publishing;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PromotionStrategy;
 import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.PublishResult;
 import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.ReleaseLog;
 import se.erland.pwamodeller.publishing.service.ValidatedBundle;
 import se.erland.pwamodeller.publishing.service.ZipValidator;
 
@@ -15,6 +18,13 @@ import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -54,6 +64,13 @@ public class PublishOperationTest {
         assertTrue(Files.isRegularFile(bundleDir.resolve("model.json")));
         assertTrue(Files.isRegularFile(bundleDir.resolve("indexes.json")));
 
+        // Precompressed sidecars for nginx gzip_static
+        try (var gz = new GZIPInputStream(Files.newInputStream(bundleDir.resolve("model.json.gz")))) {
+            assertEquals("{\"m\":1}", new String(gz.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertTrue(Files.isRegularFile(bundleDir.resolve("manifest.json.gz")));
+        assertTrue(Files.isRegularFile(bundleDir.resolve("indexes.json.gz")));
+
         Path latest = dataRoot.resolve("datasets").resolve(datasetId).resolve("latest.json");
         assertTrue(Files.isRegularFile(latest));
 
@@ -72,6 +89,122 @@ public class PublishOperationTest {
         assertEquals("Tullverket – Business", d.getString("title"));
     }
 
+    @Test
+    void promotesWithEveryStrategy() throws Exception {
+        Path dataRoot = tmp.resolve("data");
+        Path stagingRoot = tmp.resolve("staging");
+
+        System.setProperty("PUBLISH_DATA_ROOT", dataRoot.toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", stagingRoot.toString());
+        System.setProperty("PUBLISH_MAX_ZIP_BYTES", String.valueOf(5_000_000));
+        System.setProperty("PUBLISH_MAX_JSON_BYTES", String.valueOf(5_000_000));
+
+        // Same temp volume, so auto-detection must pick the zero-copy path.
+        assertEquals(PromotionStrategy.MOVE, PublishConfig.loadFromEnvOrSystem().getPromotionStrategy());
+
+        try {
+            for (PromotionStrategy strategy : PromotionStrategy.values()) {
+                System.setProperty("PUBLISH_PROMOTION", strategy.name().toLowerCase());
+                PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+                assertEquals(strategy, cfg.getPromotionStrategy());
+
+                String bundleId = "bundle-" + strategy.name().toLowerCase();
+                ValidatedBundle vb = new ZipValidator(cfg).validateToStaging("promo-ds", new ByteArrayInputStream(makeZip(bundleId)));
+                new PublisherService(cfg).publish("promo-ds", vb, java.util.Optional.empty());
+
+                Path bundleDir = dataRoot.resolve("bundles").resolve(bundleId);
+                assertEquals("{\"m\":1}", Files.readString(bundleDir.resolve("model.json"), StandardCharsets.UTF_8));
+                assertEquals("{\"i\":2}", Files.readString(bundleDir.resolve("indexes.json"), StandardCharsets.UTF_8));
+                assertFalse(Files.exists(vb.modelPath()), "staging should be cleaned up");
+            }
+        } finally {
+            System.clearProperty("PUBLISH_PROMOTION");
+        }
+    }
+
+    @Test
+    void blobStoreDeduplicatesUnchangedFiles() throws Exception {
+        Path dataRoot = tmp.resolve("data");
+        Path stagingRoot = tmp.resolve("staging");
+
+        System.setProperty("PUBLISH_DATA_ROOT", dataRoot.toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", stagingRoot.toString());
+        System.setProperty("PUBLISH_MAX_ZIP_BYTES", String.valueOf(5_000_000));
+        System.setProperty("PUBLISH_MAX_JSON_BYTES", String.valueOf(5_000_000));
+        System.setProperty("PUBLISH_BLOB_STORE", "true");
+
+        try {
+            PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+            for (String bundleId : new String[]{"blob-1", "blob-2"}) {
+                ValidatedBundle vb = new ZipValidator(cfg).validateToStaging("blob-ds", new ByteArrayInputStream(makeZip(bundleId)));
+                assertEquals(3, vb.sha256().size());
+                new PublisherService(cfg).publish("blob-ds", vb, java.util.Optional.empty());
+            }
+
+            Path b1 = dataRoot.resolve("bundles").resolve("blob-1");
+            Path b2 = dataRoot.resolve("bundles").resolve("blob-2");
+            // Same content -> same blob inode; manifests differ (bundleId) -> different blobs
+            assertTrue(Files.isSameFile(b1.resolve("model.json"), b2.resolve("model.json")));
+            assertTrue(Files.isSameFile(b1.resolve("model.json.gz"), b2.resolve("model.json.gz")));
+            assertFalse(Files.isSameFile(b1.resolve("manifest.json"), b2.resolve("manifest.json")));
+            assertEquals("{\"m\":1}", Files.readString(b2.resolve("model.json"), StandardCharsets.UTF_8));
+            assertTrue(Files.isDirectory(dataRoot.resolve("blobs")));
+        } finally {
+            System.clearProperty("PUBLISH_BLOB_STORE");
+        }
+    }
+
+    @Test
+    void concurrentPublishesToOneDatasetKeepEveryRelease() throws Exception {
+        Path dataRoot = tmp.resolve("data");
+        Path stagingRoot = tmp.resolve("staging");
+
+        System.setProperty("PUBLISH_DATA_ROOT", dataRoot.toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", stagingRoot.toString());
+        System.setProperty("PUBLISH_MAX_ZIP_BYTES", String.valueOf(5_000_000));
+        System.setProperty("PUBLISH_MAX_JSON_BYTES", String.valueOf(5_000_000));
+
+        PublishConfig cfg = PublishConfig.loadFromEnvOrSystem();
+        String datasetId = "busy-ds";
+        int n = 8;
+
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<PublishResult>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                String bundleId = "bundle-par-" + i;
+                ValidatedBundle vb = new ZipValidator(cfg).validateToStaging(datasetId, new ByteArrayInputStream(makeZip(bundleId)));
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return new PublisherService(cfg).publish(datasetId, vb, java.util.Optional.empty());
+                }));
+            }
+            start.countDown();
+
+            String lastPublishedAt = "";
+            String lastBundle = null;
+            for (var f : futures) {
+                var r = f.get();
+                if (r.publishedAt().compareTo(lastPublishedAt) >= 0) {
+                    lastPublishedAt = r.publishedAt();
+                    lastBundle = r.bundleId();
+                }
+            }
+
+            Path datasetDir = dataRoot.resolve("datasets").resolve(datasetId);
+            var releases = ReleaseLog.page(datasetDir, 100, null);
+            assertEquals(n, releases.total());
+            assertEquals(n, releases.releases().stream().map(r -> r.bundleId).distinct().count());
+
+            JsonObject latest = Json.createReader(new java.io.StringReader(
+                    Files.readString(datasetDir.resolve("latest.json"), StandardCharsets.UTF_8))).readObject();
+            assertEquals(lastBundle, latest.getString("bundleId"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     private static byte[] makeZip(String bundleId) {
         try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
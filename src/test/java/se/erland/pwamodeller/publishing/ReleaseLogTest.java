@@ -0,0 +1,86 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import se.erland.pwamodeller.publishing.service.ReleaseLog;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReleaseLogTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void pagesNewestFirstUsingBefore() throws Exception {
+        Path datasetDir = Files.createDirectories(tmp.resolve("ds"));
+        Instant t0 = Instant.parse("2026-02-11T10:00:00Z");
+        for (int i = 0; i < 7; i++) {
+            ReleaseLog.append(datasetDir, "b" + i, t0.plusSeconds(i));
+        }
+
+        ReleaseLog.Page p1 = ReleaseLog.page(datasetDir, 3, null);
+        assertEquals(7, p1.total());
+        assertEquals("b6", p1.releases().get(0).bundleId);
+        assertEquals("b4", p1.releases().get(2).bundleId);
+        assertEquals(4L, p1.nextBefore());
+
+        ReleaseLog.Page p3 = ReleaseLog.page(datasetDir, 3, 1L);
+        assertEquals(1, p3.releases().size());
+        assertEquals("b0", p3.releases().get(0).bundleId);
+        assertEquals(0L, p3.releases().get(0).seq);
+        assertNull(p3.nextBefore());
+
+        // Publishes only append: releases.json holds the first release until it is compacted,
+        // then a valid JSON array holding every release so far
+        String first = Files.readString(datasetDir.resolve("releases.json"), StandardCharsets.UTF_8);
+        assertEquals(1, Json.createReader(new StringReader(first)).readArray().size());
+        assertTrue(ReleaseLog.compactSnapshot(datasetDir));
+        assertFalse(ReleaseLog.compactSnapshot(datasetDir));
+        String snapshot = Files.readString(datasetDir.resolve("releases.json"), StandardCharsets.UTF_8);
+        JsonArray all = Json.createReader(new StringReader(snapshot)).readArray();
+        assertEquals(7, all.size());
+        assertEquals("b6", all.getJsonObject(6).getString("bundleId"));
+    }
+
+    @Test
+    void importsLegacyReleasesJson() throws Exception {
+        Path datasetDir = Files.createDirectories(tmp.resolve("legacy"));
+        Files.writeString(datasetDir.resolve("releases.json"),
+                "[{\"bundleId\":\"old-1\",\"publishedAt\":\"2025-01-01T00:00:00Z\"},"
+                        + "{\"bundleId\":\"old-2\",\"publishedAt\":\"2025-01-02T00:00:00Z\"}]",
+                StandardCharsets.UTF_8);
+
+        assertEquals(2, ReleaseLog.page(datasetDir, 10, null).total());
+
+        ReleaseLog.append(datasetDir, "new-1", Instant.parse("2026-01-01T00:00:00Z"));
+        ReleaseLog.Page page = ReleaseLog.page(datasetDir, 10, null);
+        assertEquals(3, page.total());
+        assertEquals("new-1", page.releases().get(0).bundleId);
+        assertEquals("old-1", page.releases().get(2).bundleId);
+    }
+
+    @Test
+    void recoversFromTornAppend() throws Exception {
+        Path datasetDir = Files.createDirectories(tmp.resolve("torn"));
+        ReleaseLog.append(datasetDir, "b0", Instant.parse("2026-01-01T00:00:00Z"));
+        // Simulate a crash halfway through writing the next line.
+        Files.writeString(datasetDir.resolve("releases.jsonl"), "{\"seq\":1,\"bund", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ReleaseLog.append(datasetDir, "b1", Instant.parse("2026-01-02T00:00:00Z"));
+
+        ReleaseLog.Page page = ReleaseLog.page(datasetDir, 10, null);
+        assertEquals(2, page.total());
+        assertEquals("b1", page.releases().get(0).bundleId);
+        assertEquals(1L, page.releases().get(0).seq);
+    }
+}
@@ -0,0 +1,103 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.StagingJanitor;
+import se.erland.pwamodeller.publishing.service.UploadSessionService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StagingJanitorTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void removesStaleEntriesButNotFreshOrInFlightOnes() throws Exception {
+        PublishConfig cfg = config();
+        Path staging = tmp.resolve("staging");
+        Path bundles = tmp.resolve("data").resolve("bundles");
+
+        Path orphan = staging.resolve(UUID.randomUUID().toString());
+        Files.createDirectories(orphan.resolve("unpack").resolve("b1"));
+        Files.write(orphan.resolve("unpack").resolve("b1").resolve("model.json"), new byte[1000]);
+        Files.write(orphan.resolve("upload.zip"), new byte[500]);
+        Path fresh = Files.createDirectories(staging.resolve(UUID.randomUUID().toString()));
+        Path jobSpool = Files.write(staging.resolve("job-" + UUID.randomUUID() + ".zip"), new byte[200]);
+        Path unknown = Files.createDirectories(staging.resolve("not-ours"));
+        Path tmpBundle = Files.createDirectories(bundles.resolve(".tmp.b2.1700000000000"));
+        Files.write(tmpBundle.resolve("indexes.json"), new byte[100]);
+        Path published = Files.createDirectories(bundles.resolve("b3"));
+
+        // A session being completed right now: old, but owned by a running publish.
+        UploadSessionService uploads = new UploadSessionService(cfg);
+        String sessionId = uploads.create("jan-ds", OptionalLong.empty()).sessionId();
+        uploads.putChunk("jan-ds", sessionId, 0, new ByteArrayInputStream(new byte[10]));
+        UploadSessionService.Completed completing = uploads.complete("jan-ds", sessionId);
+
+        for (Path p : new Path[] {orphan, jobSpool, unknown, tmpBundle, published, completing.sessionDir()}) {
+            backdate(p);
+        }
+
+        StagingJanitor.Sweep sweep = new StagingJanitor(cfg).sweep();
+
+        assertEquals(3, sweep.removed());
+        assertEquals(1000 + 500 + 200 + 100, sweep.bytes());
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(jobSpool));
+        assertFalse(Files.exists(tmpBundle));
+        assertTrue(Files.isDirectory(fresh));
+        assertTrue(Files.isDirectory(unknown));
+        assertTrue(Files.isDirectory(published));
+        assertTrue(Files.isDirectory(completing.sessionDir()));
+
+        // Once the owner is done the sealed session is fair game (discard already removes it).
+        uploads.discard(completing.sessionDir());
+        assertEquals(0, new StagingJanitor(cfg).sweep().removed());
+    }
+
+    @Test
+    void publishOfRootLevelZipOnlyRemovesItsOwnStagingDir() throws Exception {
+        PublishConfig cfg = config();
+        Path other = Files.createDirectories(tmp.resolve("staging").resolve(UUID.randomUUID().toString()));
+
+        byte[] zip = TestZips.minimalValidBundle("root-level");
+        ValidatedBundle vb = new ZipValidator(cfg).validateToStaging("jan-ds", new ByteArrayInputStream(zip));
+        new PublisherService(cfg).publish("jan-ds", vb, Optional.empty());
+
+        assertTrue(Files.isDirectory(other), "another publish's staging dir must survive");
+        assertFalse(Files.exists(vb.stagingDir()));
+    }
+
+    private PublishConfig config() {
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging").toString());
+        System.setProperty("PUBLISH_JANITOR_MIN_AGE_SECONDS", "60");
+        System.setProperty("PUBLISH_JANITOR_DELETES_PER_SECOND", "0");
+        try {
+            return PublishConfig.loadFromEnvOrSystem();
+        } finally {
+            System.clearProperty("PUBLISH_JANITOR_MIN_AGE_SECONDS");
+            System.clearProperty("PUBLISH_JANITOR_DELETES_PER_SECOND");
+        }
+    }
+
+    private static void backdate(Path p) throws Exception {
+        Files.setLastModifiedTime(p, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+    }
+}
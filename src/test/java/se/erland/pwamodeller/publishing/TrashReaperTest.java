@@ -0,0 +1,43 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.service.StagingJanitor;
+import se.erland.pwamodeller.publishing.service.TrashReaper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrashReaperTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void reapsStagingAndDataTrashOnly() throws Exception {
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                5_000_000, 5_000_000, Optional.empty(), true);
+        Path stagingTrash = Files.createDirectories(tmp.resolve("staging").resolve(".trash"));
+        Path bundleTrash = Files.createDirectories(tmp.resolve("data").resolve(".trash"));
+        Path staged = Files.createDirectories(stagingTrash.resolve("a.1").resolve("bundle"));
+        Files.write(staged.resolve("model.json"), new byte[300]);
+        Files.write(Files.createDirectories(bundleTrash.resolve("b.2")).resolve("manifest.json"), new byte[20]);
+        Path live = Files.createDirectories(tmp.resolve("staging").resolve("live"));
+
+        StagingJanitor.Sweep reaped = new TrashReaper(cfg).reap();
+
+        assertEquals(2, reaped.removed());
+        assertEquals(320, reaped.bytes());
+        try (var left = Files.list(stagingTrash)) {
+            assertEquals(0, left.count());
+        }
+        try (var left = Files.list(bundleTrash)) {
+            assertEquals(0, left.count());
+        }
+        assertTrue(Files.isDirectory(live));
+    }
+}
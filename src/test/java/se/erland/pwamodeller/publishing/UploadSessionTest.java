@@ -0,0 +1,190 @@
+package se.erland.pwamodeller.publishing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.api.PublishingException;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.UploadSessionService;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadSessionTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void chunksUploadedOutOfOrderInParallelArePublished() throws Exception {
+        PublishConfig cfg = config();
+        UploadSessionService uploads = new UploadSessionService(cfg);
+        byte[] zip = TestZips.minimalValidBundle("chunked-1");
+        List<byte[]> chunks = split(zip, 4);
+
+        UploadSessionService.Status created = uploads.create("up-ds", OptionalLong.of(zip.length));
+        IntStream.of(3, 1, 2).parallel().forEach(i ->
+                uploads.putChunk("up-ds", created.sessionId(), i, new ByteArrayInputStream(chunks.get(i))));
+
+        UploadSessionService.Status status = uploads.status("up-ds", created.sessionId());
+        assertEquals(List.of(1, 2, 3), status.receivedChunks());
+        assertEquals(0, status.contiguousBytes());
+
+        uploads.putChunk("up-ds", created.sessionId(), 0, new ByteArrayInputStream(chunks.get(0)));
+        status = uploads.status("up-ds", created.sessionId());
+        assertEquals(zip.length, status.contiguousBytes());
+
+        UploadSessionService.Completed completed = uploads.complete("up-ds", created.sessionId());
+        try (InputStream in = completed.openStream()) {
+            ValidatedBundle vb = new ZipValidator(cfg).validateToStaging("up-ds", in);
+            new PublisherService(cfg).publish("up-ds", vb, Optional.empty());
+        } finally {
+            uploads.discard(completed.sessionDir());
+        }
+
+        assertTrue(Files.isRegularFile(tmp.resolve("data").resolve("bundles").resolve("chunked-1").resolve("model.json")));
+        assertFalse(Files.exists(completed.sessionDir()));
+    }
+
+    @Test
+    void completeWithGapIsRejectedAndSessionStaysOpen() {
+        UploadSessionService uploads = new UploadSessionService(config());
+        byte[] zip = TestZips.minimalValidBundle("chunked-2");
+        List<byte[]> chunks = split(zip, 3);
+
+        UploadSessionService.Status created = uploads.create("up-ds", OptionalLong.empty());
+        uploads.putChunk("up-ds", created.sessionId(), 0, new ByteArrayInputStream(chunks.get(0)));
+        uploads.putChunk("up-ds", created.sessionId(), 2, new ByteArrayInputStream(chunks.get(2)));
+
+        PublishingException ex = assertThrows(PublishingException.class,
+                () -> uploads.complete("up-ds", created.sessionId()));
+        assertEquals(422, ex.getStatus());
+        assertTrue(ex.getMessage().contains("[1]"), ex.getMessage());
+
+        // Resume: the session is still open for the missing chunk.
+        uploads.putChunk("up-ds", created.sessionId(), 1, new ByteArrayInputStream(chunks.get(1)));
+        assertEquals(zip.length, uploads.status("up-ds", created.sessionId()).contiguousBytes());
+    }
+
+    @Test
+    void unknownOrForeignSessionIsNotFound() {
+        UploadSessionService uploads = new UploadSessionService(config());
+        UploadSessionService.Status created = uploads.create("up-ds", OptionalLong.empty());
+
+        assertEquals(404, assertThrows(PublishingException.class,
+                () -> uploads.status("other-ds", created.sessionId())).getStatus());
+        assertEquals(404, assertThrows(PublishingException.class,
+                () -> uploads.status("up-ds", "not-a-session")).getStatus());
+
+        uploads.abort("up-ds", created.sessionId());
+        assertEquals(404, assertThrows(PublishingException.class,
+                () -> uploads.status("up-ds", created.sessionId())).getStatus());
+    }
+
+    @Test
+    void chunksBeyondMaxZipSizeAreRejected() {
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                100, 5_000_000, Optional.empty());
+        UploadSessionService uploads = new UploadSessionService(cfg);
+        UploadSessionService.Status created = uploads.create("up-ds", OptionalLong.empty());
+
+        uploads.putChunk("up-ds", created.sessionId(), 0, new ByteArrayInputStream(new byte[60]));
+        PublishingException ex = assertThrows(PublishingException.class,
+                () -> uploads.putChunk("up-ds", created.sessionId(), 1, new ByteArrayInputStream(new byte[60])));
+        assertEquals(413, ex.getStatus());
+
+        // Re-sending a chunk replaces it, so only the difference counts.
+        uploads.putChunk("up-ds", created.sessionId(), 0, new ByteArrayInputStream(new byte[90]));
+    }
+
+    @Test
+    void parallelChunksCannotTogetherExceedMaxZipSize() throws Exception {
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                100, 5_000_000, Optional.empty());
+        UploadSessionService uploads = new UploadSessionService(cfg);
+        UploadSessionService.Status created = uploads.create("up-ds", OptionalLong.empty());
+
+        // Both PUTs have received 40 bytes before either sends the rest (80 + 80 > 100).
+        CyclicBarrier halfway = new CyclicBarrier(2);
+        List<Future<?>> puts = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                int index = i;
+                puts.add(pool.submit(() -> uploads.putChunk("up-ds", created.sessionId(), index, halves(40, halfway))));
+            }
+            int rejected = 0;
+            for (Future<?> f : puts) {
+                try {
+                    f.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertEquals(413, ((PublishingException) e.getCause()).getStatus());
+                    rejected++;
+                }
+            }
+            assertTrue(rejected >= 1);
+            assertTrue(uploads.status("up-ds", created.sessionId()).receivedBytes() <= 100);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private PublishConfig config() {
+        return new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                5_000_000, 5_000_000, Optional.empty());
+    }
+
+    private static List<byte[]> split(byte[] data, int parts) {
+        int size = (data.length + parts - 1) / parts;
+        return IntStream.range(0, parts)
+                .mapToObj(i -> Arrays.copyOfRange(data, Math.min(i * size, data.length), Math.min((i + 1) * size, data.length)))
+                .toList();
+    }
+
+    /** A body of two {@code half}-byte halves that waits at {@code barrier} in between. */
+    private static InputStream halves(int half, CyclicBarrier barrier) {
+        return new InputStream() {
+            int sent;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (sent == 2 * half) return -1;
+                if (sent == half) {
+                    try {
+                        barrier.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new IOException(e);
+                    }
+                }
+                int n = Math.min(len, (sent < half ? half : 2 * half) - sent);
+                sent += n;
+                return n;
+            }
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package se.erland.pwamodeller.publishing;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.erland.pwamodeller.publishing.config.PublishConfig;
+import se.erland.pwamodeller.publishing.it.TestZips;
+import se.erland.pwamodeller.publishing.service.BundleWorkers;
+import se.erland.pwamodeller.publishing.service.PublishMetrics;
+import se.erland.pwamodeller.publishing.service.PublisherService;
+import se.erland.pwamodeller.publishing.service.TrashReaper;
+import se.erland.pwamodeller.publishing.service.ValidatedBundle;
+import se.erland.pwamodeller.publishing.service.ZipArchiver;
+import se.erland.pwamodeller.publishing.service.ZipValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZipArchiverTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void archivesUploadedZipInTheBackground() throws Exception {
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.of(tmp.resolve("archive")),
+                5_000_000, 5_000_000, Optional.empty(), true);
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        PublishMetrics metrics = new PublishMetrics(registry);
+        ZipArchiver archiver = new ZipArchiver(cfg, metrics);
+        PublisherService publisher = new PublisherService(cfg, null, metrics, archiver, new BundleWorkers(), new TrashReaper(cfg));
+
+        byte[] zip = TestZips.minimalValidBundle("2026-03-01T10-00-00Z_arch");
+        ValidatedBundle vb = new ZipValidator(cfg, metrics).validateToStaging("arch-ds", new ByteArrayInputStream(zip));
+        assertNotNull(vb.uploadSha256());
+        publisher.publish("arch-ds", vb, Optional.empty());
+
+        Path archived = tmp.resolve("archive").resolve("arch-ds").resolve("2026-03-01T10-00-00Z_arch.zip");
+        for (int i = 0; i < 200 && archiver.pending() > 0; i++) Thread.sleep(50);
+        assertEquals(0, archiver.pending());
+        assertArrayEquals(zip, Files.readAllBytes(archived));
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("publish_archive_total{result=\"archived\",} 1.0"), scrape);
+        assertTrue(scrape.contains("publish_stage_seconds_count{dataset=\"arch-ds\",stage=\"archive\",} 1.0"), scrape);
+        // Neither the publish's staging dir nor the archiver's spool is left behind.
+        try (var left = Files.list(tmp.resolve("staging"))) {
+            assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    void withoutArchiveRootNothingIsTakenOver() throws Exception {
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                5_000_000, 5_000_000, Optional.empty(), true);
+        Path zip = Files.createDirectories(tmp.resolve("staging")).resolve("upload.zip");
+        Files.write(zip, TestZips.minimalValidBundle("b1"));
+
+        assertFalse(new ZipArchiver(cfg).submit("arch-ds", "b1", zip, null));
+        assertTrue(Files.isRegularFile(zip));
+    }
+}
@@ -10,7 +10,9 @@ import se.erland.pwamodeller.publishing.service.ZipValidator;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -61,7 +63,186 @@ public class ZipValidatorTest {
         assertEquals(422, ex.getStatus());
     }
 
+    @Test
+    void rejectsMalformedJsonInBothModes() {
+        byte[] zip = makeZip("bundle-bad", "{\"m\":");
+
+        for (boolean streaming : new boolean[]{true, false}) {
+            Path stagingRoot = tmp.resolve("staging-" + streaming);
+            PublishConfig cfg = new PublishConfig(tmp.resolve("data"), stagingRoot, Optional.empty(),
+                    5_000_000, 5_000_000, Optional.empty(), streaming);
+            ZipValidator v = new ZipValidator(cfg);
+
+            PublishingException ex = assertThrows(PublishingException.class,
+                    () -> v.validateToStaging("tullverket-business", new ByteArrayInputStream(zip)));
+            assertEquals(422, ex.getStatus());
+            assertTrue(ex.getMessage().contains("model.json"), ex.getMessage());
+        }
+    }
+
+    @Test
+    void validatesOnlyTheJsonFilesNextToManifestInBothModes() throws Exception {
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(other, StandardCharsets.UTF_8)) {
+            put(zos, "docs/model.json", "{\"not json");
+            put(zos, "b/manifest.json", "{\"bundleId\":\"b\"}");
+            put(zos, "b/model.json", "{\"m\":1}");
+            put(zos, "b/indexes.json", "{\"i\":2}");
+            put(zos, "b/extra/indexes.json", "[");
+        }
+        ByteArrayOutputStream early = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(early, StandardCharsets.UTF_8)) {
+            put(zos, "b/model.json", "{\"m\":");
+            put(zos, "b/manifest.json", "{\"bundleId\":\"b\"}");
+            put(zos, "b/indexes.json", "{\"i\":2}");
+        }
+
+        for (boolean streaming : new boolean[]{true, false}) {
+            PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging-dir-" + streaming), Optional.empty(),
+                    5_000_000, 5_000_000, Optional.empty(), streaming);
+            ZipValidator v = new ZipValidator(cfg);
+
+            ValidatedBundle vb = v.validateToStaging("tullverket-business", new ByteArrayInputStream(other.toByteArray()));
+            assertEquals("b", vb.bundleId());
+
+            PublishingException ex = assertThrows(PublishingException.class,
+                    () -> v.validateToStaging("tullverket-business", new ByteArrayInputStream(early.toByteArray())));
+            assertEquals(422, ex.getStatus());
+            assertTrue(ex.getMessage().contains("model.json"), ex.getMessage());
+        }
+    }
+
+    @Test
+    void namesTheFailingFileWhileOtherFilesValidateInParallel() {
+        StringBuilder model = new StringBuilder("[");
+        for (int i = 0; model.length() < 3_000_000; i++) {
+            if (i > 0) model.append(',');
+            model.append("{\"id\":").append(i).append(",\"name\":\"element ").append(i).append("\"}");
+        }
+        byte[] zip = makeZip("bundle-par", model.append(']').toString(), "{\"i\":[1,]}");
+
+        for (boolean streaming : new boolean[]{true, false}) {
+            PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging-par-" + streaming), Optional.empty(),
+                    50_000_000, 5_000_000, Optional.empty(), streaming);
+
+            PublishingException ex = assertThrows(PublishingException.class,
+                    () -> new ZipValidator(cfg).validateToStaging("tullverket-business", new ByteArrayInputStream(zip)));
+            assertEquals(422, ex.getStatus());
+            assertTrue(ex.getMessage().contains("indexes.json"), ex.getMessage());
+        }
+    }
+
+    @Test
+    void streamingModeEnforcesJsonSizeLimitWhileExtracting() {
+        byte[] zip = makeZip("bundle-json-big", "[" + "0,".repeat(1_000) + "0]", "{\"i\":2}");
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                5_000_000, 1_000, Optional.empty(), true);
+
+        PublishingException ex = assertThrows(PublishingException.class,
+                () -> new ZipValidator(cfg).validateToStaging("tullverket-business", new ByteArrayInputStream(zip)));
+        assertEquals(413, ex.getStatus());
+        assertTrue(ex.getMessage().contains("model.json"), ex.getMessage());
+    }
+
+    @Test
+    void referenceCheckRejectsIndexEntriesMissingFromModel() {
+        String model = "{\"nodes\":[{\"id\":\"e1\",\"name\":\"A\"},{\"id\":\"e2\"}],\"edges\":[{\"id\":\"r1\",\"source\":\"e1\",\"target\":\"e2\"}]}";
+        String good = "{\"bundleId\":\"bundle-ref-ok\",\"datasetId\":\"tullverket-business\",\"schemaId\":\"v1\","
+                + "\"byId\":{\"e1\":{\"label\":\"A\",\"id\":\"e1\"},\"r1\":{}},\"byType\":{\"Node\":[\"e1\",\"e2\"]},"
+                + "\"search\":[{\"elementId\":\"e2\",\"text\":\"x\"}]}";
+        String bad = "{\"byId\":{\"e1\":{},\"e9\":{}},\"byType\":{\"Node\":[\"e1\",\"e7\"]},\"search\":[{\"elementId\":\"e8\",\"text\":\"e6\"}]}";
+
+        System.setProperty("PUBLISH_DATA_ROOT", tmp.resolve("data").toString());
+        System.setProperty("PUBLISH_REFERENCE_CHECK", "true");
+        try {
+            for (boolean streaming : new boolean[]{true, false}) {
+                System.setProperty("PUBLISH_STAGING_ROOT", tmp.resolve("staging-ref-" + streaming).toString());
+                System.setProperty("PUBLISH_STREAMING_VALIDATION", String.valueOf(streaming));
+                ZipValidator v = new ZipValidator(PublishConfig.loadFromEnvOrSystem());
+
+                assertEquals("bundle-ref-ok", v.validateToStaging("tullverket-business",
+                        new ByteArrayInputStream(makeZip("bundle-ref-ok", model, good))).bundleId());
+
+                PublishingException ex = assertThrows(PublishingException.class,
+                        () -> v.validateToStaging("tullverket-business", new ByteArrayInputStream(makeZip("bundle-ref-bad", model, bad))));
+                assertEquals(422, ex.getStatus());
+                assertTrue(ex.getMessage().contains("has 3 reference(s)"), ex.getMessage());
+                assertTrue(ex.getMessage().contains("e9, e7, e8"), ex.getMessage());
+            }
+        } finally {
+            System.clearProperty("PUBLISH_REFERENCE_CHECK");
+            System.clearProperty("PUBLISH_STREAMING_VALIDATION");
+        }
+    }
+
+    @Test
+    void referenceCheckHandlesLargeModels() {
+        int n = 200_000;
+        StringBuilder model = new StringBuilder("{\"nodes\":[");
+        StringBuilder indexes = new StringBuilder("{\"byId\":{");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                model.append(',');
+                indexes.append(',');
+            }
+            model.append("{\"id\":\"id-").append(i).append("\",\"name\":\"n").append(i).append("\"}");
+            indexes.append("\"id-").append(n - 1 - i).append("\":{}");
+        }
+        String dangling = indexes.append(",\"id-").append(n).append("\":{}}}").toString();
+        PublishConfig base = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging-large"), Optional.empty(),
+                50_000_000, 50_000_000, Optional.empty(), true);
+
+        System.setProperty("PUBLISH_DATA_ROOT", base.getDataRoot().toString());
+        System.setProperty("PUBLISH_STAGING_ROOT", base.getStagingRoot().toString());
+        System.setProperty("PUBLISH_MAX_ZIP_BYTES", "50000000");
+        System.setProperty("PUBLISH_MAX_JSON_BYTES", "50000000");
+        System.setProperty("PUBLISH_REFERENCE_CHECK", "true");
+        try {
+            ZipValidator v = new ZipValidator(PublishConfig.loadFromEnvOrSystem());
+            PublishingException ex = assertThrows(PublishingException.class,
+                    () -> v.validateToStaging("tullverket-business",
+                            new ByteArrayInputStream(makeZip("bundle-ref-large", model.append("]}").toString(), dangling))));
+            assertTrue(ex.getMessage().contains("has 1 reference(s)"), ex.getMessage());
+            assertTrue(ex.getMessage().endsWith("id-" + n), ex.getMessage());
+        } finally {
+            System.clearProperty("PUBLISH_REFERENCE_CHECK");
+            System.clearProperty("PUBLISH_MAX_ZIP_BYTES");
+            System.clearProperty("PUBLISH_MAX_JSON_BYTES");
+        }
+    }
+
+    @Test
+    void streamingModeEnforcesZipSizeLimit() {
+        byte[] zip = makeZip("bundle-big");
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.empty(),
+                zip.length - 1, 5_000_000, Optional.empty(), true);
+
+        PublishingException ex = assertThrows(PublishingException.class,
+                () -> new ZipValidator(cfg).validateToStaging("tullverket-business", new ByteArrayInputStream(zip)));
+        assertEquals(413, ex.getStatus());
+    }
+
+    @Test
+    void streamingModeKeepsUploadZipOnlyWhenArchiving() throws Exception {
+        byte[] zip = makeZip("bundle-arch");
+        PublishConfig cfg = new PublishConfig(tmp.resolve("data"), tmp.resolve("staging"), Optional.of(tmp.resolve("archive")),
+                5_000_000, 5_000_000, Optional.empty(), true);
+
+        ZipValidator v = new ZipValidator(cfg);
+        ValidatedBundle vb = v.validateToStaging("tullverket-business", new ByteArrayInputStream(zip));
+
+        assertArrayEquals(zip, Files.readAllBytes(v.getZipFileFromValidatedBundle(vb)));
+    }
+
     private static byte[] makeZip(String bundleId) {
+        return makeZip(bundleId, "{\"m\":1}");
+    }
+
+    private static byte[] makeZip(String bundleId, String model) {
+        return makeZip(bundleId, model, "{\"i\":2}");
+    }
+
+    private static byte[] makeZip(String bundleId, String model, String indexes) {
         try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             try (ZipOutputStream zos = new ZipOutputStream(baos, StandardCharsets.UTF_8)) {
@@ -69,8 +250,8 @@ public class ZipValidatorTest {
                 zos.putNextEntry(new ZipEntry(base));
                 zos.closeEntry();
                 put(zos, base + "manifest.json", "{\"bundleId\":\"" + bundleId + "\"}");
-                put(zos, base + "model.json", "{\"m\":1}");
-                put(zos, base + "indexes.json", "{\"i\":2}");
+                put(zos, base + "model.json", model);
+                put(zos, base + "indexes.json", indexes);
             }
             return baos.toByteArray();
         } catch (Exception e) {
@@ -19,4 +19,21 @@ public class DatasetsResourceIT {
                 .statusCode(200)
                 .body("datasets", is(empty()));
     }
+
+    @Test
+    void listDatasets_returnsNotModifiedForMatchingEtag() {
+        String etag = given()
+                .when().get("/datasets")
+                .then()
+                .statusCode(200)
+                .header("ETag", notNullValue())
+                .extract().header("ETag");
+
+        given()
+                .header("If-None-Match", etag)
+                .when().get("/datasets")
+                .then()
+                .statusCode(304)
+                .header("ETag", equalTo(etag));
+    }
 }
@@ -20,4 +20,16 @@ public class HealthResourceIT {
                 .body("status", equalTo("ok"))
                 .body("time", notNullValue());
     }
+
+    @Test
+    void ready_reportsDiskHeadroom() {
+        given()
+                .when().get("/health/ready")
+                .then()
+                .statusCode(200)
+                .body("status", equalTo("ready"))
+                .body("disk.root", contains("staging", "data", "uploads"))
+                .body("disk[0].usableBytes", greaterThan(0L))
+                .body("disk[0].reservedBytes", equalTo(0));
+    }
 }
@@ -0,0 +1,47 @@
+package se.erland.pwamodeller.publishing.it;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.common.QuarkusTestResource;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+@QuarkusTest
+@QuarkusTestResource(PublishTestResource.class)
+public class JobsResourceIT {
+
+    @Test
+    void asyncPublish_invalidZipFailsOnTheJob() throws Exception {
+        String location = given()
+                .multiPart("bundleZip", "bundle.zip", "not a zip".getBytes(), "application/zip")
+                .when().post("/datasets/async-ds/publish?async=true")
+                .then()
+                .statusCode(202)
+                .header("Location", containsString("/api/jobs/"))
+                .body("state", anyOf(equalTo("queued"), equalTo("running"), equalTo("failed")))
+                .extract().header("Location");
+        String jobId = location.substring(location.lastIndexOf('/') + 1);
+
+        String state = "queued";
+        for (int i = 0; i < 200 && !state.equals("failed"); i++) {
+            Thread.sleep(25);
+            state = given().when().get("/jobs/" + jobId).then().statusCode(200).extract().path("state");
+        }
+
+        given()
+                .when().get("/jobs/" + jobId)
+                .then()
+                .statusCode(200)
+                .body("state", equalTo("failed"))
+                .body("error.status", is(422));
+    }
+
+    @Test
+    void unknownJob_is404() {
+        given()
+                .when().get("/jobs/does-not-exist")
+                .then()
+                .statusCode(404);
+    }
+}
@@ -0,0 +1,26 @@
+package se.erland.pwamodeller.publishing.it;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+@QuarkusTest
+@QuarkusTestResource(PublishTestResource.class)
+public class MetricsResourceIT {
+
+    @Test
+    void metrics_scrapeable() {
+        given()
+                .when().get("/metrics")
+                .then()
+                .statusCode(200)
+                .contentType(startsWith("text/plain"))
+                .body(containsString("publish_active{mode=\"sync\",}"))
+                .body(containsString("publish_waiting{mode=\"async\",}"))
+                .body(containsString("publish_disk_reserved_bytes{root=\"staging\",}"))
+                .body(containsString("jvm_memory_used_bytes"));
+    }
+}
@@ -0,0 +1,216 @@
+package se.erland.pwamodeller.publishing.it;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.erland.pwamodeller.publishing.service.BundleGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * End-to-end load test: concurrent publishes plus concurrent GET /api/datasets against a running
+ * instance (the one booted by {@link PublishTestResource}, or any other via publish.load.url).
+ *
+ * Reports throughput, p50/p95/p99 latency and disk bytes per publish. Disabled by default:
+ *
+ *   mvn test -Dtest=PublishLoadIT -Dpublish.bench=true \
+ *       [-Dpublish.load.publishes=100] [-Dpublish.load.concurrency=8] [-Dpublish.load.listers=2] \
+ *       [-Dpublish.load.datasets=4] [-Dpublish.load.modelMb=5] [-Dpublish.load.entries=0] \
+ *       [-Dpublish.load.level=6] [-Dpublish.load.warmup=5] [-Dpublish.load.url=http://host:8080/api]
+ *
+ * Disk bytes are only reported for the local instance: growth of DATA_ROOT + ARCHIVE_ROOT (what a
+ * publish leaves behind) and, on Linux, the JVM's write_bytes from /proc/self/io (everything
+ * written, including staging; 0 on filesystems that do not account writes, e.g. tmpfs).
+ */
+@QuarkusTest
+@QuarkusTestResource(PublishTestResource.class)
+@EnabledIfSystemProperty(named = "publish.bench", matches = "true")
+public class PublishLoadIT {
+
+    private static final String BOUNDARY = "load-" + UUID.randomUUID();
+
+    @Test
+    void publishUnderLoad() throws Exception {
+        int publishes = Integer.getInteger("publish.load.publishes", 100);
+        int concurrency = Integer.getInteger("publish.load.concurrency", 8);
+        int listers = Integer.getInteger("publish.load.listers", 2);
+        int datasets = Integer.getInteger("publish.load.datasets", 4);
+        int modelMb = Integer.getInteger("publish.load.modelMb", 5);
+        int entries = Integer.getInteger("publish.load.entries", 0);
+        int level = Integer.getInteger("publish.load.level", 6);
+        int warmup = Integer.getInteger("publish.load.warmup", 5);
+        String externalUrl = System.getProperty("publish.load.url");
+        String api = externalUrl != null ? externalUrl
+                : RestAssured.baseURI + ":" + RestAssured.port + "/" + RestAssured.basePath.replaceFirst("^/", "");
+
+        // Bundles are generated up front so compression does not compete with the server for CPU.
+        int nodes = BundleGenerator.nodesFor(modelMb * 1024L * 1024L);
+        byte[] model = BundleGenerator.modelJson(nodes, 42);
+        byte[] indexes = BundleGenerator.indexesJson(nodes);
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        List<byte[]> bodies = new ArrayList<>(warmup + publishes);
+        long zipBytes = 0;
+        for (int i = 0; i < warmup + publishes; i++) {
+            byte[] zip = BundleGenerator.bundleZip("load-" + run + "-" + i, model, indexes, entries, level);
+            if (i >= warmup) zipBytes += zip.length;
+            bodies.add(multipart(zip));
+        }
+
+        HttpClient http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(2, concurrency + listers)))
+                .build();
+
+        for (int i = 0; i < warmup; i++) {
+            publish(http, api, "load-" + (i % datasets), bodies.get(i));
+        }
+
+        Path dataRoot = externalUrl == null ? Path.of(System.getProperty("PUBLISH_DATA_ROOT")) : null;
+        Path archiveRoot = externalUrl == null && System.getProperty("PUBLISH_ARCHIVE_ROOT") != null
+                ? Path.of(System.getProperty("PUBLISH_ARCHIVE_ROOT")) : null;
+        long storedBefore = treeSize(dataRoot) + treeSize(archiveRoot);
+        long writtenBefore = procWriteBytes();
+
+        long[] publishNanos = new long[publishes];
+        Map<Integer, AtomicInteger> statuses = new ConcurrentHashMap<>();
+        List<Long> listNanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService listPool = Executors.newFixedThreadPool(Math.max(1, listers));
+        List<Future<?>> listing = new ArrayList<>();
+        for (int l = 0; l < listers; l++) {
+            listing.add(listPool.submit(() -> {
+                HttpRequest req = HttpRequest.newBuilder(URI.create(api + "/datasets")).GET().build();
+                while (!done.get()) {
+                    long t0 = System.nanoTime();
+                    HttpResponse<Void> res = http.send(req, HttpResponse.BodyHandlers.discarding());
+                    listNanos.add(System.nanoTime() - t0);
+                    if (res.statusCode() != 200) throw new IllegalStateException("GET /datasets -> " + res.statusCode());
+                }
+                return null;
+            }));
+        }
+
+        ExecutorService publishPool = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> publishing = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < publishes; i++) {
+            int n = i;
+            publishing.add(publishPool.submit(() -> {
+                long t0 = System.nanoTime();
+                int status = publish(http, api, "load-" + (n % datasets), bodies.get(warmup + n));
+                publishNanos[n] = System.nanoTime() - t0;
+                statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+                return null;
+            }));
+        }
+        for (Future<?> f : publishing) f.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        done.set(true);
+        for (Future<?> f : listing) f.get();
+        publishPool.shutdown();
+        listPool.shutdown();
+
+        long stored = treeSize(dataRoot) + treeSize(archiveRoot) - storedBefore;
+        long written = procWriteBytes() - writtenBefore;
+        int ok = statuses.getOrDefault(201, new AtomicInteger()).get();
+
+        System.out.printf("%nPublish load: %d publishes (%d MiB model, %d extra entries, level %d), concurrency %d, %d listers, %d datasets%n",
+                publishes, modelMb, entries, level, concurrency, listers, datasets);
+        System.out.printf("  statuses        %s%n", statuses);
+        System.out.printf("  throughput      %.1f publishes/s, %.1f MiB/s uploaded%n", ok / seconds, zipBytes / seconds / (1024 * 1024));
+        System.out.printf("  publish latency %s%n", percentiles(publishNanos));
+        System.out.printf("  list latency    %s (%d requests, %.0f/s)%n",
+                percentiles(listNanos.stream().mapToLong(Long::longValue).toArray()), listNanos.size(), listNanos.size() / seconds);
+        if (dataRoot != null) {
+            System.out.printf("  stored/publish  %,d bytes (zip %,d bytes)%n", stored / Math.max(1, ok), zipBytes / publishes);
+            if (written >= 0) System.out.printf("  written/publish %,d bytes (/proc/self/io write_bytes)%n", written / Math.max(1, ok));
+        }
+
+        assertEquals(publishes, ok + statuses.getOrDefault(503, new AtomicInteger()).get(),
+                () -> "unexpected publish statuses " + statuses);
+    }
+
+    private static int publish(HttpClient http, String api, String datasetId, byte[] body) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(api + "/datasets/" + datasetId + "/publish"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static byte[] multipart(byte[] zip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(zip.length + 256);
+        out.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"bundleZip\"; filename=\"bundle.zip\"\r\n"
+                + "Content-Type: application/zip\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(zip);
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /** "p50 .. p95 .. p99 .. max .." in milliseconds (nearest rank). */
+    private static String percentiles(long[] nanos) {
+        if (nanos.length == 0) return "n/a";
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                rank(sorted, 0.50), rank(sorted, 0.95), rank(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double rank(long[] sorted, double p) {
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+    }
+
+    private static long treeSize(Path root) throws IOException {
+        if (root == null || !Files.isDirectory(root)) return 0;
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).mapToLong(p -> {
+                try {
+                    return Files.size(p);
+                } catch (IOException e) {
+                    return 0; // removed while walking
+                }
+            }).sum();
+        }
+    }
+
+    /** write_bytes from /proc/self/io, or -1 where unavailable. */
+    private static long procWriteBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/io"))) {
+                if (line.startsWith("write_bytes:")) return Long.parseLong(line.substring(12).trim());
+            }
+        } catch (IOException | RuntimeException ignored) {
+        }
+        return -1;
+    }
+}
@@ -2,13 +2,17 @@ package se.erland.pwamodeller.publishing.it;
 
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.common.QuarkusTestResource;
+import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
 
 @QuarkusTest
 @QuarkusTestResource(PublishTestResource.class)
+// The happy path expects test-ds to be the only dataset, so it runs before the tests that publish others.
+@TestMethodOrder(MethodOrderer.MethodName.class)
 public class PublishResourceIT {
 
     @Test
@@ -36,4 +40,94 @@ public class PublishResourceIT {
                 .body("datasets[0].datasetId", equalTo("test-ds"))
                 .body("datasets[0].latestBundleId", equalTo("bundle-001"));
     }
+
+    @Test
+    void publishMultipart_listsTheReleaseInItsLog() {
+        given()
+                .multiPart("bundleZip", "bundle.zip", TestZips.minimalValidBundle("bundle-rel-1"), "application/zip")
+                .when().post("/datasets/releases-ds/publish")
+                .then()
+                .statusCode(201);
+
+        given()
+                .when().get("/datasets/releases-ds/releases")
+                .then()
+                .statusCode(200)
+                .body("total", is(1))
+                .body("releases[0].bundleId", equalTo("bundle-rel-1"))
+                .body("nextBefore", nullValue());
+    }
+
+    @Test
+    void publishMultipart_reportsRequestIdAndServerTiming() {
+        given()
+                .header("X-Request-Id", "ci-run-44")
+                .multiPart("bundleZip", "bundle.zip", TestZips.minimalValidBundle("bundle-timing-1"), "application/zip")
+                .when().post("/datasets/timing-ds/publish")
+                .then()
+                .statusCode(201)
+                .header("X-Request-Id", "ci-run-44")
+                .header("Server-Timing", allOf(
+                        containsString("extract;dur="), containsString("validate;dur="),
+                        containsString("promote;dur="), containsString("commit;dur="),
+                        containsString("cleanup;dur="), matchesPattern(".*total;dur=\\d+\\.\\d$")));
+    }
+
+    @Test
+    void publishMultipart_retryWithSameKeyIsReplayed() {
+        given()
+                .header("Idempotency-Key", "ci-run-45")
+                .multiPart("bundleZip", "bundle.zip", TestZips.minimalValidBundle("bundle-replay-1"), "application/zip")
+                .when().post("/datasets/replay-ds/publish")
+                .then()
+                .statusCode(201)
+                .body("bundleId", equalTo("bundle-replay-1"));
+
+        // A retry with the same key is answered from the release log, whatever it uploads.
+        given()
+                .header("Idempotency-Key", "ci-run-45")
+                .multiPart("bundleZip", "bundle.zip", TestZips.minimalValidBundle("bundle-replay-2"), "application/zip")
+                .when().post("/datasets/replay-ds/publish")
+                .then()
+                .statusCode(200)
+                .header("Idempotent-Replayed", "true")
+                .body("bundleId", equalTo("bundle-replay-1"));
+
+        given()
+                .when().get("/datasets/replay-ds/releases")
+                .then()
+                .statusCode(200)
+                .body("total", is(1));
+    }
+
+    @Test
+    void publishMultipart_digestMismatchIsRejected() {
+        byte[] zip = TestZips.minimalValidBundle("bundle-digest");
+
+        given()
+                .header("Idempotency-Key", "ci-run-43")
+                .header("X-Bundle-SHA256", "0".repeat(64))
+                .multiPart("bundleZip", "bundle.zip", zip, "application/zip")
+                .when().post("/datasets/digest-ds/publish")
+                .then()
+                .statusCode(422)
+                .body("detail", containsString("SHA-256 mismatch"));
+
+        given()
+                .header("X-Bundle-SHA256", "not-a-digest")
+                .multiPart("bundleZip", "bundle.zip", zip, "application/zip")
+                .when().post("/datasets/digest-ds/publish")
+                .then()
+                .statusCode(422);
+    }
+
+    @Test
+    void publishMultipart_failureStillReportsTimings() {
+        given()
+                .multiPart("bundleZip", "bundle.zip", "not a zip".getBytes(), "application/zip")
+                .when().post("/datasets/other-ds/publish")
+                .then()
+                .statusCode(greaterThanOrEqualTo(400))
+                .header("Server-Timing", containsString("total;dur="));
+    }
 }
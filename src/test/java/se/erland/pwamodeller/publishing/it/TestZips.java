@@ -5,7 +5,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-final class TestZips {
+public final class TestZips {
     private TestZips() {}
 
     /**
@@ -16,13 +16,18 @@ final class TestZips {
      * - model.json
      * - indexes.json
      */
-    static byte[] minimalValidBundle(String bundleId) {
+    public static byte[] minimalValidBundle(String bundleId) {
+        return bundle(bundleId, "{\"schemaVersion\":1,\"nodes\":[],\"edges\":[]}\n", "{\"byId\":{}}\n");
+    }
+
+    /** Builds a bundle ZIP with the given model.json and indexes.json. */
+    public static byte[] bundle(String bundleId, String model, String indexes) {
         try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             try (ZipOutputStream zos = new ZipOutputStream(baos, StandardCharsets.UTF_8)) {
                 put(zos, "manifest.json", "{\"bundleId\":\"" + escape(bundleId) + "\"}\n");
-                put(zos, "model.json", "{\"schemaVersion\":1,\"nodes\":[],\"edges\":[]}\n");
-                put(zos, "indexes.json", "{\"byId\":{}}\n");
+                put(zos, "model.json", model);
+                put(zos, "indexes.json", indexes);
             }
             return baos.toByteArray();
         } catch (Exception e) {
@@ -0,0 +1,55 @@
+package se.erland.pwamodeller.publishing.it;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.common.QuarkusTestResource;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+@QuarkusTest
+@QuarkusTestResource(PublishTestResource.class)
+public class UploadsResourceIT {
+
+    @Test
+    void chunkedUploadSession_statusAndAbort() {
+        String sessionId = given()
+                .when().post("/datasets/upload-ds/uploads?totalBytes=10")
+                .then()
+                .statusCode(201)
+                .body("datasetId", equalTo("upload-ds"))
+                .body("totalBytes", is(10))
+                .body("receivedChunks.size()", is(0))
+                .extract().path("sessionId");
+
+        given()
+                .contentType("application/octet-stream")
+                .body(new byte[6])
+                .when().put("/datasets/upload-ds/uploads/" + sessionId + "/chunks/1")
+                .then()
+                .statusCode(204);
+
+        given()
+                .when().get("/datasets/upload-ds/uploads/" + sessionId)
+                .then()
+                .statusCode(200)
+                .body("receivedChunks", contains(1))
+                .body("receivedBytes", is(6))
+                .body("contiguousBytes", is(0));
+
+        given()
+                .when().post("/datasets/upload-ds/uploads/" + sessionId + "/complete")
+                .then()
+                .statusCode(422);
+
+        given()
+                .when().delete("/datasets/upload-ds/uploads/" + sessionId)
+                .then()
+                .statusCode(204);
+
+        given()
+                .when().get("/datasets/upload-ds/uploads/" + sessionId)
+                .then()
+                .statusCode(404);
+    }
+}
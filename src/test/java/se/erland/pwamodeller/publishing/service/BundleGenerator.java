@@ -0,0 +1,129 @@
+package se.erland.pwamodeller.publishing.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic bundles for the JMH benchmarks and the load test. Output is deterministic for a
+ * given size and seed, so runs on different branches measure the same input.
+ *
+ * model.json looks like an exported model (nodes with id/type/name/documentation, edges between
+ * them); indexes.json has byId and byType indexes over the same ids. Optional extra entries
+ * (assets/*.svg) make ZIPs with many small files.
+ */
+public final class BundleGenerator {
+
+    private static final String[] TYPES = {"BusinessActor", "BusinessProcess", "ApplicationComponent", "DataObject", "Node"};
+
+    private BundleGenerator() {}
+
+    /** Number of nodes in a model of roughly {@code targetBytes}. */
+    public static int nodesFor(long targetBytes) {
+        return (int) Math.max(1, targetBytes / 190);
+    }
+
+    public static byte[] modelJson(int nodes, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(nodes * 200).append("{\"schemaVersion\":1,\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":\"n-").append(i)
+                    .append("\",\"type\":\"").append(TYPES[i % TYPES.length])
+                    .append("\",\"name\":\"Element ").append(i)
+                    .append("\",\"documentation\":\"Generated element ").append(random.nextInt(1_000_000))
+                    .append(" with some descriptive text, åäö\",\"weight\":").append(random.nextInt(1000) / 10.0)
+                    .append('}');
+        }
+        sb.append("],\"edges\":[");
+        for (int i = 1; i < nodes; i++) {
+            if (i > 1) sb.append(',');
+            sb.append("{\"id\":\"e-").append(i).append("\",\"source\":\"n-").append(random.nextInt(i))
+                    .append("\",\"target\":\"n-").append(i).append("\"}");
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] indexesJson(int nodes) {
+        StringBuilder sb = new StringBuilder(nodes * 40).append("{\"byId\":{");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"n-").append(i).append("\":").append(i);
+        }
+        sb.append("},\"byType\":{");
+        for (int t = 0; t < TYPES.length; t++) {
+            if (t > 0) sb.append(',');
+            sb.append('"').append(TYPES[t]).append("\":[");
+            for (int i = t; i < nodes; i += TYPES.length) {
+                if (i > t) sb.append(',');
+                sb.append("\"n-").append(i).append('"');
+            }
+            sb.append(']');
+        }
+        return sb.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** A bundle ZIP (bundleId/manifest.json, model.json, indexes.json) with a model of about {@code modelBytes}. */
+    public static byte[] bundleZip(String bundleId, long modelBytes) throws IOException {
+        int nodes = nodesFor(modelBytes);
+        return bundleZip(bundleId, modelJson(nodes, 42), indexesJson(nodes), 0, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * A bundle ZIP from pre-generated model/indexes (so many bundles can share them), plus
+     * {@code extraEntries} small asset files, deflated at {@code level} (0-9, or -1 for the default).
+     */
+    public static byte[] bundleZip(String bundleId, byte[] model, byte[] indexes, int extraEntries, int level) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(baos, StandardCharsets.UTF_8)) {
+            zos.setLevel(level);
+            String base = bundleId + "/";
+            put(zos, base + "manifest.json", ("{\"bundleId\":\"" + bundleId + "\",\"createdAt\":\"" + Instant.EPOCH + "\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+            put(zos, base + "model.json", model);
+            put(zos, base + "indexes.json", indexes);
+            for (int i = 0; i < extraEntries; i++) {
+                put(zos, base + "assets/asset-" + i + ".svg", asset(i));
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] asset(int i) {
+        return ("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"64\" height=\"64\"><title>asset " + i + "</title>"
+                + "<rect x=\"" + (i % 32) + "\" y=\"8\" width=\"32\" height=\"32\" fill=\"#" + String.format("%06x", (i * 7919) & 0xFFFFFF)
+                + "\"/></svg>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Writes {@code count} datasets (dataset.json + latest.json) under dataRoot/datasets/. */
+    public static void datasets(Path dataRoot, int count) throws IOException {
+        Path datasetsRoot = dataRoot.resolve("datasets");
+        for (int i = 0; i < count; i++) {
+            String id = String.format("dataset-%05d", i);
+            Path dir = Files.createDirectories(datasetsRoot.resolve(id));
+            String at = Instant.EPOCH.plusSeconds(i).toString();
+            Files.writeString(dir.resolve("dataset.json"),
+                    "{\"datasetId\":\"" + id + "\",\"title\":\"Dataset " + i + "\",\"updatedAt\":\"" + at + "\",\"createdAt\":\"" + at + "\"}");
+            Files.writeString(dir.resolve("latest.json"),
+                    "{\"datasetId\":\"" + id + "\",\"bundleId\":\"bundle-" + i + "\",\"manifestUrl\":\"../../bundles/bundle-" + i
+                            + "/manifest.json\",\"publishedAt\":\"" + at + "\"}");
+        }
+    }
+
+    public static void deleteRecursively(Path dir) {
+        TrashReaper.deleteQuietly(dir);
+    }
+
+    private static void put(ZipOutputStream zos, String name, byte[] content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content);
+        zos.closeEntry();
+    }
+}